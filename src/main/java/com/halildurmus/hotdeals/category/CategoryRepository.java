@@ -29,7 +29,11 @@ public interface CategoryRepository extends MongoRepository<Category, String> {
   void deleteById(String id);
 
   @Override
-  @Cacheable(value = "categories", key = "#id", condition = "#id.blank != true and #result != null")
+  @Cacheable(
+      value = "categories",
+      key = "#id",
+      condition = "#id.blank != true",
+      unless = "#result == null")
   Optional<Category> findById(String id);
 
   Optional<Category> findByCategory(String category);
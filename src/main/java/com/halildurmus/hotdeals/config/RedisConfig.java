@@ -1,8 +1,86 @@
 package com.halildurmus.hotdeals.config;
 
+import com.halildurmus.hotdeals.config.cache.BinaryJacksonRedisSerializer;
+import com.halildurmus.hotdeals.config.cache.CacheFormat;
+import com.halildurmus.hotdeals.config.cache.MeteredRedisSerializer;
+import com.halildurmus.hotdeals.config.cache.RedisCacheProperties;
+import com.halildurmus.hotdeals.config.cache.TwoTierCacheManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.BatchStrategies;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 @Configuration
 @EnableCaching
-public class RedisConfig {}
+public class RedisConfig {
+
+  @Autowired
+  private RedisCacheProperties cacheProperties;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Bean
+  public TwoTierCacheManager cacheManager(
+      RedisConnectionFactory connectionFactory, StringRedisTemplate redisTemplate) {
+    // allEntries evictions use SCAN instead of KEYS, which blocks Redis on large keyspaces
+    var cacheWriter =
+        RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory, BatchStrategies.scan(1000));
+    var cacheConfigurations = new HashMap<String, RedisCacheConfiguration>();
+    cacheProperties
+        .getTtl()
+        .forEach((name, ttl) -> cacheConfigurations.put(name, createCacheConfiguration(name, ttl)));
+
+    return new TwoTierCacheManager(
+        cacheWriter,
+        createCacheConfiguration("default", cacheProperties.getDefaultTtl()),
+        cacheConfigurations,
+        cacheProperties.getNear(),
+        meterRegistry,
+        redisTemplate);
+  }
+
+  @Bean
+  public RedisMessageListenerContainer cacheInvalidationListenerContainer(
+      RedisConnectionFactory connectionFactory, TwoTierCacheManager cacheManager) {
+    var container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(connectionFactory);
+    container.addMessageListener(
+        (message, pattern) ->
+            cacheManager.onInvalidation(new String(message.getBody(), StandardCharsets.UTF_8)),
+        new ChannelTopic(TwoTierCacheManager.INVALIDATION_CHANNEL));
+    return container;
+  }
+
+  private RedisCacheConfiguration createCacheConfiguration(String cacheName, Duration ttl) {
+    var format = cacheProperties.getFormat();
+    var cacheConfiguration = RedisCacheConfiguration.defaultCacheConfig().entryTtl(ttl);
+    RedisSerializer<Object> serializer;
+    if (format == CacheFormat.JDK) {
+      serializer = RedisSerializer.java();
+    } else {
+      serializer = new BinaryJacksonRedisSerializer(format);
+      // Keep the entries of each format apart, so that switching the format never reads entries
+      // written in another one
+      var prefix = format.name().toLowerCase();
+      cacheConfiguration = cacheConfiguration.computePrefixWith(name -> name + ":" + prefix + "::");
+    }
+    return cacheConfiguration
+        .serializeValuesWith(
+            SerializationPair.fromSerializer(
+                new MeteredRedisSerializer(serializer, cacheName, format, meterRegistry)));
+  }
+}
@@ -0,0 +1,194 @@
+package com.halildurmus.hotdeals.config.cache;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeInfo.As;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectMapper.DefaultTyping;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.domain.Sort.Order;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * Serializes cache entries with Jackson into a binary format (Smile or CBOR).
+ *
+ * <p>Type information is embedded for the cached entities, {@link Page}s are stored as a small
+ * envelope and the {@link NullValue} placeholder of the cache abstraction as a single byte.
+ */
+public class BinaryJacksonRedisSerializer implements RedisSerializer<Object> {
+
+  private static final byte[] NULL_VALUE = {0};
+
+  private final ObjectReader reader;
+
+  private final ObjectWriter writer;
+
+  public BinaryJacksonRedisSerializer(CacheFormat format) {
+    var objectMapper = new ObjectMapper(createFactory(format));
+    objectMapper.setAnnotationIntrospector(new CacheAnnotationIntrospector());
+    objectMapper.registerModule(new JavaTimeModule());
+    objectMapper.registerModule(createObjectIdModule());
+    objectMapper.setVisibility(PropertyAccessor.FIELD, Visibility.ANY);
+    objectMapper.setVisibility(PropertyAccessor.GETTER, Visibility.NONE);
+    objectMapper.setVisibility(PropertyAccessor.IS_GETTER, Visibility.NONE);
+    objectMapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+    objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    var typeValidator =
+        BasicPolymorphicTypeValidator.builder()
+            .allowIfSubType("com.halildurmus.hotdeals.")
+            .allowIfSubType("java.util.")
+            .allowIfSubType("java.time.")
+            .build();
+    objectMapper.activateDefaultTyping(typeValidator, DefaultTyping.NON_FINAL, As.PROPERTY);
+    reader = objectMapper.readerFor(Object.class);
+    writer = objectMapper.writerFor(Object.class);
+  }
+
+  private static JsonFactory createFactory(CacheFormat format) {
+    return switch (format) {
+      case SMILE -> new SmileFactory();
+      case CBOR -> new CBORFactory();
+      case JDK -> throw new IllegalArgumentException("JDK is not a Jackson format");
+    };
+  }
+
+  private static SimpleModule createObjectIdModule() {
+    var module = new SimpleModule("ObjectIdModule");
+    module.addSerializer(
+        ObjectId.class,
+        new JsonSerializer<>() {
+          @Override
+          public void serialize(ObjectId value, JsonGenerator gen, SerializerProvider provider)
+              throws IOException {
+            gen.writeString(value.toHexString());
+          }
+        });
+    module.addDeserializer(
+        ObjectId.class,
+        new JsonDeserializer<>() {
+          @Override
+          public ObjectId deserialize(JsonParser p, DeserializationContext ctxt)
+              throws IOException {
+            return new ObjectId(p.getValueAsString());
+          }
+        });
+    return module;
+  }
+
+  @Override
+  public byte[] serialize(Object value) throws SerializationException {
+    if (value == null) {
+      return new byte[0];
+    }
+    if (value instanceof NullValue) {
+      return NULL_VALUE;
+    }
+
+    try {
+      return writer.writeValueAsBytes(value instanceof Page<?> page ? new CachedPage(page) : value);
+    } catch (IOException e) {
+      throw new SerializationException("Could not write cache entry: " + e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public Object deserialize(byte[] bytes) throws SerializationException {
+    if (bytes == null || bytes.length == 0) {
+      return null;
+    }
+    if (Arrays.equals(bytes, NULL_VALUE)) {
+      return NullValue.INSTANCE;
+    }
+
+    try {
+      var value = reader.readValue(bytes);
+      return value instanceof CachedPage page ? page.toPage() : value;
+    } catch (IOException e) {
+      throw new SerializationException("Could not read cache entry: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Ignores {@link JsonProperty#access()}, the read-only properties of the entities (e.g. {@code
+   * createdAt}) must be restored from the cache as well.
+   */
+  private static class CacheAnnotationIntrospector extends JacksonAnnotationIntrospector {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public JsonProperty.Access findPropertyAccess(Annotated annotated) {
+      return null;
+    }
+  }
+
+  /** The cached representation of a {@link Page}. */
+  @Data
+  @NoArgsConstructor
+  static class CachedPage {
+
+    private List<Object> content;
+
+    // -1 if the page is unpaged
+    private int number;
+
+    private int size;
+
+    private List<String> sort;
+
+    private long total;
+
+    CachedPage(Page<?> page) {
+      content = new ArrayList<>(page.getContent());
+      number = page.getPageable().isPaged() ? page.getNumber() : -1;
+      size = page.getSize();
+      sort = page.getSort().stream().map(o -> o.getDirection() + ":" + o.getProperty()).toList();
+      total = page.getTotalElements();
+    }
+
+    Page<Object> toPage() {
+      if (number < 0) {
+        return new PageImpl<>(content, Pageable.unpaged(), total);
+      }
+      var orders =
+          sort.stream()
+              .map(s -> s.split(":", 2))
+              .map(s -> new Order(Direction.valueOf(s[0]), s[1]))
+              .toList();
+      return new PageImpl<>(content, PageRequest.of(number, size, Sort.by(orders)), total);
+    }
+  }
+}
@@ -0,0 +1,9 @@
+package com.halildurmus.hotdeals.config.cache;
+
+/** The format used to store cache entries in Redis. */
+public enum CacheFormat {
+  SMILE,
+  CBOR,
+  // JDK serialization, kept for rolling back to the format used before the binary formats
+  JDK
+}
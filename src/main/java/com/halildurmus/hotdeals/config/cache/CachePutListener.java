@@ -0,0 +1,8 @@
+package com.halildurmus.hotdeals.config.cache;
+
+/** Gets notified when a value is written to a cache, see {@link TwoTierCacheManager}. */
+@FunctionalInterface
+public interface CachePutListener {
+
+  void onPut(String cacheName, Object key, Object value);
+}
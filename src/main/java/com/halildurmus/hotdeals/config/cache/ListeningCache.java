@@ -0,0 +1,109 @@
+package com.halildurmus.hotdeals.config.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import org.springframework.cache.Cache;
+
+/** A {@link Cache} decorator that reports every written value to a {@link CachePutListener}. */
+class ListeningCache implements Cache {
+
+  private final Cache delegate;
+
+  private final CachePutListener listener;
+
+  ListeningCache(Cache delegate, CachePutListener listener) {
+    this.delegate = delegate;
+    this.listener = listener;
+  }
+
+  Cache getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public String getName() {
+    return delegate.getName();
+  }
+
+  @Override
+  public Object getNativeCache() {
+    return delegate.getNativeCache();
+  }
+
+  @Override
+  public ValueWrapper get(Object key) {
+    return delegate.get(key);
+  }
+
+  @Override
+  public <T> T get(Object key, Class<T> type) {
+    return delegate.get(key, type);
+  }
+
+  @Override
+  public <T> T get(Object key, Callable<T> valueLoader) {
+    return delegate.get(
+        key,
+        () -> {
+          var value = valueLoader.call();
+          listener.onPut(getName(), key, value);
+          return value;
+        });
+  }
+
+  @Override
+  public CompletableFuture<?> retrieve(Object key) {
+    return delegate.retrieve(key);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> retrieve(
+      Object key, Supplier<CompletableFuture<T>> valueLoader) {
+    return delegate.retrieve(
+        key,
+        () ->
+            valueLoader
+                .get()
+                .thenApply(
+                    value -> {
+                      listener.onPut(getName(), key, value);
+                      return value;
+                    }));
+  }
+
+  @Override
+  public void put(Object key, Object value) {
+    delegate.put(key, value);
+    listener.onPut(getName(), key, value);
+  }
+
+  @Override
+  public ValueWrapper putIfAbsent(Object key, Object value) {
+    var existingValue = delegate.putIfAbsent(key, value);
+    if (existingValue == null) {
+      listener.onPut(getName(), key, value);
+    }
+    return existingValue;
+  }
+
+  @Override
+  public void evict(Object key) {
+    delegate.evict(key);
+  }
+
+  @Override
+  public boolean evictIfPresent(Object key) {
+    return delegate.evictIfPresent(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  @Override
+  public boolean invalidate() {
+    return delegate.invalidate();
+  }
+}
@@ -0,0 +1,70 @@
+package com.halildurmus.hotdeals.config.cache;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * Publishes the size of the serialized cache entries and the time spent encoding and decoding
+ * them, tagged by cache name and format.
+ */
+public class MeteredRedisSerializer implements RedisSerializer<Object> {
+
+  private final RedisSerializer<Object> delegate;
+
+  private final DistributionSummary size;
+
+  private final Timer encodeTimer;
+
+  private final Timer decodeTimer;
+
+  public MeteredRedisSerializer(
+      RedisSerializer<Object> delegate,
+      String cacheName,
+      CacheFormat format,
+      MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    size =
+        DistributionSummary.builder("cache.serialization.size")
+            .description("Size of the serialized cache entries")
+            .baseUnit("bytes")
+            .tag("cache", cacheName)
+            .tag("format", format.name())
+            .register(meterRegistry);
+    encodeTimer = createTimer("encode", cacheName, format, meterRegistry);
+    decodeTimer = createTimer("decode", cacheName, format, meterRegistry);
+  }
+
+  private static Timer createTimer(
+      String operation, String cacheName, CacheFormat format, MeterRegistry meterRegistry) {
+    return Timer.builder("cache.serialization")
+        .description("Time spent serializing and deserializing cache entries")
+        .tag("cache", cacheName)
+        .tag("format", format.name())
+        .tag("operation", operation)
+        .register(meterRegistry);
+  }
+
+  @Override
+  public byte[] serialize(Object value) throws SerializationException {
+    var sample = Timer.start();
+    var bytes = delegate.serialize(value);
+    sample.stop(encodeTimer);
+    if (bytes != null) {
+      size.record(bytes.length);
+    }
+    return bytes;
+  }
+
+  @Override
+  public Object deserialize(byte[] bytes) throws SerializationException {
+    var sample = Timer.start();
+    try {
+      return delegate.deserialize(bytes);
+    } finally {
+      sample.stop(decodeTimer);
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package com.halildurmus.hotdeals.config.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties("cache")
+@Data
+public class RedisCacheProperties {
+
+  private CacheFormat format = CacheFormat.SMILE;
+
+  // The TTL of the caches that don't have an entry in ttl
+  private Duration defaultTtl = Duration.ofHours(1);
+
+  // Cache name -> TTL, cache names containing ':' need to be written as "[name]" in YAML
+  private Map<String, Duration> ttl = new HashMap<>();
+
+  private Near near = new Near();
+
+  /** The in-process cache kept in front of Redis for the listed caches. */
+  @Data
+  public static class Near {
+
+    private List<String> caches = new ArrayList<>();
+
+    // The maximum number of entries per cache
+    private long maxSize = 10_000;
+
+    // Bounds the staleness of an entry if an invalidation message is lost
+    private Duration ttl = Duration.ofMinutes(1);
+  }
+}
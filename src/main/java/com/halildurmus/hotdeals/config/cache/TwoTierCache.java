@@ -0,0 +1,147 @@
+package com.halildurmus.hotdeals.config.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+/**
+ * A {@link RedisCache} with an in-process near cache in front of it.
+ *
+ * <p>The near cache holds the serialized entries, so every hit returns a fresh copy that callers
+ * are free to modify. Writes go to Redis first, then the entry is dropped from the near cache of
+ * this node and an invalidation is published for the other nodes.
+ */
+public class TwoTierCache extends RedisCache {
+
+  // The key used to clear the whole cache in invalidation messages
+  static final String ALL_KEYS = "*";
+
+  private final Cache<String, byte[]> nearCache;
+
+  private final BiConsumer<String, String> invalidationPublisher;
+
+  // Reads several Redis keys in a single MGET, the values of the missing keys are null
+  private final Function<List<byte[]>, List<byte[]>> multiGet;
+
+  protected TwoTierCache(
+      String name,
+      RedisCacheWriter cacheWriter,
+      RedisCacheConfiguration cacheConfiguration,
+      Cache<String, byte[]> nearCache,
+      BiConsumer<String, String> invalidationPublisher,
+      Function<List<byte[]>, List<byte[]>> multiGet) {
+    super(name, cacheWriter, cacheConfiguration);
+    this.nearCache = nearCache;
+    this.invalidationPublisher = invalidationPublisher;
+    this.multiGet = multiGet;
+  }
+
+  /**
+   * Looks up several entries at once. The near cache is checked first, the remaining keys are read
+   * from Redis in a single round trip.
+   *
+   * @param keys the keys
+   * @return the cached values by their key, without the keys that are not cached
+   */
+  public Map<Object, Object> getAll(Collection<?> keys) {
+    Map<Object, Object> values = new HashMap<>();
+    List<Object> missingKeys = new ArrayList<>();
+    List<byte[]> missingCacheKeys = new ArrayList<>();
+    for (var key : keys) {
+      var cacheKey = createCacheKey(key);
+      var value = nearCache.getIfPresent(cacheKey);
+      if (value != null) {
+        putValue(values, key, value);
+      } else {
+        missingKeys.add(key);
+        missingCacheKeys.add(serializeCacheKey(cacheKey));
+      }
+    }
+    if (missingKeys.isEmpty()) {
+      return values;
+    }
+
+    var redisValues = multiGet.apply(missingCacheKeys);
+    for (var i = 0; i < missingKeys.size(); i++) {
+      var value = redisValues.get(i);
+      if (value != null) {
+        nearCache.put(createCacheKey(missingKeys.get(i)), value);
+        putValue(values, missingKeys.get(i), value);
+      }
+    }
+    return values;
+  }
+
+  // The cached nulls are left out, as if the key was not cached
+  private void putValue(Map<Object, Object> values, Object key, byte[] value) {
+    var storeValue = fromStoreValue(deserializeCacheValue(value));
+    if (storeValue != null) {
+      values.put(key, storeValue);
+    }
+  }
+
+  @Override
+  protected Object lookup(Object key) {
+    var cacheKey = createCacheKey(key);
+    var value = nearCache.getIfPresent(cacheKey);
+    if (value == null) {
+      value = getCacheWriter().get(getName(), serializeCacheKey(cacheKey));
+      if (value == null) {
+        return null;
+      }
+      nearCache.put(cacheKey, value);
+    }
+    return deserializeCacheValue(value);
+  }
+
+  @Override
+  public void put(Object key, Object value) {
+    super.put(key, value);
+    invalidate(createCacheKey(key));
+  }
+
+  @Override
+  public ValueWrapper putIfAbsent(Object key, Object value) {
+    var existingValue = super.putIfAbsent(key, value);
+    invalidate(createCacheKey(key));
+    return existingValue;
+  }
+
+  @Override
+  public void evict(Object key) {
+    super.evict(key);
+    invalidate(createCacheKey(key));
+  }
+
+  @Override
+  public void clear(String keyPattern) {
+    super.clear(keyPattern);
+    invalidate(ALL_KEYS);
+  }
+
+  private void invalidate(String cacheKey) {
+    invalidateLocally(cacheKey);
+    invalidationPublisher.accept(getName(), cacheKey);
+  }
+
+  /**
+   * Drops an entry from the near cache of this node only.
+   *
+   * @param cacheKey the Redis key of the entry, {@link #ALL_KEYS} to drop every entry
+   */
+  void invalidateLocally(String cacheKey) {
+    if (ALL_KEYS.equals(cacheKey)) {
+      nearCache.invalidateAll();
+    } else {
+      nearCache.invalidate(cacheKey);
+    }
+  }
+}
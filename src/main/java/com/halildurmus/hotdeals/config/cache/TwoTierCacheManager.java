@@ -0,0 +1,173 @@
+package com.halildurmus.hotdeals.config.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * A {@link RedisCacheManager} that puts an in-process near cache in front of the configured
+ * caches. The near caches of all nodes are kept coherent through Redis pub/sub: every write
+ * publishes an invalidation message on {@link #INVALIDATION_CHANNEL}.
+ *
+ * <p>Writes to any cache can be observed with {@link #addPutListener}.
+ */
+@Slf4j
+public class TwoTierCacheManager extends RedisCacheManager {
+
+  public static final String INVALIDATION_CHANNEL = "cache:invalidations";
+
+  // Identifies the messages published by this node, which don't need to be processed again
+  private final String nodeId = UUID.randomUUID().toString();
+
+  private final Map<String, TwoTierCache> twoTierCaches = new ConcurrentHashMap<>();
+
+  private final Map<String, List<CachePutListener>> putListeners = new ConcurrentHashMap<>();
+
+  private final RedisCacheProperties.Near nearCacheProperties;
+
+  private final MeterRegistry meterRegistry;
+
+  private final StringRedisTemplate redisTemplate;
+
+  public TwoTierCacheManager(
+      RedisCacheWriter cacheWriter,
+      RedisCacheConfiguration defaultCacheConfiguration,
+      Map<String, RedisCacheConfiguration> initialCacheConfigurations,
+      RedisCacheProperties.Near nearCacheProperties,
+      MeterRegistry meterRegistry,
+      StringRedisTemplate redisTemplate) {
+    super(cacheWriter, defaultCacheConfiguration, initialCacheConfigurations);
+    this.nearCacheProperties = nearCacheProperties;
+    this.meterRegistry = meterRegistry;
+    this.redisTemplate = redisTemplate;
+  }
+
+  @Override
+  protected RedisCache createRedisCache(String name, RedisCacheConfiguration cacheConfiguration) {
+    if (!nearCacheProperties.getCaches().contains(name)) {
+      return super.createRedisCache(name, cacheConfiguration);
+    }
+
+    var nearCache =
+        Caffeine.newBuilder()
+            .maximumSize(nearCacheProperties.getMaxSize())
+            .expireAfterWrite(nearCacheProperties.getTtl())
+            .recordStats()
+            .<String, byte[]>build();
+    CaffeineCacheMetrics.monitor(meterRegistry, nearCache, name + ":near");
+    var cache =
+        new TwoTierCache(
+            name,
+            getCacheWriter(),
+            cacheConfiguration,
+            nearCache,
+            this::publishInvalidation,
+            this::multiGet);
+    twoTierCaches.put(name, cache);
+    return cache;
+  }
+
+  // The caches are decorated once, when they are created, while the listeners can be added at any
+  // time, so they are looked up on every write
+  @Override
+  protected Cache decorateCache(Cache cache) {
+    return new ListeningCache(super.decorateCache(cache), this::notifyPutListeners);
+  }
+
+  /**
+   * Registers a listener that gets notified after a value is written to the given cache.
+   *
+   * @param cacheName the name of the cache
+   * @param listener the listener
+   */
+  public void addPutListener(String cacheName, CachePutListener listener) {
+    putListeners.computeIfAbsent(cacheName, name -> new CopyOnWriteArrayList<>()).add(listener);
+  }
+
+  private void notifyPutListeners(String cacheName, Object key, Object value) {
+    for (var listener : putListeners.getOrDefault(cacheName, List.of())) {
+      try {
+        listener.onPut(cacheName, key, value);
+      } catch (Exception e) {
+        // The value is cached already, a failing listener must not fail the caller
+        log.warn("Cache put listener failed for {} in {}", key, cacheName, e);
+      }
+    }
+  }
+
+  /**
+   * Looks up several entries of a cache at once, see {@link TwoTierCache#getAll}. The caches
+   * without a near cache are read one key at a time.
+   *
+   * @param cacheName the name of the cache
+   * @param keys the keys
+   * @return the cached values by their key, without the keys that are not cached
+   */
+  public Map<Object, Object> getAll(String cacheName, Collection<?> keys) {
+    // Creates the cache on first use
+    var cache = getCache(cacheName);
+    var twoTierCache = twoTierCaches.get(cacheName);
+    if (twoTierCache != null) {
+      return twoTierCache.getAll(keys);
+    }
+
+    Map<Object, Object> values = new HashMap<>();
+    for (var key : keys) {
+      var value = cache != null ? cache.get(key) : null;
+      if (value != null && value.get() != null) {
+        values.put(key, value.get());
+      }
+    }
+    return values;
+  }
+
+  private List<byte[]> multiGet(List<byte[]> keys) {
+    var values =
+        redisTemplate.execute(
+            (RedisCallback<List<byte[]>>)
+                connection -> connection.stringCommands().mGet(keys.toArray(byte[][]::new)));
+    return values != null ? values : Collections.nCopies(keys.size(), null);
+  }
+
+  private void publishInvalidation(String cacheName, String cacheKey) {
+    try {
+      redisTemplate.convertAndSend(
+          INVALIDATION_CHANNEL, String.join("|", nodeId, cacheName, cacheKey));
+    } catch (Exception e) {
+      // The other nodes will drop the entry when it expires
+      log.warn("Failed to publish the invalidation of {} in {}", cacheKey, cacheName, e);
+    }
+  }
+
+  /**
+   * Handles an invalidation message published by any node.
+   *
+   * @param message the message in the form {@code nodeId|cacheName|cacheKey}
+   */
+  public void onInvalidation(String message) {
+    var parts = message.split("\\|", 3);
+    if (parts.length != 3 || parts[0].equals(nodeId)) {
+      return;
+    }
+    var cache = twoTierCaches.get(parts[1]);
+    if (cache != null) {
+      cache.invalidateLocally(parts[2]);
+    }
+  }
+}
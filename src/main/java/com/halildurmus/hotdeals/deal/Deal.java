@@ -5,10 +5,8 @@ import com.fasterxml.jackson.annotation.JsonProperty.Access;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.halildurmus.hotdeals.audit.DateAudit;
 import com.halildurmus.hotdeals.util.ObjectIdJsonSerializer;
-import com.halildurmus.hotdeals.util.ObjectIdSetJsonSerializer;
 import io.swagger.v3.oas.annotations.media.Schema;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
@@ -24,11 +22,22 @@ import org.bson.types.ObjectId;
 import org.hibernate.validator.constraints.URL;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.TypeAlias;
-import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "deals")
 @TypeAlias("deal")
+// One index per DealRepository listing, equality fields first, then the sort fields with _id as
+// the tie-breaker of the cursor pagination. The category prefix is a range, so it comes last and
+// is matched while walking the index in createdAt order, see DealIndexAdvisor.
+@CompoundIndexes({
+    @CompoundIndex(name = "status_createdAt", def = "{'status': 1, 'createdAt': -1, '_id': -1}"),
+    @CompoundIndex(name = "status_dealScore", def = "{'status': 1, 'dealScore': -1, '_id': -1}"),
+    @CompoundIndex(name = "createdAt_category", def = "{'createdAt': -1, '_id': -1, 'category': 1}"),
+    @CompoundIndex(name = "store_createdAt", def = "{'store': 1, 'createdAt': -1, '_id': -1}"),
+    @CompoundIndex(name = "postedBy_createdAt", def = "{'postedBy': 1, 'createdAt': -1, '_id': -1}")
+})
 @EqualsAndHashCode(callSuper = true)
 @Data
 @SuperBuilder
@@ -42,7 +51,6 @@ public class Deal extends DateAudit {
   @Id
   private String id;
 
-  @Indexed
   @JsonProperty(access = Access.READ_ONLY)
   @JsonSerialize(using = ObjectIdJsonSerializer.class)
   private ObjectId postedBy;
@@ -54,13 +62,11 @@ public class Deal extends DateAudit {
   @Schema(description = "Deal score", example = "3")
   private int dealScore = 0;
 
-  @Default
-  @JsonSerialize(using = ObjectIdSetJsonSerializer.class)
-  private HashSet<ObjectId> upvoters = new HashSet<>();
+  @Schema(description = "Deal upvote count", example = "4")
+  private int upvotes;
 
-  @Default
-  @JsonSerialize(using = ObjectIdSetJsonSerializer.class)
-  private HashSet<ObjectId> downvoters = new HashSet<>();
+  @Schema(description = "Deal downvote count", example = "1")
+  private int downvotes;
 
   @Schema(description = "Category path", example = "/computers/monitors")
   @NotBlank
@@ -0,0 +1,100 @@
+package com.halildurmus.hotdeals.deal;
+
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Evicts the cached deal pages affected by the deals saved or deleted through {@link
+ * DealRepository}. The fields the pages depend on are read before the write, so that the pages of
+ * both the old and the new values can be evicted.
+ */
+@Slf4j
+@Component
+class DealCacheEvictionListener extends AbstractMongoEventListener<Deal> {
+
+  // The before and after events of a write are published on the calling thread
+  private final ThreadLocal<List<Deal>> previousDeals = new ThreadLocal<>();
+
+  @Autowired private MongoTemplate mongoTemplate;
+
+  @Autowired private DealCacheIndex cacheIndex;
+
+  @Override
+  public void onBeforeSave(BeforeSaveEvent<Deal> event) {
+    var id = event.getSource().getId();
+    previousDeals.set(
+        id == null ? List.of() : findDependencies(new Query(Criteria.where("_id").is(id))));
+  }
+
+  @Override
+  public void onAfterSave(AfterSaveEvent<Deal> event) {
+    var previous = takePreviousDeals();
+    evict(previous.isEmpty() ? null : previous.getFirst(), event.getSource());
+  }
+
+  @Override
+  public void onBeforeDelete(BeforeDeleteEvent<Deal> event) {
+    var document = event.getDocument();
+    previousDeals.set(document == null ? List.of() : findDependencies(new BasicQuery(document)));
+  }
+
+  @Override
+  public void onAfterDelete(AfterDeleteEvent<Deal> event) {
+    takePreviousDeals().forEach(deal -> evict(deal, null));
+  }
+
+  private List<Deal> findDependencies(Query query) {
+    query
+        .fields()
+        .include("category")
+        .include("store")
+        .include("status")
+        .include("postedBy")
+        .include("dealScore");
+    return mongoTemplate.find(query, Deal.class);
+  }
+
+  private List<Deal> takePreviousDeals() {
+    var deals = previousDeals.get();
+    previousDeals.remove();
+    return deals == null ? List.of() : deals;
+  }
+
+  private void evict(Deal before, Deal after) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      // Evicting before the commit would let a concurrent read cache the old deal again
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              doEvict(before, after);
+            }
+          });
+    } else {
+      doEvict(before, after);
+    }
+  }
+
+  private void doEvict(Deal before, Deal after) {
+    var deal = after == null ? before : after;
+    try {
+      cacheIndex.evict(before, after);
+    } catch (Exception e) {
+      // The write has succeeded already, the pages expire with their TTL
+      log.warn("Failed to evict the cached pages of deal {}", deal.getId(), e);
+    }
+  }
+}
@@ -0,0 +1,215 @@
+package com.halildurmus.hotdeals.deal;
+
+import com.halildurmus.hotdeals.config.cache.CachePutListener;
+import com.halildurmus.hotdeals.config.cache.RedisCacheProperties;
+import com.halildurmus.hotdeals.config.cache.TwoTierCacheManager;
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tracks what the cached deal pages depend on, so that a write only evicts the pages it can
+ * affect instead of clearing the whole caches.
+ *
+ * <p>Every cached page is recorded in two kinds of Redis sets: one per dimension, the category
+ * prefix, store, status or poster the page was queried by, and one per deal listed on the page.
+ */
+@Component
+class DealCacheIndex implements CachePutListener {
+
+  static final String CATEGORY_CACHE = "deals:findAllByCategoryStartsWithOrderByCreatedAtDesc";
+
+  static final String STORE_CACHE = "deals:findAllByStoreOrderByCreatedAtDesc";
+
+  static final String LATEST_CACHE = "deals:findAllByStatusEqualsOrderByCreatedAtDesc";
+
+  static final String MOST_LIKED_CACHE = "deals:findAllByStatusEqualsOrderByDealScoreDesc";
+
+  static final String POSTED_BY_CACHE = "deals:findAllByPostedByOrderByCreatedAtDesc";
+
+  private static final String COUNT_BY_STORE_CACHE = "deals:countDealsByStore";
+
+  private static final String COUNT_BY_POSTED_BY_CACHE = "deals:countDealsByPostedBy";
+
+  private static final String KEY_PREFIX = "deals:cache-index:";
+
+  // Cache name -> the deal field the pages of the cache are queried by
+  private static final Map<String, Function<Deal, Object>> DIMENSIONS =
+      Map.of(
+          CATEGORY_CACHE, Deal::getCategory,
+          STORE_CACHE, Deal::getStore,
+          LATEST_CACHE, Deal::getStatus,
+          MOST_LIKED_CACHE, Deal::getStatus,
+          POSTED_BY_CACHE, Deal::getPostedBy);
+
+  @Autowired private TwoTierCacheManager cacheManager;
+
+  @Autowired private StringRedisTemplate redisTemplate;
+
+  @Autowired private RedisCacheProperties cacheProperties;
+
+  @PostConstruct
+  void registerListeners() {
+    DIMENSIONS.keySet().forEach(cacheName -> cacheManager.addPutListener(cacheName, this));
+  }
+
+  @Override
+  public void onPut(String cacheName, Object key, Object value) {
+    if (!(value instanceof Page<?> page)) {
+      return;
+    }
+    var pageKey = key.toString();
+    var dimension = dimensionOf(pageKey);
+    // Outlives the indexed pages, so that a page can't be left without its index entries
+    var ttl = indexTtl().toSeconds();
+    redisTemplate.executePipelined(
+        (RedisCallback<Object>)
+            connection -> {
+              if (CATEGORY_CACHE.equals(cacheName)) {
+                addToIndex(connection, dimensionsKey(cacheName), dimension, ttl);
+              }
+              addToIndex(connection, dimensionKey(cacheName, dimension), pageKey, ttl);
+              for (var content : page.getContent()) {
+                if (content instanceof Deal deal && deal.getId() != null) {
+                  addToIndex(connection, dealKey(deal.getId()), cacheName + "|" + pageKey, ttl);
+                }
+              }
+              return null;
+            });
+  }
+
+  /**
+   * Evicts the cached pages whose membership, ordering or content can be changed by a write.
+   *
+   * @param before the deal before the write, {@code null} if the deal has been created
+   * @param after the deal after the write, {@code null} if the deal has been deleted
+   */
+  void evict(Deal before, Deal after) {
+    if (before == null || after == null) {
+      // Every page of the deal's dimensions shifts by one
+      var deal = before == null ? after : before;
+      DIMENSIONS.forEach((cacheName, field) -> evictDimension(cacheName, field.apply(deal)));
+      if (after == null) {
+        evictCount(COUNT_BY_STORE_CACHE, deal.getStore());
+        evictCount(COUNT_BY_POSTED_BY_CACHE, deal.getPostedBy());
+        evictDeal(deal.getId());
+      }
+      return;
+    }
+
+    evictDeal(after.getId());
+    DIMENSIONS.forEach(
+        (cacheName, field) -> {
+          var oldValue = field.apply(before);
+          var newValue = field.apply(after);
+          if (!Objects.equals(oldValue, newValue)) {
+            // The deal leaves the pages of the old value and joins the pages of the new one, which
+            // shifts all of their pages, not only the ones listing the deal
+            evictDimension(cacheName, oldValue);
+            evictDimension(cacheName, newValue);
+          }
+        });
+    if (before.getStatus() == after.getStatus() && before.getDealScore() != after.getDealScore()) {
+      // The deal can move onto pages that don't list it yet
+      evictDimension(MOST_LIKED_CACHE, after.getStatus());
+    }
+    // The repository evicts the counts of the new store and poster
+    if (!Objects.equals(before.getStore(), after.getStore())) {
+      evictCount(COUNT_BY_STORE_CACHE, before.getStore());
+    }
+    if (!Objects.equals(before.getPostedBy(), after.getPostedBy())) {
+      evictCount(COUNT_BY_POSTED_BY_CACHE, before.getPostedBy());
+    }
+  }
+
+  private void evictDimension(String cacheName, Object value) {
+    if (value == null) {
+      return;
+    }
+    var dimension = value.toString();
+    if (!CATEGORY_CACHE.equals(cacheName)) {
+      evictPages(dimensionKey(cacheName, dimension), pageKey -> cacheName + "|" + pageKey);
+      return;
+    }
+
+    // The category pages are queried by prefix
+    var prefixes = redisTemplate.opsForSet().members(dimensionsKey(cacheName));
+    if (prefixes == null) {
+      return;
+    }
+    prefixes.stream()
+        .filter(dimension::startsWith)
+        .forEach(
+            prefix ->
+                evictPages(dimensionKey(cacheName, prefix), pageKey -> cacheName + "|" + pageKey));
+  }
+
+  private void evictDeal(String dealId) {
+    if (dealId != null) {
+      evictPages(dealKey(dealId), Function.identity());
+    }
+  }
+
+  private void evictPages(String indexKey, Function<String, String> toEntry) {
+    var members = redisTemplate.opsForSet().members(indexKey);
+    if (members == null || members.isEmpty()) {
+      return;
+    }
+    for (var member : members) {
+      var entry = toEntry.apply(member).split("\\|", 2);
+      var cache = cacheManager.getCache(entry[0]);
+      if (cache != null && entry.length == 2) {
+        cache.evict(entry[1]);
+      }
+    }
+    // Only removes the evicted pages, a page cached in the meantime stays indexed
+    redisTemplate.opsForSet().remove(indexKey, members.toArray());
+  }
+
+  private void evictCount(String cacheName, Object key) {
+    var cache = cacheManager.getCache(cacheName);
+    if (cache != null && key != null) {
+      cache.evict(key);
+    }
+  }
+
+  private Duration indexTtl() {
+    return DIMENSIONS.keySet().stream()
+        .map(name -> cacheProperties.getTtl().getOrDefault(name, cacheProperties.getDefaultTtl()))
+        .max(Duration::compareTo)
+        .orElse(cacheProperties.getDefaultTtl());
+  }
+
+  private static void addToIndex(RedisConnection connection, String key, String member, long ttl) {
+    var rawKey = key.getBytes(StandardCharsets.UTF_8);
+    connection.setCommands().sAdd(rawKey, member.getBytes(StandardCharsets.UTF_8));
+    connection.keyCommands().expire(rawKey, ttl);
+  }
+
+  // The page keys are in the form "<dimension>-<pageable>", see DealRepository
+  static String dimensionOf(String pageKey) {
+    var separator = pageKey.lastIndexOf('-');
+    return separator < 0 ? pageKey : pageKey.substring(0, separator);
+  }
+
+  private static String dimensionsKey(String cacheName) {
+    return KEY_PREFIX + cacheName;
+  }
+
+  private static String dimensionKey(String cacheName, String dimension) {
+    return KEY_PREFIX + cacheName + ":" + dimension;
+  }
+
+  private static String dealKey(String dealId) {
+    return KEY_PREFIX + "deal:" + dealId;
+  }
+}
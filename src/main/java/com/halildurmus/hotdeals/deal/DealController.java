@@ -1,6 +1,5 @@
 package com.halildurmus.hotdeals.deal;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.halildurmus.hotdeals.comment.CommentService;
 import com.halildurmus.hotdeals.comment.dto.CommentGetDTO;
 import com.halildurmus.hotdeals.comment.dto.CommentPostDTO;
@@ -8,7 +7,11 @@ import com.halildurmus.hotdeals.comment.dto.CommentsDTO;
 import com.halildurmus.hotdeals.deal.dto.DealGetDTO;
 import com.halildurmus.hotdeals.deal.dto.DealPatchDTO;
 import com.halildurmus.hotdeals.deal.dto.DealPostDTO;
+import com.halildurmus.hotdeals.deal.es.DealSearchCursor;
+import com.halildurmus.hotdeals.deal.es.DealSearchResponse;
 import com.halildurmus.hotdeals.deal.es.EsDealService;
+import com.halildurmus.hotdeals.deal.es.SearchQueryLog;
+import com.halildurmus.hotdeals.deal.es.SearchQueryStats;
 import com.halildurmus.hotdeals.exception.CommentNotFoundException;
 import com.halildurmus.hotdeals.exception.DealNotFoundException;
 import com.halildurmus.hotdeals.mapstruct.MapStructMapper;
@@ -20,6 +23,7 @@ import com.halildurmus.hotdeals.security.role.IsSuper;
 import com.halildurmus.hotdeals.util.IsObjectId;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.headers.Header;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
@@ -28,17 +32,24 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 import org.bson.types.ObjectId;
 import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -64,6 +75,12 @@ public class DealController {
 
   private static final List<String> ORDER_TYPES = List.of("asc", "desc");
 
+  private static final List<String> SUPPORTED_FACETS = List.of("category", "price", "store", "type", "location", "none");
+
+  private static final String AFTER_DESCRIPTION = "The cursor returned in the <b>X-Next-Cursor</b> header of the previous page. When given, the page number and sort of the pageable are ignored and the next page is fetched without skipping or counting deals.";
+
+  private static final String SEARCH_AFTER_DESCRIPTION = "The <b>next</b> cursor returned with the previous page. When given, the page number of the pageable is ignored, the next page is searched in a point in time and the facets are not counted.";
+
   @Autowired
   private MapStructMapper mapStructMapper;
 
@@ -82,6 +99,9 @@ public class DealController {
   @Autowired
   private EsDealService esDealService;
 
+  @Autowired
+  private SearchQueryLog searchQueryLog;
+
   @GetMapping
   @IsSuper
   @Operation(summary = "Returns all deals", security = @SecurityRequirement(name = "bearerAuth"))
@@ -133,51 +153,85 @@ public class DealController {
   @GetMapping("/search/byCategory")
   @Operation(summary = "Finds deals by category")
   @ApiResponses({
-      @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = DealGetDTO.class)))),
+      @ApiResponse(responseCode = "200", description = "Successful operation", headers = @Header(name = DealCursor.NEXT_CURSOR_HEADER, description = "The cursor of the next page, missing on the last page"), content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = DealGetDTO.class)))),
       @ApiResponse(responseCode = "400", description = "Bad Request", content = @Content)
   })
-  public List<DealGetDTO> getDealsByCategory(
+  public ResponseEntity<List<DealGetDTO>> getDealsByCategory(
       @Parameter(description = "The category path", example = "/computers") @RequestParam String category,
+      @Parameter(description = AFTER_DESCRIPTION) @RequestParam(required = false) String after,
       @ParameterObject Pageable pageable) {
-    var deals = service.getDealsByCategory(category, pageable);
-    return deals.getContent().stream()
-        .map(mapStructMapper::dealToDealGetDTO)
-        .collect(Collectors.toList());
+    var deals = after == null
+        ? service.getDealsByCategory(category, pageable)
+        : service.getDealsByCategory(category, DealCursor.decode(after), pageable.getPageSize());
+    return toResponse(deals, "createdAt");
   }
 
   @GetMapping("/search/byStoreId")
   @Operation(summary = "Finds deals by store ID")
   @ApiResponses({
-      @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = DealGetDTO.class)))),
+      @ApiResponse(responseCode = "200", description = "Successful operation", headers = @Header(name = DealCursor.NEXT_CURSOR_HEADER, description = "The cursor of the next page, missing on the last page"), content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = DealGetDTO.class)))),
       @ApiResponse(responseCode = "400", description = "Invalid store ID", content = @Content)
   })
-  public List<DealGetDTO> getDealsByStoreId(
+  public ResponseEntity<List<DealGetDTO>> getDealsByStoreId(
       @Parameter(description = "String representation of the Store ID", example = "5fbe790ec6f0b32014074bb1") @IsObjectId @RequestParam String storeId,
+      @Parameter(description = AFTER_DESCRIPTION) @RequestParam(required = false) String after,
       @ParameterObject Pageable pageable) {
-    var deals = service.getDealsByStoreId(new ObjectId(storeId), pageable);
-    return deals.getContent().stream()
-        .map(mapStructMapper::dealToDealGetDTO)
-        .collect(Collectors.toList());
+    var deals = after == null
+        ? service.getDealsByStoreId(new ObjectId(storeId), pageable)
+        : service.getDealsByStoreId(new ObjectId(storeId), DealCursor.decode(after), pageable.getPageSize());
+    return toResponse(deals, "createdAt");
   }
 
   @GetMapping("/search/latestActive")
   @Operation(summary = "Returns deals sorted by post date")
-  @ApiResponses(@ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = DealGetDTO.class)))))
-  public List<DealGetDTO> getLatestActiveDeals(@ParameterObject Pageable pageable) {
-    var deals = service.getLatestActiveDeals(pageable);
-    return deals.getContent().stream()
-        .map(mapStructMapper::dealToDealGetDTO)
-        .collect(Collectors.toList());
+  @ApiResponses({
+      @ApiResponse(responseCode = "200", description = "Successful operation", headers = @Header(name = DealCursor.NEXT_CURSOR_HEADER, description = "The cursor of the next page, missing on the last page"), content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = DealGetDTO.class)))),
+      @ApiResponse(responseCode = "400", description = "Invalid cursor", content = @Content)
+  })
+  public ResponseEntity<List<DealGetDTO>> getLatestActiveDeals(
+      @Parameter(description = AFTER_DESCRIPTION) @RequestParam(required = false) String after,
+      @ParameterObject Pageable pageable) {
+    var deals = after == null
+        ? service.getLatestActiveDeals(pageable)
+        : service.getLatestActiveDeals(DealCursor.decode(after), pageable.getPageSize());
+    return toResponse(deals, "createdAt");
   }
 
   @GetMapping("/search/mostLikedActive")
   @Operation(summary = "Returns deals sorted by deal score")
+  @ApiResponses({
+      @ApiResponse(responseCode = "200", description = "Successful operation", headers = @Header(name = DealCursor.NEXT_CURSOR_HEADER, description = "The cursor of the next page, missing on the last page"), content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = DealGetDTO.class)))),
+      @ApiResponse(responseCode = "400", description = "Invalid cursor", content = @Content)
+  })
+  public ResponseEntity<List<DealGetDTO>> getMostLikedActiveDeals(
+      @Parameter(description = AFTER_DESCRIPTION) @RequestParam(required = false) String after,
+      @ParameterObject Pageable pageable) {
+    var deals = after == null
+        ? service.getMostLikedActiveDeals(pageable)
+        : service.getMostLikedActiveDeals(DealCursor.decode(after), pageable.getPageSize());
+    return toResponse(deals, "dealScore");
+  }
+
+  @GetMapping("/search/hot")
+  @Operation(summary = "Returns the hottest active deals, ranked by deal score, views and post date")
   @ApiResponses(@ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = DealGetDTO.class)))))
-  public List<DealGetDTO> getMostLikedActiveDeals(@ParameterObject Pageable pageable) {
-    var deals = service.getMostLikedActiveDeals(pageable);
-    return deals.getContent().stream()
+  public List<DealGetDTO> getHotDeals(@ParameterObject Pageable pageable) {
+    return service.getHotDeals(pageable).stream()
         .map(mapStructMapper::dealToDealGetDTO)
-        .collect(Collectors.toList());
+        .toList();
+  }
+
+  // Both the offset and the cursor based pages return the cursor of the next page, so that clients
+  // can switch to cursors after the first page
+  private ResponseEntity<List<DealGetDTO>> toResponse(Slice<Deal> deals, String sortField) {
+    var response = ResponseEntity.ok();
+    if (deals.hasNext() && deals.hasContent()) {
+      var last = deals.getContent().get(deals.getNumberOfElements() - 1);
+      response.header(DealCursor.NEXT_CURSOR_HEADER, DealCursor.of(last, sortField).encode());
+    }
+    return response.body(deals.getContent().stream()
+        .map(mapStructMapper::dealToDealGetDTO)
+        .collect(Collectors.toList()));
   }
 
   private List<PriceRange> parsePricesParam(List<String> prices) {
@@ -206,10 +260,10 @@ public class DealController {
   @GetMapping("/searches")
   @Operation(summary = "Returns search results for given query and filters")
   @ApiResponses({
-      @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(mediaType = "application/json", schema = @Schema(implementation = JsonNode.class))),
+      @ApiResponse(responseCode = "200", description = "Successful operation. With <b>raw=true</b>, the search response of Elasticsearch.", content = @Content(mediaType = "application/json", schema = @Schema(implementation = DealSearchResponse.class))),
       @ApiResponse(responseCode = "400", description = "Bad Request", content = @Content),
   })
-  public JsonNode searchDeals(
+  public DealSearchResponse searchDeals(
       @Parameter(description = "Search query", example = "iphone") @RequestParam(value = "query") String query,
       @Parameter(description = "Category paths", example = "/computers, /electronics") @RequestParam(value = "categories", required = false) List<String> categories,
       @Parameter(description = "Deal types", example = "MAYOREO, MENUDEO, MAYOREO_MENUDEO") @RequestParam(value = "types", required = false) List<String> types,
@@ -225,7 +279,11 @@ public class DealController {
           @ExampleObject(name = "price", description = "Sorts results by deal price")
       }) @RequestParam(value = "sortBy", required = false) String sortBy,
       @Parameter(description = "Order results by") @RequestParam(value = "order", required = false, defaultValue = "asc") String order,
-      @ParameterObject Pageable pageable) {
+      @Parameter(description = "The facets to count, all of them by default. <b>none</b> returns the hits only.", example = "category, price") @RequestParam(value = "facets", required = false) List<String> facets,
+      @Parameter(description = "Whether to return the search response of Elasticsearch as is") @RequestParam(value = "raw", required = false, defaultValue = "false") Boolean raw,
+      @Parameter(description = SEARCH_AFTER_DESCRIPTION) @RequestParam(value = "after", required = false) String after,
+      @ParameterObject Pageable pageable,
+      @Parameter(hidden = true) HttpServletResponse response) throws IOException {
     List<PriceRange> priceRanges = null;
     if (prices != null) {
       priceRanges = parsePricesParam(prices);
@@ -242,6 +300,15 @@ public class DealController {
           HttpStatus.BAD_REQUEST, "Invalid order! Supported order values => " + ORDER_TYPES);
     }
 
+    if (facets != null && !SUPPORTED_FACETS.containsAll(facets)) {
+      throw new ResponseStatusException(
+          HttpStatus.BAD_REQUEST, "Invalid facets! Supported facets values => " + SUPPORTED_FACETS);
+    }
+
+    if (facets != null && facets.contains("none")) {
+      facets = List.of();
+    }
+
     var searchParams = DealSearchParams.builder()
         .query(query)
         .categories(categories)
@@ -252,9 +319,42 @@ public class DealController {
         .hideExpired(hideExpired)
         .sortBy(sortBy)
         .order(order)
+        .facets(facets)
         .build();
 
-    return esDealService.searchDeals(searchParams, pageable);
+    if (after != null && raw) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The cursor can't be used with raw!");
+    }
+
+    var startedAt = System.nanoTime();
+    if (raw) {
+      // Written straight to the response, without parsing it
+      response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+      esDealService.searchDealsRaw(searchParams, pageable, response.getOutputStream());
+      searchQueryLog.record(searchParams, "raw", null, System.nanoTime() - startedAt);
+      return null;
+    }
+
+    var searchResponse = after != null
+        ? esDealService.searchDeals(searchParams, DealSearchCursor.decode(after), pageable.getPageSize())
+        : esDealService.searchDeals(searchParams, pageable);
+    searchQueryLog.record(searchParams, after != null ? "cursor" : "page", searchResponse.getTotal(),
+        System.nanoTime() - startedAt);
+    return searchResponse;
+  }
+
+  @GetMapping("/searches/stats")
+  @IsSuper
+  @Operation(summary = "Returns the most searched queries and the search latencies", security = @SecurityRequirement(name = "bearerAuth"))
+  @ApiResponses({
+      @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(mediaType = "application/json", schema = @Schema(implementation = SearchQueryStats.class))),
+      @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content),
+      @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content)
+  })
+  public SearchQueryStats getSearchStats(
+      @Parameter(description = "How far back the searches are aggregated", example = "P1D") @RequestParam(value = "period", required = false, defaultValue = "P1D") Duration period,
+      @Parameter(description = "The maximum number of queries and shapes returned", example = "20") @Min(1) @Max(100) @RequestParam(value = "limit", required = false, defaultValue = "20") int limit) {
+    return searchQueryLog.getStats(period, limit);
   }
 
   @GetMapping("/suggestions")
@@ -265,26 +365,7 @@ public class DealController {
   })
   public List<SearchSuggestion> getSuggestions(
       @Parameter(description = "Search query", example = "iph") @NotBlank @Size(min = 3, max = 100) @RequestParam String query) {
-    var suggestions = esDealService.getSuggestions(query);
-    List<SearchSuggestion> searchSuggestions = new ArrayList<>();
-    suggestions
-        .elements()
-        .forEachRemaining(
-            element -> {
-              var source = element.get("_source");
-              if (source != null) {
-                var titleNode = source.get("title");
-                if (titleNode != null) {
-                  searchSuggestions.add(
-                      SearchSuggestion.builder()
-                          .id(element.get("_id").asText())
-                          .title(element.get("_source").get("title").asText())
-                          .build());
-                }
-              }
-            });
-
-    return searchSuggestions;
+    return esDealService.getSuggestions(query);
   }
 
   @GetMapping("/{id}")
@@ -501,7 +582,8 @@ public class DealController {
   @ApiResponses({
       @ApiResponse(responseCode = "200", description = "Successfully synced", content = @Content),
       @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content),
-      @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content)
+      @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content),
+      @ApiResponse(responseCode = "409", description = "A sync is already running", content = @Content)
   })
   public ResponseEntity<Void> syncElasticsearch() {
     service.syncElasticsearch();
@@ -515,8 +597,8 @@ public class DealController {
     deal.setId(id);
     deal.setPostedBy(originalDeal.getPostedBy());
     deal.setDealScore(originalDeal.getDealScore());
-    deal.setUpvoters(originalDeal.getUpvoters());
-    deal.setDownvoters(originalDeal.getDownvoters());
+    deal.setUpvotes(originalDeal.getUpvotes());
+    deal.setDownvotes(originalDeal.getDownvotes());
     deal.setStatus(originalDeal.getStatus());
     deal.setViews(originalDeal.getViews());
     deal.setCreatedAt(originalDeal.getCreatedAt());
@@ -0,0 +1,68 @@
+package com.halildurmus.hotdeals.deal;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import org.bson.types.ObjectId;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * The position of a deal in a listing sorted by {@code createdAt} or {@code dealScore} in
+ * descending order, with {@code _id} as the tie-breaker.
+ *
+ * <p>Clients receive it as an opaque token, see {@link #encode()} and {@link #decode(String)}.
+ *
+ * @param sortValue the value of the sort field, an {@link Instant} or an {@link Integer}
+ * @param id the ID of the deal
+ */
+public record DealCursor(Object sortValue, ObjectId id) {
+
+  public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+  /**
+   * Creates the cursor pointing at the given deal.
+   *
+   * @param deal the deal
+   * @param sortField {@code createdAt} or {@code dealScore}
+   * @return the cursor
+   */
+  public static DealCursor of(Deal deal, String sortField) {
+    Object sortValue = "dealScore".equals(sortField) ? deal.getDealScore() : deal.getCreatedAt();
+    return new DealCursor(sortValue, new ObjectId(deal.getId()));
+  }
+
+  public String encode() {
+    var value =
+        sortValue instanceof Instant instant
+            ? "t" + instant.toEpochMilli()
+            : "s" + sortValue;
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString((value + ":" + id.toHexString()).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Decodes a token created by {@link #encode()}.
+   *
+   * @param token the token
+   * @return the cursor
+   * @throws ResponseStatusException if the token is invalid
+   */
+  public static DealCursor decode(String token) {
+    try {
+      var decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+      var parts = decoded.split(":", 2);
+      var value = parts[0].substring(1);
+      Object sortValue =
+          switch (parts[0].charAt(0)) {
+            case 't' -> Instant.ofEpochMilli(Long.parseLong(value));
+            case 's' -> Integer.parseInt(value);
+            default -> throw new IllegalArgumentException();
+          };
+      return new DealCursor(sortValue, new ObjectId(parts[1]));
+    } catch (RuntimeException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor!");
+    }
+  }
+}
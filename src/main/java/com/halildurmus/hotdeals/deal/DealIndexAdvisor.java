@@ -0,0 +1,128 @@
+package com.halildurmus.hotdeals.deal;
+
+import com.mongodb.ExplainVerbosity;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Explains the query shapes of {@link DealRepository} and the cursor based listings on startup,
+ * and warns about the ones that scan the whole collection or sort in memory. MongoDB fails the
+ * in-memory sorts that need more than 100MB, so such a plan is a bug waiting for the collection to
+ * grow.
+ *
+ * <p>The result of every query shape is exported as the {@code deals.query.unindexed} gauge, 1 if
+ * the plan has a {@code COLLSCAN} or {@code SORT} stage.
+ */
+@Slf4j
+@Component
+class DealIndexAdvisor {
+
+  private static final Set<String> UNINDEXED_STAGES = Set.of("COLLSCAN", "SORT");
+
+  private final Map<String, AtomicInteger> results = new LinkedHashMap<>();
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @EventListener(ApplicationReadyEvent.class)
+  void explainQueries() {
+    var collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Deal.class));
+    var active = DealStatus.ACTIVE.name();
+    var id = new ObjectId();
+    // The values don't matter, the planner only looks at the shape of the queries
+    var shapes =
+        Map.of(
+            "findAllByStatusEqualsOrderByCreatedAtDesc",
+            new QueryShape(new Document("status", active), sort("createdAt")),
+            "findAllByStatusEqualsOrderByDealScoreDesc",
+            new QueryShape(new Document("status", active), sort("dealScore")),
+            "findAllByCategoryStartsWithOrderByCreatedAtDesc",
+            new QueryShape(
+                new Document("category", Pattern.compile("^/computers")), sort("createdAt")),
+            "findAllByStoreOrderByCreatedAtDesc",
+            new QueryShape(new Document("store", id), sort("createdAt")),
+            "findAllByPostedByOrderByCreatedAtDesc",
+            new QueryShape(new Document("postedBy", id), sort("createdAt")),
+            "latestActiveAfterCursor",
+            new QueryShape(new Document("status", active), sort("createdAt", "_id")),
+            "mostLikedActiveAfterCursor",
+            new QueryShape(new Document("status", active), sort("dealScore", "_id")));
+
+    shapes.forEach(
+        (name, shape) -> {
+          try {
+            var explain =
+                collection
+                    .find(shape.filter())
+                    .sort(shape.sort())
+                    .explain(ExplainVerbosity.QUERY_PLANNER);
+            var queryPlanner = explain.get("queryPlanner", Document.class);
+            var stages = findStages(queryPlanner.get("winningPlan"));
+            var unindexed = stages.stream().anyMatch(UNINDEXED_STAGES::contains);
+            if (unindexed) {
+              log.warn("Query {} is not fully indexed, its plan has the stages {}", name, stages);
+            }
+            results.computeIfAbsent(name, this::registerGauge).set(unindexed ? 1 : 0);
+          } catch (Exception e) {
+            log.warn("Failed to explain query {}", name, e);
+          }
+        });
+  }
+
+  private AtomicInteger registerGauge(String name) {
+    var result = new AtomicInteger();
+    Gauge.builder("deals.query.unindexed", result, AtomicInteger::get)
+        .description("Whether the query plan scans the collection or sorts in memory")
+        .tag("query", name)
+        .register(meterRegistry);
+    return result;
+  }
+
+  /**
+   * Collects the stages of a query plan, including the stages of its input stages.
+   *
+   * @param plan the winning plan of an explain result
+   * @return the stage names, outermost first
+   */
+  static List<String> findStages(Object plan) {
+    var stages = new ArrayList<String>();
+    if (plan instanceof Document document) {
+      if (document.get("stage") instanceof String stage) {
+        stages.add(stage);
+      }
+      // The classic engine nests the stages in inputStage(s), the slot based one in queryPlan
+      document.values().forEach(value -> stages.addAll(findStages(value)));
+    } else if (plan instanceof List<?> list) {
+      list.forEach(value -> stages.addAll(findStages(value)));
+    }
+    return stages;
+  }
+
+  private static Document sort(String... fields) {
+    var sort = new Document();
+    for (var field : fields) {
+      sort.append(field, -1);
+    }
+    return sort;
+  }
+
+  private record QueryShape(Document filter, Document sort) {}
+}
@@ -13,32 +13,14 @@ import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 @RepositoryRestResource(collectionResourceRel = "deals", exported = false, path = "deals")
 public interface DealRepository extends MongoRepository<Deal, String> {
 
-  @Override
-  @Caching(
-      evict = {
-        @CacheEvict(
-            value = "deals:findAllByCategoryStartsWithOrderByCreatedAtDesc",
-            allEntries = true),
-        @CacheEvict(value = "deals:findAllByStoreOrderByCreatedAtDesc", allEntries = true),
-        @CacheEvict(value = "deals:findAllByStatusEqualsOrderByCreatedAtDesc", allEntries = true),
-        @CacheEvict(value = "deals:findAllByStatusEqualsOrderByDealScoreDesc", allEntries = true),
-        @CacheEvict(value = "deals:findAllByPostedByOrderByCreatedAtDesc", allEntries = true),
-      })
-  void deleteById(String id);
-
+  // The cached deal pages are evicted by DealCacheEvictionListener, which only evicts the pages
+  // that can be affected by the write
   @Override
   @Caching(
       put = {@CachePut(value = "deals", key = "#entity.id")},
       evict = {
         @CacheEvict(value = "deals:countDealsByStore", key = "#entity.store"),
         @CacheEvict(value = "deals:countDealsByPostedBy", key = "#entity.postedBy"),
-        @CacheEvict(
-            value = "deals:findAllByCategoryStartsWithOrderByCreatedAtDesc",
-            allEntries = true),
-        @CacheEvict(value = "deals:findAllByStoreOrderByCreatedAtDesc", allEntries = true),
-        @CacheEvict(value = "deals:findAllByStatusEqualsOrderByCreatedAtDesc", allEntries = true),
-        @CacheEvict(value = "deals:findAllByStatusEqualsOrderByDealScoreDesc", allEntries = true),
-        @CacheEvict(value = "deals:findAllByPostedByOrderByCreatedAtDesc", allEntries = true),
       })
   <S extends Deal> S save(S entity);
 
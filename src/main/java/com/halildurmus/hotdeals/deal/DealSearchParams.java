@@ -5,7 +5,7 @@ import lombok.Builder;
 import lombok.Data;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class DealSearchParams {
 
   private String query;
@@ -25,4 +25,7 @@ public class DealSearchParams {
   private String sortBy;
 
   private String order;
+
+  // The facets to count, all of them if null
+  private List<String> facets;
 }
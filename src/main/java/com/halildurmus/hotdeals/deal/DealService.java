@@ -3,10 +3,13 @@ package com.halildurmus.hotdeals.deal;
 import com.github.fge.jsonpatch.JsonPatch;
 import com.halildurmus.hotdeals.deal.dto.DealPatchDTO;
 import com.halildurmus.hotdeals.security.role.IsSuper;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import org.bson.types.ObjectId;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 public interface DealService {
 
@@ -30,6 +33,17 @@ public interface DealService {
 
   Page<Deal> getMostLikedActiveDeals(Pageable pageable);
 
+  // The cursor based variants of the listings above, which don't skip or count documents
+  Slice<Deal> getDealsByCategory(String category, DealCursor after, int size);
+
+  Slice<Deal> getDealsByStoreId(ObjectId storeId, DealCursor after, int size);
+
+  Slice<Deal> getLatestActiveDeals(DealCursor after, int size);
+
+  Slice<Deal> getMostLikedActiveDeals(DealCursor after, int size);
+
+  List<Deal> getHotDeals(Pageable pageable);
+
   Deal create(Deal deal);
 
   Deal patch(String id, DealPatchDTO dealPatchDTO);
@@ -40,6 +54,8 @@ public interface DealService {
 
   Deal vote(String id, DealVoteType voteType);
 
+  Map<String, DealVoteType> getVotes(List<String> dealIds);
+
   Page<Deal> getDealsByStatus(DealStatus status, Pageable pageable);
 
   @IsSuper
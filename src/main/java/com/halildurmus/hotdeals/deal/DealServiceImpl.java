@@ -1,45 +1,39 @@
 package com.halildurmus.hotdeals.deal;
 
-import static org.springframework.data.mongodb.core.aggregation.ArrayOperators.Filter.filter;
-import static org.springframework.data.mongodb.core.aggregation.ComparisonOperators.Ne.valueOf;
-import static org.springframework.data.mongodb.core.query.Criteria.where;
-import static org.springframework.data.mongodb.core.query.Query.query;
-
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.github.fge.jsonpatch.JsonPatch;
 import com.github.fge.jsonpatch.JsonPatchException;
-import com.google.firebase.auth.FirebaseAuthException;
 import com.halildurmus.hotdeals.category.Category;
 import com.halildurmus.hotdeals.category.CategoryRepository;
 import com.halildurmus.hotdeals.comment.CommentService;
 import com.halildurmus.hotdeals.deal.dto.DealPatchDTO;
-import com.halildurmus.hotdeals.deal.es.EsDeal;
-import com.halildurmus.hotdeals.deal.es.EsDealRepository;
+import com.halildurmus.hotdeals.deal.es.DealOutbox;
+import com.halildurmus.hotdeals.deal.es.EsDealReindexer;
+import com.halildurmus.hotdeals.deal.vote.VoteRepository;
 import com.halildurmus.hotdeals.exception.DealNotFoundException;
 import com.halildurmus.hotdeals.security.SecurityService;
 
 import java.util.*;
+import java.util.regex.Pattern;
 
-import com.halildurmus.hotdeals.security.role.Role;
-import com.halildurmus.hotdeals.security.role.RoleService;
-import com.halildurmus.hotdeals.security.role.RoleServiceImpl;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
-import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators.Subtract;
-import org.springframework.data.mongodb.core.aggregation.ArrayOperators.ConcatArrays;
-import org.springframework.data.mongodb.core.aggregation.ArrayOperators.Size;
-import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 @Slf4j
@@ -57,15 +51,31 @@ public class DealServiceImpl implements DealService {
   private DealRepository repository;
 
   @Autowired
-  private EsDealRepository esDealRepository;
+  private EsDealReindexer esDealReindexer;
 
   @Autowired
-  private MongoTemplate mongoTemplate;
+  private DealOutbox dealOutbox;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
 
   @Autowired
   private SecurityService securityService;
+
+  @Autowired
+  private DealViewCounter viewCounter;
+
+  @Autowired
+  private DealVoteAggregator voteAggregator;
+
+  @Autowired
+  private VoteRepository voteRepository;
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
   @Autowired
-  private RoleService roleService;
+  private HotDealRanker hotDealRanker;
 
   @Override
   public Page<Deal> findAll(Pageable pageable) {
@@ -89,10 +99,9 @@ public class DealServiceImpl implements DealService {
 
   @Override
   public Optional<Deal> findById(String id) {
-    var deal = repository.findById(id);
-    if (deal.isPresent()) {
-      return Optional.of(incrementViewsCounter(id));
-    }
+    var deal = repository.findById(id).map(voteAggregator::applyPending);
+    // The view is buffered and persisted in bulk, the returned deal reflects the pending views
+    deal.ifPresent(d -> d.setViews(d.getViews() + (int) viewCounter.increment(id)));
     return deal;
   }
 
@@ -116,21 +125,64 @@ public class DealServiceImpl implements DealService {
     return repository.findAllByStatusEqualsOrderByDealScoreDesc(DealStatus.ACTIVE, pageable);
   }
 
+  @Override
+  public Slice<Deal> getDealsByCategory(String category, DealCursor after, int size) {
+    var criteria = Criteria.where("category").regex("^" + Pattern.quote(category));
+    return findAfter(criteria, "createdAt", after, size);
+  }
+
+  @Override
+  public Slice<Deal> getDealsByStoreId(ObjectId storeId, DealCursor after, int size) {
+    return findAfter(Criteria.where("store").is(storeId), "createdAt", after, size);
+  }
+
+  @Override
+  public Slice<Deal> getLatestActiveDeals(DealCursor after, int size) {
+    return findAfter(Criteria.where("status").is(DealStatus.ACTIVE), "createdAt", after, size);
+  }
+
+  @Override
+  public Slice<Deal> getMostLikedActiveDeals(DealCursor after, int size) {
+    return findAfter(Criteria.where("status").is(DealStatus.ACTIVE), "dealScore", after, size);
+  }
+
+  @Override
+  public List<Deal> getHotDeals(Pageable pageable) {
+    var ids = hotDealRanker.getHotDealIds(pageable);
+    if (ids.isEmpty()) {
+      return List.of();
+    }
+    // Keep the order of the ranking, deals deleted in the meantime are skipped
+    var deals = new HashMap<String, Deal>();
+    repository.findAllById(ids).forEach(deal -> deals.put(deal.getId(), deal));
+    return ids.stream().map(deals::get).filter(Objects::nonNull).toList();
+  }
+
+  // Seeks past the cursor instead of skipping documents, and fetches one more deal than requested
+  // to know whether there is a next slice without counting
+  private Slice<Deal> findAfter(Criteria criteria, String sortField, DealCursor after, int size) {
+    var query = new Query(criteria);
+    if (after != null) {
+      query.addCriteria(
+          new Criteria()
+              .orOperator(
+                  Criteria.where(sortField).lt(after.sortValue()),
+                  Criteria.where(sortField).is(after.sortValue()).and("_id").lt(after.id())));
+    }
+    query.with(Sort.by(Sort.Direction.DESC, sortField, "_id")).limit(size + 1);
+    var deals = mongoTemplate.find(query, Deal.class);
+    var hasNext = deals.size() > size;
+    return new SliceImpl<>(
+        hasNext ? deals.subList(0, size) : deals, PageRequest.of(0, size), hasNext);
+  }
+
   @Override
   public Deal create(Deal deal) {
 
     if (deal.getTags() != null && !deal.getTags().isEmpty()) {
       deal.setTags(validatedTags(deal.getTags()));
     }
-    var savedDeal = repository.save(deal);
-    try {
-      esDealRepository.save(new EsDeal(deal));
-    } catch (Exception e) {
-      repository.deleteById(savedDeal.getId());
-      throw e;
-    }
-
-    return savedDeal;
+    return save(deal, null);
   }
 
   List<String> validatedTags(List<String> tags) {
@@ -162,9 +214,10 @@ public class DealServiceImpl implements DealService {
   @Override
   public Deal patch(String id, DealPatchDTO dealPatchDTO) {
     var deal = repository.findById(id).orElseThrow(DealNotFoundException::new);
+    var before = dealOutbox.snapshot(deal);
     var user = securityService.getUser();
 
-    if (!dealPatchDTO.getIsAdminOrMod() && !user.getId().equals(deal.getPostedBy().toString())) {
+    if (!securityService.isAdminOrMod() && !user.getId().equals(deal.getPostedBy().toString())) {
       throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You can only update your own deal!");
     }
 
@@ -173,9 +226,7 @@ public class DealServiceImpl implements DealService {
       deal.setStatus(dealPatchDTO.getStatus());
     }
 
-    repository.save(deal);
-    esDealRepository.save(new EsDeal(deal));
-    return deal;
+    return save(deal, before);
   }
 
   @Override
@@ -184,17 +235,7 @@ public class DealServiceImpl implements DealService {
     Deal existingDeal = repository.findById(deal.getId())
         .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Deal not found"));
 
-    // Get user's roles from Firebase using RoleService
-    RoleServiceImpl.UserWithRoles userWithRoles = null;
-    try {
-      userWithRoles = roleService.viewAllRolesUser(user.getUid());
-    } catch (FirebaseAuthException e) {
-      throw new RuntimeException(e);
-    }
-
-    boolean isAdminOrMod = userWithRoles.getRoles().contains(Role.ROLE_ADMIN) ||
-        userWithRoles.getRoles().contains(Role.ROLE_MODERATOR)
-        || userWithRoles.getRoles().contains(Role.ROLE_SUPER);
+    boolean isAdminOrMod = securityService.isAdminOrMod();
 
     // Check if user is owner OR has admin/mod role
     boolean isOwner = user.getId().equals(existingDeal.getPostedBy().toString());
@@ -202,19 +243,30 @@ public class DealServiceImpl implements DealService {
       throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You can only update your own deal!");
     }
 
+    // Keep the persisted counters, pending views and votes are added by the view counter and the
+    // vote aggregator
+    deal.setViews(existingDeal.getViews());
+    deal.setUpvotes(existingDeal.getUpvotes());
+    deal.setDownvotes(existingDeal.getDownvotes());
+    deal.setDealScore(existingDeal.getDealScore());
+
     if (deal.getTags() != null && !deal.getTags().isEmpty() && !deal.getTags().equals(existingDeal.getTags())) {
       deal.setTags(validatedTags(deal.getTags()));
     }
 
-    var savedDeal = repository.save(deal);
-    try {
-      esDealRepository.save(new EsDeal(deal));
-    } catch (Exception e) {
-      repository.deleteById(savedDeal.getId());
-      throw e;
-    }
+    return save(deal, dealOutbox.snapshot(existingDeal));
+  }
 
-    return savedDeal;
+  // Saves the deal and records the change in the outbox atomically, the outbox relay ships it to
+  // Elasticsearch. The snapshot of the deal before the update limits the shipped fields to the
+  // changed ones.
+  private Deal save(Deal deal, Map<String, Object> before) {
+    return transactionTemplate.execute(
+        status -> {
+          var savedDeal = repository.save(deal);
+          dealOutbox.upserted(savedDeal, before);
+          return savedDeal;
+        });
   }
 
   @Override
@@ -222,15 +274,7 @@ public class DealServiceImpl implements DealService {
     var deal = repository.findById(id).orElseThrow(DealNotFoundException::new);
     var user = securityService.getUser();
 
-    // Get user's roles from Firebase using RoleService
-    RoleServiceImpl.UserWithRoles userWithRoles = null;
-    try {
-      userWithRoles = roleService.viewAllRolesUser(user.getUid());
-    } catch (FirebaseAuthException e) {
-      throw new RuntimeException(e);
-    }
-
-    boolean isSuper = userWithRoles.getRoles().contains(Role.ROLE_SUPER);
+    boolean isSuper = securityService.isSuper();
     boolean isOwner = user.getId().equals(deal.getPostedBy().toString());
 
     if (!isOwner && !isSuper) {
@@ -238,72 +282,44 @@ public class DealServiceImpl implements DealService {
     }
 
     commentService.deleteDealComments(id);
-    repository.deleteById(id);
-    esDealRepository.deleteById(id);
-  }
-
-  private Deal incrementViewsCounter(String id) {
-    var query = query(where("_id").is(id));
-    var update = new Update().inc("views", 1);
-    var options = FindAndModifyOptions.options().returnNew(true);
-    return mongoTemplate.findAndModify(query, update, options, Deal.class);
+    transactionTemplate.executeWithoutResult(
+        status -> {
+          repository.deleteById(id);
+          dealOutbox.deleted(id);
+        });
+    voteRepository.deleteAllByDealId(new ObjectId(id));
+    viewCounter.discard(id);
+    voteAggregator.discard(id);
   }
 
   @Override
   public Deal vote(String id, DealVoteType voteType) {
     var user = securityService.getUser();
     var userId = new ObjectId(user.getId());
-    var deal = repository.findById(id).orElseThrow(DealNotFoundException::new);
+    var deal = repository.findById(id)
+        .map(voteAggregator::applyPending)
+        .orElseThrow(DealNotFoundException::new);
+    var previous = voteAggregator.getVote(id, userId);
 
-    if (voteType.equals(DealVoteType.UP) && deal.getUpvoters().contains(userId)) {
+    if (voteType.equals(DealVoteType.UP) && previous.equals(DealVoteType.UP)) {
       throw new ResponseStatusException(
           HttpStatus.NOT_MODIFIED, "You've already upvoted this deal before!");
-    } else if (voteType.equals(DealVoteType.DOWN) && deal.getDownvoters().contains(userId)) {
+    } else if (voteType.equals(DealVoteType.DOWN) && previous.equals(DealVoteType.DOWN)) {
       throw new ResponseStatusException(
           HttpStatus.NOT_MODIFIED, "You've already downvoted this deal before!");
     }
 
-    var query = query(where("_id").is(id));
-    var update = AggregationUpdate.update();
-    var options = FindAndModifyOptions.options().returnNew(true);
-
-    if (voteType.equals(DealVoteType.UNVOTE)) {
-      // Remove the userId from the upvoters array if it exists
-      update
-          .set("upvoters")
-          .toValue(filter("upvoters").as("id").by(valueOf("id").notEqualToValue(userId)));
-      // Remove the userId from the downvoters array if it exists
-      update
-          .set("downvoters")
-          .toValue(filter("downvoters").as("id").by(valueOf("id").notEqualToValue(userId)));
-    } else {
-      var fieldName1 = voteType.equals(DealVoteType.UP) ? "upvoters" : "downvoters";
-      var fieldName2 = voteType.equals(DealVoteType.UP) ? "downvoters" : "upvoters";
-      // If the voteType is DealVoteType.UP, add the userId to the upvoters array,
-      // if the voteType is DealVoteType.DOWN then add the userId to the downvoters
-      // array
-      update
-          .set(fieldName1)
-          .toValue(
-              ConcatArrays.arrayOf(fieldName1)
-                  .concat(ConcatArrays.arrayOf(new ArrayList<>(List.of(userId)))));
-      // If the voteType is DealVoteType.UP, remove the userId from the downvoters
-      // array,
-      // if the voteType is DealVoteType.DOWN then remove the userId from the
-      // upvoters array
-      update
-          .set(fieldName2)
-          .toValue(filter(fieldName2).as("id").by(valueOf("id").notEqualToValue(userId)));
-    }
-    // Subtract the size of the downvoters array from the size of the upvoters array
-    // and assign the result to dealScore property
-    update
-        .set("dealScore")
-        .toValue(
-            Subtract.valueOf(Size.lengthOfArray("upvoters"))
-                .subtract(Size.lengthOfArray("downvoters")));
-
-    return mongoTemplate.findAndModify(query, update, options, Deal.class);
+    // The vote is persisted in bulk by the aggregator, the returned deal reflects it right away
+    voteAggregator.add(id, userId, previous, voteType);
+    voteAggregator.applyVote(deal, previous, voteType);
+    deal.setViews(deal.getViews() + (int) viewCounter.getPending(id));
+    return deal;
+  }
+
+  @Override
+  public Map<String, DealVoteType> getVotes(List<String> dealIds) {
+    var user = securityService.getUser();
+    return voteAggregator.getVotes(new ObjectId(user.getId()), dealIds);
   }
 
   @Override
@@ -313,10 +329,6 @@ public class DealServiceImpl implements DealService {
 
   @Override
   public void syncElasticsearch() {
-    esDealRepository.deleteAll();
-    List<EsDeal> esDeals = repository.findAll().stream()
-        .map(EsDeal::new)
-        .toList();
-    esDealRepository.saveAll(esDeals);
+    esDealReindexer.reindex();
   }
 }
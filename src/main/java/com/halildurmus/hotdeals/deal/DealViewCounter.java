@@ -0,0 +1,109 @@
+package com.halildurmus.hotdeals.deal;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import jakarta.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Buffers deal view increments in memory and periodically writes them to the {@code deals}
+ * collection in a single unordered bulk operation, instead of issuing a {@code findAndModify} on
+ * every read.
+ */
+@Slf4j
+@Component
+public class DealViewCounter {
+
+  private final Map<String, LongAdder> pendingViews = new ConcurrentHashMap<>();
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @Autowired
+  private HotDealRanker hotDealRanker;
+
+  /**
+   * Records a view of the given deal.
+   *
+   * @param dealId the deal ID
+   * @return the number of views recorded for the deal that are not yet persisted
+   */
+  public long increment(String dealId) {
+    var counter = pendingViews.computeIfAbsent(dealId, id -> new LongAdder());
+    counter.increment();
+    return counter.sum();
+  }
+
+  /**
+   * Returns the number of views recorded for the given deal that are not yet persisted.
+   *
+   * @param dealId the deal ID
+   * @return the pending view count
+   */
+  public long getPending(String dealId) {
+    var counter = pendingViews.get(dealId);
+    return counter != null ? counter.sum() : 0;
+  }
+
+  /**
+   * Drops the pending views of the given deal, e.g. when the deal is deleted.
+   *
+   * @param dealId the deal ID
+   */
+  public void discard(String dealId) {
+    pendingViews.remove(dealId);
+  }
+
+  @Scheduled(fixedDelayString = "${deals.views.flush-interval:PT5S}")
+  public void flush() {
+    Map<String, Long> deltas = new HashMap<>();
+    pendingViews.forEach(
+        (dealId, counter) -> {
+          var delta = counter.sumThenReset();
+          if (delta > 0) {
+            deltas.put(dealId, delta);
+          } else {
+            // Counters that stayed idle for a whole interval are dropped to keep the map small.
+            // A view racing with the removal may be lost, which is acceptable for a view counter.
+            pendingViews.remove(dealId, counter);
+          }
+        });
+
+    if (deltas.isEmpty()) {
+      return;
+    }
+
+    var bulkOps = mongoTemplate.bulkOps(BulkMode.UNORDERED, Deal.class);
+    deltas.forEach(
+        (dealId, delta) ->
+            bulkOps.updateOne(query(where("_id").is(dealId)), new Update().inc("views", delta)));
+
+    try {
+      bulkOps.execute();
+      log.debug("Flushed views of {} deals", deltas.size());
+      hotDealRanker.refresh(deltas.keySet());
+    } catch (Exception e) {
+      log.error("Failed to flush deal views, they will be retried on the next flush", e);
+      // Put the deltas back so that they are not lost
+      deltas.forEach(
+          (dealId, delta) ->
+              pendingViews.computeIfAbsent(dealId, id -> new LongAdder()).add(delta));
+    }
+  }
+
+  @PreDestroy
+  void flushOnShutdown() {
+    flush();
+  }
+}
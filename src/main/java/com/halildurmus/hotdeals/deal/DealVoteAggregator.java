@@ -0,0 +1,302 @@
+package com.halildurmus.hotdeals.deal;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import com.halildurmus.hotdeals.deal.vote.Vote;
+import com.halildurmus.hotdeals.deal.vote.VoteRepository;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Collects deal votes in memory and persists them periodically: the votes are written to the
+ * {@code deal_votes} collection and the vote counters of each deal are incremented once per flush,
+ * in a single transaction.
+ *
+ * <p>Votes are deduplicated per (dealId, userId): only the latest vote a user cast on a deal
+ * within a flush window is written.
+ */
+@Slf4j
+@Component
+public class DealVoteAggregator {
+
+  private final Map<String, Map<ObjectId, PendingVote>> pendingVotes = new ConcurrentHashMap<>();
+
+  // Votes that are being written by the current flush, kept visible to readers until persisted
+  private final Map<String, Map<ObjectId, PendingVote>> inFlightVotes = new ConcurrentHashMap<>();
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @Autowired
+  private VoteRepository voteRepository;
+
+  @Autowired
+  private HotDealRanker hotDealRanker;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  /**
+   * Returns the current vote of a user on a deal, including the votes that are not yet persisted.
+   *
+   * @param dealId the deal ID
+   * @param userId the user ID
+   * @return the vote type, {@link DealVoteType#UNVOTE} if the user hasn't voted
+   */
+  public DealVoteType getVote(String dealId, ObjectId userId) {
+    var pendingVote = findPendingVote(dealId, userId);
+    if (pendingVote != null) {
+      return pendingVote.latest();
+    }
+    return voteRepository
+        .findByDealIdAndUserId(new ObjectId(dealId), userId)
+        .map(Vote::getType)
+        .orElse(DealVoteType.UNVOTE);
+  }
+
+  /**
+   * Returns the votes of a user on the given deals, including the votes that are not yet
+   * persisted. Deals that the user hasn't voted on are omitted.
+   *
+   * @param userId the user ID
+   * @param dealIds the deal IDs
+   * @return the vote types keyed by deal ID
+   */
+  public Map<String, DealVoteType> getVotes(ObjectId userId, List<String> dealIds) {
+    Map<String, DealVoteType> votes = new HashMap<>();
+    List<ObjectId> persistedDealIds = new ArrayList<>();
+    for (var dealId : dealIds) {
+      var pendingVote = findPendingVote(dealId, userId);
+      if (pendingVote == null) {
+        persistedDealIds.add(new ObjectId(dealId));
+      } else if (!pendingVote.latest().equals(DealVoteType.UNVOTE)) {
+        votes.put(dealId, pendingVote.latest());
+      }
+    }
+    if (!persistedDealIds.isEmpty()) {
+      voteRepository
+          .findAllByUserIdAndDealIdIn(userId, persistedDealIds)
+          .forEach(vote -> votes.put(vote.getDealId().toString(), vote.getType()));
+    }
+    return votes;
+  }
+
+  /**
+   * Records a vote that will be persisted on the next flush.
+   *
+   * @param dealId the deal ID
+   * @param userId the voter's user ID
+   * @param previous the user's current vote, as returned by {@link #getVote(String, ObjectId)}
+   * @param voteType the new vote type
+   */
+  public void add(String dealId, ObjectId userId, DealVoteType previous, DealVoteType voteType) {
+    // Mutations of the per-deal map only happen inside compute(), so a map that has already been
+    // handed over to flush() can never receive a vote
+    pendingVotes.compute(
+        dealId,
+        (id, votes) -> {
+          if (votes == null) {
+            votes = new ConcurrentHashMap<>();
+          }
+          // Keep the persisted vote of the user, the counters are updated from it on flush
+          votes.merge(
+              userId,
+              new PendingVote(previous, voteType),
+              (current, vote) -> new PendingVote(current.persisted(), vote.latest()));
+          return votes;
+        });
+  }
+
+  /**
+   * Applies the pending votes of the given deal to its vote counters and deal score.
+   *
+   * @param deal the deal as stored in the database
+   * @return the same deal instance
+   */
+  public Deal applyPending(Deal deal) {
+    applyPending(deal, inFlightVotes.get(deal.getId()));
+    applyPending(deal, pendingVotes.get(deal.getId()));
+    return deal;
+  }
+
+  private void applyPending(Deal deal, Map<ObjectId, PendingVote> votes) {
+    if (votes != null) {
+      votes.values().forEach(vote -> applyVote(deal, vote.persisted(), vote.latest()));
+    }
+  }
+
+  /**
+   * Applies a change of a user's vote to the vote counters and deal score of the given deal.
+   *
+   * @param deal the deal
+   * @param previous the user's previous vote
+   * @param voteType the user's new vote
+   */
+  public void applyVote(Deal deal, DealVoteType previous, DealVoteType voteType) {
+    deal.setUpvotes(deal.getUpvotes() + delta(DealVoteType.UP, previous, voteType));
+    deal.setDownvotes(deal.getDownvotes() + delta(DealVoteType.DOWN, previous, voteType));
+    deal.setDealScore(deal.getUpvotes() - deal.getDownvotes());
+  }
+
+  /**
+   * Drops the pending votes of the given deal, e.g. when the deal is deleted.
+   *
+   * @param dealId the deal ID
+   */
+  public void discard(String dealId) {
+    pendingVotes.remove(dealId);
+  }
+
+  @Scheduled(fixedDelayString = "${deals.votes.flush-interval:PT1S}")
+  public synchronized void flush() {
+    for (var dealId : pendingVotes.keySet()) {
+      pendingVotes.computeIfPresent(
+          dealId,
+          (id, votes) -> {
+            inFlightVotes.put(id, votes);
+            return null;
+          });
+    }
+
+    if (inFlightVotes.isEmpty()) {
+      return;
+    }
+
+    try {
+      // The votes and the counters are written together, so a failed flush leaves neither
+      transactionTemplate.executeWithoutResult(status -> write());
+      hotDealRanker.refresh(Set.copyOf(inFlightVotes.keySet()));
+      log.debug("Flushed votes of {} deals", inFlightVotes.size());
+    } catch (Exception e) {
+      log.error("Failed to flush deal votes, they will be retried on the next flush", e);
+      // Put the votes back without overriding the votes that were cast in the meantime
+      inFlightVotes.forEach(
+          (dealId, votes) ->
+              pendingVotes.compute(
+                  dealId,
+                  (id, current) -> {
+                    if (current == null) {
+                      return votes;
+                    }
+                    votes.forEach(
+                        (userId, vote) ->
+                            current.merge(
+                                userId,
+                                vote,
+                                (newer, older) ->
+                                    new PendingVote(older.persisted(), newer.latest())));
+                    return current;
+                  }));
+    } finally {
+      inFlightVotes.clear();
+    }
+  }
+
+  // The counters are changed by the difference between the stored votes and the latest ones, not
+  // the votes remembered by add(). A flush retried after a commit that did succeed, e.g. on a
+  // timeout, finds its votes stored and doesn't count them twice.
+  private void write() {
+    var dealIds = new ArrayList<ObjectId>();
+    var userIds = new HashSet<ObjectId>();
+    inFlightVotes.forEach(
+        (dealId, votes) -> {
+          dealIds.add(new ObjectId(dealId));
+          userIds.addAll(votes.keySet());
+        });
+    var storedVotes = new HashMap<String, DealVoteType>();
+    mongoTemplate
+        .find(query(where("dealId").in(dealIds).and("userId").in(userIds)), Vote.class)
+        .forEach(vote -> storedVotes.put(vote.getDealId() + "|" + vote.getUserId(), vote.getType()));
+
+    var voteOps = mongoTemplate.bulkOps(BulkMode.UNORDERED, Vote.class);
+    var dealOps = mongoTemplate.bulkOps(BulkMode.UNORDERED, Deal.class);
+    var hasVoteOps = false;
+    var hasDealOps = false;
+    var now = Instant.now();
+
+    for (var entry : inFlightVotes.entrySet()) {
+      var dealId = new ObjectId(entry.getKey());
+      int upvotes = 0;
+      int downvotes = 0;
+      for (var vote : entry.getValue().entrySet()) {
+        var previous =
+            storedVotes.getOrDefault(dealId + "|" + vote.getKey(), DealVoteType.UNVOTE);
+        var latest = vote.getValue().latest();
+        if (previous.equals(latest)) {
+          continue;
+        }
+
+        var voteQuery = query(where("dealId").is(dealId).and("userId").is(vote.getKey()));
+        if (latest.equals(DealVoteType.UNVOTE)) {
+          voteOps.remove(voteQuery);
+        } else {
+          voteOps.upsert(voteQuery, new Update().set("type", latest).set("votedAt", now));
+        }
+        hasVoteOps = true;
+        upvotes += delta(DealVoteType.UP, previous, latest);
+        downvotes += delta(DealVoteType.DOWN, previous, latest);
+      }
+
+      if (upvotes != 0 || downvotes != 0) {
+        dealOps.updateOne(
+            query(where("_id").is(dealId)),
+            new Update()
+                .inc("upvotes", upvotes)
+                .inc("downvotes", downvotes)
+                .inc("dealScore", upvotes - downvotes));
+        hasDealOps = true;
+      }
+    }
+
+    if (hasVoteOps) {
+      voteOps.execute();
+    }
+    if (hasDealOps) {
+      dealOps.execute();
+    }
+  }
+
+  private PendingVote findPendingVote(String dealId, ObjectId userId) {
+    var votes = pendingVotes.get(dealId);
+    var vote = votes != null ? votes.get(userId) : null;
+    if (vote == null) {
+      votes = inFlightVotes.get(dealId);
+      vote = votes != null ? votes.get(userId) : null;
+    }
+    return vote;
+  }
+
+  private static int delta(DealVoteType counter, DealVoteType previous, DealVoteType latest) {
+    return (latest.equals(counter) ? 1 : 0) - (previous.equals(counter) ? 1 : 0);
+  }
+
+  @PreDestroy
+  void flushOnShutdown() {
+    flush();
+  }
+
+  /**
+   * A user's vote that is not yet persisted.
+   *
+   * @param persisted the user's vote as stored in the database
+   * @param latest the user's latest vote
+   */
+  private record PendingVote(DealVoteType persisted, DealVoteType latest) {}
+}
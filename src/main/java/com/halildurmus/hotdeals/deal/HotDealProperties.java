@@ -0,0 +1,24 @@
+package com.halildurmus.hotdeals.deal;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties("deals.hot")
+@Data
+public class HotDealProperties {
+
+  // The age difference that outweighs ten times the deal score
+  private Duration decay = Duration.ofSeconds(45_000);
+
+  // How much ten times the views weigh compared to ten times the deal score
+  private double viewWeight = 0.25;
+
+  // The number of deals kept in the ranking
+  private long maxSize = 1000;
+
+  // Only the deals younger than this are ranked when the ranking is rebuilt
+  private Duration maxAge = Duration.ofDays(30);
+}
@@ -0,0 +1,212 @@
+package com.halildurmus.hotdeals.deal;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the hottest active deals in a Redis sorted set, so that they can be listed in O(page size)
+ * regardless of the number of deals.
+ *
+ * <p>The score of a deal grows with the logarithm of its deal score and views, and with its post
+ * date: a deal posted {@link HotDealProperties#getDecay()} later weighs as much as a deal with ten
+ * times the deal score. Since the age bonus never changes, the scores don't need to be decayed over
+ * time, they are only recomputed when the deal score or the views change.
+ */
+@Slf4j
+@Component
+public class HotDealRanker extends AbstractMongoEventListener<Deal> {
+
+  static final String KEY = "deals:hot";
+
+  private static final int REBUILD_BATCH_SIZE = 500;
+
+  // The deals written while the ranking is rebuilt, their entries are replaced by the rename
+  private volatile Set<String> touchedIds;
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @Autowired
+  private StringRedisTemplate redisTemplate;
+
+  @Autowired
+  private HotDealProperties properties;
+
+  /**
+   * Returns the IDs of the hottest deals, hottest first.
+   *
+   * @param pageable the page of the ranking
+   * @return the deal IDs
+   */
+  public List<String> getHotDealIds(Pageable pageable) {
+    var start = pageable.getOffset();
+    if (start >= properties.getMaxSize()) {
+      return List.of();
+    }
+    var end = Math.min(start + pageable.getPageSize(), properties.getMaxSize()) - 1;
+    var ids = redisTemplate.opsForZSet().reverseRange(KEY, start, end);
+    return ids == null ? List.of() : List.copyOf(ids);
+  }
+
+  /**
+   * Recomputes the scores of the given deals, e.g. after their votes or views are persisted.
+   *
+   * @param dealIds the deal IDs
+   */
+  public void refresh(Collection<String> dealIds) {
+    if (dealIds.isEmpty()) {
+      return;
+    }
+    touch(dealIds);
+    try {
+      var deals = mongoTemplate.find(rankingQuery(query(where("_id").in(dealIds))), Deal.class);
+      var removedIds = new HashSet<>(dealIds);
+      deals.forEach(deal -> removedIds.remove(deal.getId()));
+      write(KEY, deals, removedIds);
+    } catch (Exception e) {
+      // The scores are recomputed on the next vote or view of the deals
+      log.warn("Failed to refresh the hot deal ranking of {} deals", dealIds.size(), e);
+    }
+  }
+
+  double score(Deal deal) {
+    var dealScore = deal.getDealScore();
+    var order = Math.signum(dealScore) * Math.log10(Math.max(Math.abs(dealScore), 1));
+    var views = properties.getViewWeight() * Math.log10(deal.getViews() + 1);
+    var createdAt = deal.getCreatedAt() != null ? deal.getCreatedAt() : Instant.now();
+    return order + views + (double) createdAt.getEpochSecond() / properties.getDecay().toSeconds();
+  }
+
+  /** Rebuilds the ranking from the deals posted within {@link HotDealProperties#getMaxAge()}. */
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuild() {
+    var tempKey = KEY + ":rebuild";
+    var query =
+        query(
+            where("status")
+                .is(DealStatus.ACTIVE)
+                .and("createdAt")
+                .gte(Instant.now().minus(properties.getMaxAge())));
+    var touched = ConcurrentHashMap.<String>newKeySet();
+    touchedIds = touched;
+    try {
+      redisTemplate.delete(tempKey);
+      var batch = new ArrayList<Deal>(REBUILD_BATCH_SIZE);
+      var count = 0;
+      try (var deals = mongoTemplate.stream(rankingQuery(query), Deal.class)) {
+        for (var iterator = deals.iterator(); iterator.hasNext(); ) {
+          batch.add(iterator.next());
+          if (batch.size() == REBUILD_BATCH_SIZE || !iterator.hasNext()) {
+            write(tempKey, batch, List.of());
+            count += batch.size();
+            batch.clear();
+          }
+        }
+      }
+      if (count == 0) {
+        redisTemplate.delete(KEY);
+      } else {
+        // Swaps the ranking atomically, readers never see a partial ranking
+        redisTemplate.rename(tempKey, KEY);
+      }
+      touchedIds = null;
+      // The deals written during the rebuild may have been streamed before the write
+      refresh(Set.copyOf(touched));
+      log.info("Rebuilt the hot deal ranking from {} deals, refreshed {} deals written meanwhile",
+          count, touched.size());
+    } catch (Exception e) {
+      log.error("Failed to rebuild the hot deal ranking", e);
+    } finally {
+      touchedIds = null;
+    }
+  }
+
+  private void touch(Collection<String> dealIds) {
+    var touched = touchedIds;
+    if (touched != null) {
+      touched.addAll(dealIds);
+    }
+  }
+
+  @Override
+  public void onAfterSave(AfterSaveEvent<Deal> event) {
+    if (event.getSource().getId() != null) {
+      touch(List.of(event.getSource().getId()));
+    }
+    try {
+      write(KEY, List.of(event.getSource()), List.of());
+    } catch (Exception e) {
+      log.warn("Failed to update the hot deal ranking of deal {}", event.getSource().getId(), e);
+    }
+  }
+
+  @Override
+  public void onAfterDelete(AfterDeleteEvent<Deal> event) {
+    var document = event.getDocument();
+    // Deletes by other queries are cleaned up when the ranking is rebuilt
+    if (document != null && document.get("_id") != null && document.size() == 1) {
+      var id = document.get("_id").toString();
+      touch(List.of(id));
+      try {
+        write(KEY, List.of(), List.of(id));
+      } catch (Exception e) {
+        log.warn("Failed to remove deal {} from the hot deal ranking", id, e);
+      }
+    }
+  }
+
+  private void write(String key, Collection<Deal> deals, Collection<String> removedIds) {
+    var rawKey = key.getBytes(StandardCharsets.UTF_8);
+    redisTemplate.executePipelined(
+        (RedisCallback<Object>)
+            connection -> {
+              for (var deal : deals) {
+                if (deal.getStatus() == DealStatus.ACTIVE) {
+                  connection.zSetCommands().zAdd(rawKey, score(deal), raw(deal.getId()));
+                } else {
+                  remove(connection, rawKey, deal.getId());
+                }
+              }
+              removedIds.forEach(id -> remove(connection, rawKey, id));
+              // Keeps the top maxSize deals only
+              connection.zSetCommands().zRemRange(rawKey, 0, -properties.getMaxSize() - 1);
+              return null;
+            });
+  }
+
+  private static Query rankingQuery(Query query) {
+    query.fields().include("status").include("dealScore").include("views").include("createdAt");
+    return query;
+  }
+
+  private static void remove(RedisConnection connection, byte[] rawKey, String id) {
+    connection.zSetCommands().zRem(rawKey, raw(id));
+  }
+
+  private static byte[] raw(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -8,9 +8,9 @@ import lombok.Data;
 @Builder
 public class SearchSuggestion {
 
-  @Schema(description = "Deal ID", example = "5fbe790ec6f0b32014074bb2")
+  @Schema(description = "Deal ID, null if the suggestion is a popular search query", example = "5fbe790ec6f0b32014074bb2")
   private final String id;
 
-  @Schema(description = "Deal title", example = "iPhone 12 Pro Max 128 GB")
+  @Schema(description = "Deal title, or the search query if the ID is null", example = "iPhone 12 Pro Max 128 GB")
   private final String title;
 }
@@ -3,10 +3,8 @@ package com.halildurmus.hotdeals.deal.dto;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.halildurmus.hotdeals.deal.DealStatus;
 import com.halildurmus.hotdeals.util.ObjectIdJsonSerializer;
-import com.halildurmus.hotdeals.util.ObjectIdSetJsonSerializer;
 import io.swagger.v3.oas.annotations.media.Schema;
 import java.time.Instant;
-import java.util.HashSet;
 import java.util.List;
 import lombok.Builder;
 import lombok.Data;
@@ -30,15 +28,11 @@ public class DealGetDTO {
   @Schema(description = "Deal score", example = "1")
   private final int dealScore;
 
-  @Schema(
-      description = "Deal upvoters",
-      example = "5fbe790ec6f0b32014074bb1, 5fbe790ec6f0b32014074bb2")
-  @JsonSerialize(using = ObjectIdSetJsonSerializer.class)
-  private final HashSet<ObjectId> upvoters;
-
-  @Schema(description = "Deal downvoters", example = "5fbe790ec6f0b32014074bb3")
-  @JsonSerialize(using = ObjectIdSetJsonSerializer.class)
-  private final HashSet<ObjectId> downvoters;
+  @Schema(description = "Deal upvote count", example = "2")
+  private final int upvotes;
+
+  @Schema(description = "Deal downvote count", example = "1")
+  private final int downvotes;
 
   @Schema(description = "Category path", example = "/computers/monitors")
   private final String category;
@@ -11,6 +11,4 @@ public class DealPatchDTO {
   @Schema(description = "Deal status", example = "EXPIRED")
   @NotNull
   private DealStatus status;
-
-  private Boolean isAdminOrMod;
 }
@@ -0,0 +1,285 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import com.halildurmus.hotdeals.deal.Deal;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the deal index in sync with the change stream of the {@code deals} collection, so that
+ * every write reaches Elasticsearch, including the ones made outside of {@code DealServiceImpl}.
+ *
+ * <p>The changed deal IDs are collected into batches, and the current state of the deals is read
+ * and shipped in a single bulk request per batch. The updates that only touch the fields that are
+ * not indexed, like the views and the votes, are skipped, and the other updates only ship the
+ * fields derived from the updated fields. The resume token is stored in {@code
+ * es_sync_state} after every batch, a restarted node continues where the stream was left off. If
+ * there is no token yet or the oplog no longer has its position, the index is rebuilt first.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "deals.es-sync.mode", havingValue = "change-stream")
+public class DealChangeStreamIndexer {
+
+  private static final String STATE_ID = "deals";
+
+  private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+
+  private volatile boolean running;
+
+  private Thread thread;
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @Autowired
+  private EsDealWriter esDealWriter;
+
+  @Autowired
+  private EsDealReindexer esDealReindexer;
+
+  @Autowired
+  private EsSyncLease lease;
+
+  @Autowired
+  private EsSyncProperties properties;
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    running = true;
+    thread = Thread.ofVirtual().name("deal-change-stream").start(this::run);
+  }
+
+  @PreDestroy
+  void stop() throws InterruptedException {
+    running = false;
+    if (thread != null) {
+      // The stream is polled every maxWait, the thread notices the flag by then
+      thread.join(properties.getChangeStream().getMaxWait().multipliedBy(5));
+    }
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        if (lease.acquire()) {
+          follow();
+        } else {
+          sleep(properties.getLeaseDuration().dividedBy(3));
+        }
+      } catch (MongoCommandException e) {
+        if (e.getErrorCode() == CHANGE_STREAM_HISTORY_LOST) {
+          log.error("The deal change stream can't be resumed, the index will be rebuilt", e);
+          stateCollection().deleteOne(Filters.eq("_id", STATE_ID));
+        } else {
+          retryLater(e);
+        }
+      } catch (Exception e) {
+        retryLater(e);
+      }
+    }
+  }
+
+  private void follow() throws IOException {
+    var settings = properties.getChangeStream();
+    var token = loadToken();
+    var collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Deal.class));
+    var changes =
+        collection
+            .watch(
+                List.of(
+                    Aggregates.match(
+                        Filters.in("operationType", "insert", "update", "replace", "delete"))))
+            .batchSize(settings.getBatchSize())
+            .maxAwaitTime(settings.getMaxWait().toMillis(), TimeUnit.MILLISECONDS);
+    if (token != null) {
+      changes.startAfter(token);
+    }
+
+    try (var cursor = changes.cursor()) {
+      if (token == null) {
+        // The changes made during the rebuild are read from the stream afterwards
+        token = cursor.getResumeToken();
+        log.info("Rebuilding the deal index before following the deal change stream");
+        esDealReindexer.reindex();
+        saveToken(token);
+      }
+
+      var changedIds = new LinkedHashSet<String>();
+      var changedFields = new HashMap<String, Set<String>>();
+      var fullIds = new HashSet<String>();
+      var batchStartedAt = Instant.now();
+      var savedAt = Instant.now();
+      var renewedAt = Instant.now();
+      while (running) {
+        var change = cursor.tryNext();
+        var now = Instant.now();
+        var fields = change != null ? changedFields(change) : Set.<String>of();
+        if (fields == null || !fields.isEmpty()) {
+          if (changedIds.isEmpty()) {
+            batchStartedAt = now;
+          }
+          var dealId = dealId(change);
+          changedIds.add(dealId);
+          if (fields == null) {
+            fullIds.add(dealId);
+          } else {
+            changedFields.computeIfAbsent(dealId, id -> new HashSet<>()).addAll(fields);
+          }
+        }
+
+        var full = changedIds.size() >= settings.getBatchSize();
+        var due =
+            !changedIds.isEmpty()
+                && (change == null || elapsed(batchStartedAt, now, settings.getMaxWait()));
+        if (full || due) {
+          fullIds.forEach(changedFields::remove);
+          ship(changedIds, changedFields);
+          changedIds.clear();
+          changedFields.clear();
+          fullIds.clear();
+          saveToken(cursor.getResumeToken());
+          savedAt = now;
+        } else if (changedIds.isEmpty() && elapsed(savedAt, now, settings.getMaxWait())) {
+          // Moves past the skipped changes, so that they are not read again after a restart
+          saveToken(cursor.getResumeToken());
+          savedAt = now;
+        }
+
+        if (elapsed(renewedAt, now, properties.getLeaseDuration().dividedBy(3))) {
+          if (!lease.acquire()) {
+            log.warn("Lost the Elasticsearch sync lease, stopped following the deal change stream");
+            return;
+          }
+          renewedAt = now;
+        }
+      }
+    }
+  }
+
+  private void ship(Set<String> dealIds, Map<String, Set<String>> changedFields)
+      throws IOException {
+    var deals = mongoTemplate.find(query(where("_id").in(dealIds)), Deal.class);
+    var deletedIds = new ArrayList<>(dealIds);
+    deals.forEach(deal -> deletedIds.remove(deal.getId()));
+
+    var failures = esDealWriter.write(deals, changedFields, deletedIds);
+    failures.forEach(
+        (dealId, failure) -> {
+          if (!failure.retryable()) {
+            log.error("Skipping deal {}, it can't be indexed: {}", dealId, failure.reason());
+          }
+        });
+    if (failures.values().stream().anyMatch(EsDealWriter.Failure::retryable)) {
+      // The batch is read from the stream again, from the last stored resume token
+      throw new IllegalStateException("Failed to index " + failures.size() + " deals");
+    }
+    log.debug("Shipped {} changed deals to Elasticsearch", dealIds.size());
+  }
+
+  /**
+   * Returns the indexed fields affected by the given change.
+   *
+   * @param change the change stream event
+   * @return the changed {@link EsDeal} fields of an update, empty if the update only touches fields
+   *     that are not indexed, or null if the whole deal is to be indexed
+   */
+  static Set<String> changedFields(ChangeStreamDocument<Document> change) {
+    var description = change.getUpdateDescription();
+    if (change.getOperationType() != OperationType.UPDATE || description == null) {
+      return null;
+    }
+    var updatedFields =
+        description.getUpdatedFields() != null
+            ? description.getUpdatedFields().keySet().stream()
+            : Stream.<String>empty();
+    var removedFields =
+        description.getRemovedFields() != null
+            ? description.getRemovedFields().stream()
+            : Stream.<String>empty();
+    // Array and embedded document updates are reported with dotted paths like upvoters.3
+    return Stream.concat(updatedFields, removedFields)
+        .map(field -> field.split("\\.", 2)[0])
+        .flatMap(field -> EsDeal.fieldsOf(field).stream())
+        .collect(Collectors.toSet());
+  }
+
+  private static String dealId(ChangeStreamDocument<Document> change) {
+    var id = change.getDocumentKey().get("_id");
+    return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+  }
+
+  private MongoCollection<BsonDocument> stateCollection() {
+    return mongoTemplate
+        .getCollection(EsSyncLease.COLLECTION)
+        .withDocumentClass(BsonDocument.class);
+  }
+
+  private BsonDocument loadToken() {
+    var state = stateCollection().find(Filters.eq("_id", STATE_ID)).first();
+    return state != null ? state.getDocument("resumeToken", null) : null;
+  }
+
+  private void saveToken(BsonDocument token) {
+    if (token == null) {
+      return;
+    }
+    var state =
+        new BsonDocument("_id", new BsonString(STATE_ID))
+            .append("resumeToken", token)
+            .append("updatedAt", new BsonDateTime(System.currentTimeMillis()));
+    stateCollection()
+        .replaceOne(Filters.eq("_id", STATE_ID), state, new ReplaceOptions().upsert(true));
+  }
+
+  private void retryLater(Exception e) {
+    var backoff = properties.getChangeStream().getRetryBackoff();
+    log.error("Failed to follow the deal change stream, retrying in {}", backoff, e);
+    sleep(backoff);
+  }
+
+  private void sleep(Duration duration) {
+    try {
+      Thread.sleep(duration);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      running = false;
+    }
+  }
+
+  private static boolean elapsed(Instant since, Instant now, Duration duration) {
+    return Duration.between(since, now).compareTo(duration) >= 0;
+  }
+}
@@ -0,0 +1,81 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import com.halildurmus.hotdeals.deal.Deal;
+import java.util.Map;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records the deal changes to be shipped to Elasticsearch by {@link DealOutboxRelay}. Call it in
+ * the transaction that writes the deal, so that the change is recorded if and only if the deal
+ * write is committed.
+ *
+ * <p>Nothing is recorded in the {@link EsSyncProperties.Mode#CHANGE_STREAM} mode, the changes are
+ * read from the change stream of the deals collection instead.
+ */
+@Slf4j
+@Component
+public class DealOutbox {
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @Autowired
+  private EsDealWriter esDealWriter;
+
+  @Autowired
+  private EsSyncProperties properties;
+
+  /**
+   * Returns the indexed state of the given deal, to be passed to {@link #upserted(Deal, Map)}
+   * after the deal is updated.
+   *
+   * @param deal the deal before the update
+   * @return the indexed state, or null if the deal can't be indexed
+   */
+  public Map<String, Object> snapshot(Deal deal) {
+    try {
+      return esDealWriter.toDocument(deal);
+    } catch (RuntimeException e) {
+      log.debug("Deal {} can't be indexed, it will be indexed in full", deal.getId(), e);
+      return null;
+    }
+  }
+
+  /**
+   * Records that the given deal has been created or updated. Only the indexed fields that differ
+   * from the snapshot are shipped, and nothing is recorded if none of them has changed.
+   *
+   * @param deal the saved deal
+   * @param before the snapshot of the deal before the update, null if the deal is new
+   */
+  public void upserted(Deal deal, Map<String, Object> before) {
+    Set<String> fields = null;
+    var after = before != null ? snapshot(deal) : null;
+    if (after != null) {
+      fields = EsDealWriter.changedFields(before, after);
+      if (fields.isEmpty()) {
+        return;
+      }
+    }
+    record(deal.getId(), DealOutboxEvent.Type.UPSERT, fields);
+  }
+
+  /**
+   * Records that the given deal has been deleted.
+   *
+   * @param dealId the deal ID
+   */
+  public void deleted(String dealId) {
+    record(dealId, DealOutboxEvent.Type.DELETE, null);
+  }
+
+  private void record(String dealId, DealOutboxEvent.Type type, Set<String> fields) {
+    if (properties.getMode() == EsSyncProperties.Mode.OUTBOX) {
+      mongoTemplate.insert(new DealOutboxEvent(dealId, type, fields));
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import java.time.Instant;
+import java.util.Set;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A change of a deal that is not yet reflected in Elasticsearch. The events are written in the
+ * same transaction as the deal, and their IDs increase in the order of the writes.
+ */
+@Document(collection = "deal_outbox")
+@CompoundIndexes({
+    @CompoundIndex(name = "nextAttemptAt_id", def = "{'nextAttemptAt': 1, '_id': 1}"),
+    @CompoundIndex(name = "dealId_id", def = "{'dealId': 1, '_id': 1}")
+})
+@Data
+@NoArgsConstructor
+public class DealOutboxEvent {
+
+  @Id
+  private ObjectId id;
+
+  private String dealId;
+
+  private Type type;
+
+  // The changed EsDeal fields of an update, null if the whole deal is to be indexed
+  private Set<String> fields;
+
+  private int attempts;
+
+  private Instant nextAttemptAt;
+
+  private String lastError;
+
+  public DealOutboxEvent(String dealId, Type type, Set<String> fields) {
+    this.dealId = dealId;
+    this.type = type;
+    this.fields = fields;
+    this.nextAttemptAt = Instant.now();
+  }
+
+  public enum Type {
+    UPSERT,
+    DELETE
+  }
+}
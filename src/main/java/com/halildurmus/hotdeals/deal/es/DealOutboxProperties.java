@@ -0,0 +1,20 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties("deals.outbox")
+@Data
+public class DealOutboxProperties {
+
+  // The maximum number of outbox events shipped to Elasticsearch in a single bulk request
+  private int batchSize = 500;
+
+  // The delay before the first retry of a failed event, doubled on every further attempt
+  private Duration initialBackoff = Duration.ofSeconds(1);
+
+  private Duration maxBackoff = Duration.ofMinutes(5);
+}
@@ -0,0 +1,168 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import com.halildurmus.hotdeals.deal.Deal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ships the events of {@link DealOutbox} to Elasticsearch in bulk requests.
+ *
+ * <p>The events only tell which deals have changed: the relay indexes the current state of a deal,
+ * or deletes it if it no longer exists. Shipping the latest event of a deal thus supersedes its
+ * earlier events, and the index converges to the database even if the events of a deal are
+ * retried out of order. Only the node holding the {@link EsSyncLease} ships events.
+ *
+ * <p>If all the events of a deal carry the changed fields, only the union of these fields is
+ * shipped, see {@link EsDealWriter}.
+ *
+ * <p>The events that fail are retried with an exponential backoff and stay in the outbox until
+ * they succeed.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "deals.es-sync.mode", havingValue = "outbox", matchIfMissing = true)
+public class DealOutboxRelay {
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @Autowired
+  private EsDealWriter esDealWriter;
+
+  @Autowired
+  private EsSyncLease lease;
+
+  @Autowired
+  private DealOutboxProperties properties;
+
+  @Scheduled(fixedDelayString = "${deals.outbox.relay-interval:PT1S}")
+  public void relay() {
+    try {
+      // Keeps relaying while there is a backlog, the lease is renewed before every batch
+      while (lease.acquire() && relayBatch() == properties.getBatchSize()) {
+        log.debug("Relayed a full batch of deal outbox events, relaying the next one");
+      }
+    } catch (Exception e) {
+      log.error("Failed to relay the deal outbox events", e);
+    }
+  }
+
+  /**
+   * Ships the due events, oldest first.
+   *
+   * @return the number of events read from the outbox
+   */
+  int relayBatch() {
+    var now = Instant.now();
+    var events =
+        mongoTemplate.find(
+            query(where("nextAttemptAt").lte(now))
+                .with(Sort.by("_id"))
+                .limit(properties.getBatchSize()),
+            DealOutboxEvent.class);
+    if (events.isEmpty()) {
+      return 0;
+    }
+
+    // Also reads the earlier events of the deals that are waiting for a retry, they are superseded
+    // by the latest event but their changed fields still need to be shipped
+    var dealIds = events.stream().map(DealOutboxEvent::getDealId).distinct().toList();
+    var lastId = events.getLast().getId();
+    var pendingEvents =
+        mongoTemplate.find(
+            query(where("dealId").in(dealIds).and("_id").lte(lastId)).with(Sort.by("_id")),
+            DealOutboxEvent.class);
+    var latestEvents = new LinkedHashMap<String, DealOutboxEvent>();
+    var eventIds = new HashMap<String, List<ObjectId>>();
+    var changedFields = new HashMap<String, Set<String>>();
+    var fullDealIds = new HashSet<String>();
+    for (var event : pendingEvents) {
+      latestEvents.put(event.getDealId(), event);
+      eventIds.computeIfAbsent(event.getDealId(), id -> new ArrayList<>()).add(event.getId());
+      if (event.getFields() == null) {
+        fullDealIds.add(event.getDealId());
+      } else {
+        changedFields.computeIfAbsent(event.getDealId(), id -> new HashSet<>())
+            .addAll(event.getFields());
+      }
+    }
+    fullDealIds.forEach(changedFields::remove);
+
+    var upsertedIds =
+        latestEvents.values().stream()
+            .filter(event -> event.getType() == DealOutboxEvent.Type.UPSERT)
+            .map(DealOutboxEvent::getDealId)
+            .toList();
+    var deals = mongoTemplate.find(query(where("_id").in(upsertedIds)), Deal.class);
+    var deletedIds = new ArrayList<>(latestEvents.keySet());
+    deals.forEach(deal -> deletedIds.remove(deal.getId()));
+
+    Map<String, String> failures = new HashMap<>();
+    try {
+      esDealWriter
+          .write(deals, changedFields, deletedIds)
+          .forEach((dealId, failure) -> failures.put(dealId, failure.reason()));
+    } catch (Exception e) {
+      log.warn("Failed to ship {} deal outbox events", latestEvents.size(), e);
+      latestEvents.keySet().forEach(dealId -> failures.put(dealId, e.getMessage()));
+    }
+
+    complete(latestEvents, eventIds, failures, now);
+    return events.size();
+  }
+
+  private void complete(
+      Map<String, DealOutboxEvent> latestEvents,
+      Map<String, List<ObjectId>> eventIds,
+      Map<String, String> failures,
+      Instant now) {
+    var bulkOps = mongoTemplate.bulkOps(BulkMode.UNORDERED, DealOutboxEvent.class);
+    latestEvents.forEach(
+        (dealId, event) -> {
+          // Also removes or delays the earlier events of the deal, they are superseded. Only the
+          // events that were read are matched, an event with a lower ID that was committed after
+          // the read hasn't been shipped yet
+          var query = query(where("_id").in(eventIds.get(dealId)));
+          var failure = failures.get(dealId);
+          if (failure == null) {
+            bulkOps.remove(query);
+            return;
+          }
+          var attempts = event.getAttempts() + 1;
+          log.warn(
+              "Failed to ship deal {} to Elasticsearch, attempt {}: {}", dealId, attempts, failure);
+          bulkOps.updateMulti(
+              query,
+              new Update()
+                  .set("attempts", attempts)
+                  .set("nextAttemptAt", now.plus(backoff(attempts)))
+                  .set("lastError", failure));
+        });
+    bulkOps.execute();
+  }
+
+  Duration backoff(int attempts) {
+    var backoff = properties.getInitialBackoff().multipliedBy(1L << Math.min(attempts - 1, 20));
+    return backoff.compareTo(properties.getMaxBackoff()) > 0 ? properties.getMaxBackoff() : backoff;
+  }
+}
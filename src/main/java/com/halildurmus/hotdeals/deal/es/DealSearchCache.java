@@ -0,0 +1,165 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import com.halildurmus.hotdeals.deal.DealSearchParams;
+import com.halildurmus.hotdeals.deal.PriceRange;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches the search results in the {@code deals:searches} cache, keyed by the normalized search
+ * parameters and the page.
+ *
+ * <p>The keys include a generation number stored in Redis, which is incremented by every write to
+ * the deal index, so a write invalidates the results of all nodes at once without scanning the
+ * cache. The entries of the previous generations expire with the short TTL of the cache.
+ *
+ * <p>Concurrent misses of the same key on a node wait for the first one, so a popular query that
+ * isn't cached triggers a single search.
+ */
+@Slf4j
+@Component
+class DealSearchCache {
+
+  static final String CACHE_NAME = "deals:searches";
+
+  private static final String GENERATION_KEY = "deals:searches:generation";
+
+  private final Map<String, CompletableFuture<DealSearchResponse>> inFlight =
+      new ConcurrentHashMap<>();
+
+  @Autowired
+  private CacheManager cacheManager;
+
+  @Autowired
+  private StringRedisTemplate redisTemplate;
+
+  /**
+   * Returns the cached result of the given search, or loads and caches it.
+   *
+   * @param searchParams the search parameters
+   * @param pageable the page
+   * @param loader runs the search
+   * @return the search result
+   */
+  DealSearchResponse get(
+      DealSearchParams searchParams, Pageable pageable, Supplier<DealSearchResponse> loader) {
+    var cache = cacheManager.getCache(CACHE_NAME);
+    String key;
+    try {
+      key = generation() + ":" + createKey(searchParams, pageable);
+      var cached = cache.get(key, DealSearchResponse.class);
+      if (cached != null) {
+        return cached;
+      }
+    } catch (RuntimeException e) {
+      log.warn("Failed to read the cached search result", e);
+      return loader.get();
+    }
+
+    var future = new CompletableFuture<DealSearchResponse>();
+    var existing = inFlight.putIfAbsent(key, future);
+    if (existing != null) {
+      try {
+        return existing.join();
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException cause ? cause : e;
+      }
+    }
+
+    try {
+      var result = loader.get();
+      future.complete(result);
+      try {
+        cache.put(key, result);
+      } catch (RuntimeException e) {
+        log.warn("Failed to cache the search result", e);
+      }
+      return result;
+    } catch (RuntimeException e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, future);
+    }
+  }
+
+  /**
+   * Invalidates the cached results of all nodes. The results cached before Elasticsearch
+   * refreshes the index may still miss the write until they expire.
+   */
+  void invalidate() {
+    try {
+      redisTemplate.opsForValue().increment(GENERATION_KEY);
+    } catch (RuntimeException e) {
+      log.warn("Failed to invalidate the cached search results", e);
+    }
+  }
+
+  private String generation() {
+    return Objects.requireNonNullElse(redisTemplate.opsForValue().get(GENERATION_KEY), "0");
+  }
+
+  /**
+   * Creates the cache key of a search. The query is compared case insensitively with its
+   * whitespace collapsed, as it is analyzed that way, and the filter values in any order.
+   *
+   * @param searchParams the search parameters
+   * @param pageable the page
+   * @return the key
+   */
+  static String createKey(DealSearchParams searchParams, Pageable pageable) {
+    var query = prefixLength(searchParams.getQuery() == null ? ""
+        : searchParams.getQuery().trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT));
+    var prices = searchParams.getPrices() == null ? null
+        : searchParams.getPrices().stream()
+            .sorted(Comparator.comparing(PriceRange::getFrom,
+                    Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(PriceRange::getTo, Comparator.nullsLast(Comparator.naturalOrder())))
+            .map(range -> range.getFrom() + "-" + range.getTo())
+            .distinct()
+            .toList();
+    var sortBy = searchParams.getSortBy();
+    return String.join("|",
+        query,
+        normalize(searchParams.getCategories()),
+        normalize(searchParams.getTypes()),
+        normalize(searchParams.getLocations()),
+        Objects.toString(prices),
+        normalize(searchParams.getStores()),
+        Objects.toString(Boolean.TRUE.equals(searchParams.getHideExpired())),
+        sortBy == null ? "" : sortBy + ":" + searchParams.getOrder(),
+        normalize(searchParams.getFacets()),
+        pageable.getPageNumber() + ":" + pageable.getPageSize());
+  }
+
+  // The values are matched exactly, so only their order and duplicates are normalized
+  private static String normalize(List<String> values) {
+    if (values == null) {
+      return "null";
+    }
+    return values.stream()
+        .distinct()
+        .sorted()
+        .map(DealSearchCache::prefixLength)
+        .collect(Collectors.joining());
+  }
+
+  // The values may contain any separator, the length tells where they end
+  private static String prefixLength(String value) {
+    return value.length() + ":" + value;
+  }
+}
@@ -0,0 +1,72 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * The position after the last deal of a search page, for the {@code search_after} of the next
+ * page.
+ *
+ * <p>Clients receive it as an opaque token, see {@link #encode()} and {@link #decode(String)}.
+ *
+ * @param pitId the ID of the point in time the next pages are searched in, {@code null} if the
+ *     page has been searched without one
+ * @param sortValues the sort values of the last deal of the page
+ */
+public record DealSearchCursor(String pitId, List<FieldValue> sortValues) {
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  public String encode() {
+    var values = new ArrayList<>();
+    values.add(pitId);
+    sortValues.forEach(value -> values.add(value.isNull() ? null : value._get()));
+    try {
+      return Base64.getUrlEncoder()
+          .withoutPadding()
+          .encodeToString(OBJECT_MAPPER.writeValueAsBytes(values));
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to encode the search cursor", e);
+    }
+  }
+
+  /**
+   * Decodes a token created by {@link #encode()}.
+   *
+   * @param token the token
+   * @return the cursor
+   * @throws ResponseStatusException if the token is invalid
+   */
+  public static DealSearchCursor decode(String token) {
+    try {
+      var values = OBJECT_MAPPER.readValue(Base64.getUrlDecoder().decode(token), Object[].class);
+      var sortValues =
+          Arrays.stream(values, 1, values.length).map(DealSearchCursor::toFieldValue).toList();
+      if (sortValues.isEmpty()) {
+        throw new IllegalArgumentException();
+      }
+      return new DealSearchCursor((String) values[0], sortValues);
+    } catch (IOException | RuntimeException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor!");
+    }
+  }
+
+  private static FieldValue toFieldValue(Object value) {
+    return switch (value) {
+      case null -> FieldValue.NULL;
+      case Integer number -> FieldValue.of(number.longValue());
+      case Long number -> FieldValue.of(number.longValue());
+      case Double number -> FieldValue.of(number.doubleValue());
+      case Boolean bool -> FieldValue.of(bool.booleanValue());
+      case String string -> FieldValue.of(string);
+      default -> throw new IllegalArgumentException("Invalid sort value " + value);
+    };
+  }
+}
@@ -0,0 +1,70 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties("deals.search")
+@Data
+public class DealSearchProperties {
+
+  // How the facets are indexed and queried
+  private FacetModel facetModel = FacetModel.NESTED;
+
+  // The deepest offset page that can be searched, the deeper pages must be fetched with a cursor
+  private int maxResultWindow = 1000;
+
+  // How long the point in time of a cursor is kept between two pages
+  private Duration cursorKeepAlive = Duration.ofMinutes(1);
+
+  private Suggestions suggestions = new Suggestions();
+
+  private QueryLog queryLog = new QueryLog();
+
+  @Data
+  public static class Suggestions {
+
+    // Whether the suggestions are served from the in-process index, see DealSuggestionIndex
+    private boolean enabled = true;
+
+    // The most index keys a query looks at, bounds the latency of the short prefixes
+    private int maxScan = 10_000;
+
+    // How often the index is rebuilt from MongoDB, in case a change notification was lost
+    private Duration rebuildInterval = Duration.ofHours(1);
+
+    // The most searched queries of the query log are suggested as well, weighted by their count
+    private int popularQueries = 1000;
+
+    // How far back the searches are counted when the index is rebuilt
+    private Duration popularQueryPeriod = Duration.ofDays(7);
+
+    // The most popular queries in a response, ahead of the deals
+    private int maxQuerySuggestions = 2;
+  }
+
+  @Data
+  public static class QueryLog {
+
+    // Whether the searches are recorded in the search_queries collection, see SearchQueryLog
+    private boolean enabled = true;
+
+    // The most searches buffered in memory, the searches recorded on a full buffer are dropped
+    private int capacity = 10_000;
+
+    // The maximum number of searches written to MongoDB at once
+    private int batchSize = 500;
+
+    // How long a batch waits to be filled before it is written
+    private Duration flushInterval = Duration.ofSeconds(5);
+  }
+
+  public enum FacetModel {
+    // The numberFacets and stringFacets nested documents, see NestedFacetQueryBuilder
+    NESTED,
+    // The category, store, type, location and price fields, see FlatFacetQueryBuilder
+    FLAT
+  }
+}
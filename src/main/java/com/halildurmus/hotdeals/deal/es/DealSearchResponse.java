@@ -0,0 +1,28 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.util.List;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DealSearchResponse {
+
+  @Schema(description = "Number of matching deals", example = "120")
+  private long total;
+
+  @Schema(description = "Matching deals of the page")
+  private List<EsDeal> hits;
+
+  @Schema(description = "Facet counts by facet name, only the requested facets are included")
+  private Map<String, List<FacetBucket>> facets;
+
+  @Schema(description = "The cursor of the next page, missing on the last page")
+  private String next;
+}
@@ -0,0 +1,344 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import com.halildurmus.hotdeals.deal.Deal;
+import com.halildurmus.hotdeals.deal.DealStatus;
+import com.halildurmus.hotdeals.deal.SearchSuggestion;
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * An in-process index of the deal titles and the popular search queries that answers the search
+ * suggestions without a round trip to Elasticsearch.
+ *
+ * <p>The titles are normalized like the {@code folding_analyzer} (lowercased, accents and
+ * punctuation removed) and stored in a sorted map once per word, keyed by the rest of the title
+ * from that word on, so a prefix of any word sequence of a title is a range of the map. The
+ * matches are ranked active first, then by deal score and post date.
+ *
+ * <p>The most searched queries of {@link SearchQueryLog} that matched a deal are normalized the
+ * same way and completed from their beginning, weighted by their search count. They are suggested
+ * ahead of the deals and refreshed with every rebuild.
+ *
+ * <p>The index is built from MongoDB on startup and rebuilt periodically. The deals saved or
+ * deleted in between are applied by the node that wrote them and by the other nodes through Redis
+ * pub/sub.
+ */
+@Slf4j
+@Component
+public class DealSuggestionIndex extends AbstractMongoEventListener<Deal> {
+
+  static final String CHANNEL = "deals:suggestions";
+
+  private static final char SEPARATOR = '\u0000';
+
+  private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+  private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+  private static final Comparator<Entry> RANKING =
+      Comparator.comparing(Entry::active)
+          .thenComparingInt(Entry::dealScore)
+          .thenComparing(Entry::createdAt, Comparator.nullsFirst(Comparator.naturalOrder()))
+          .thenComparing(Entry::id);
+
+  // Identifies the messages published by this node, which don't need to be processed again
+  private final String nodeId = UUID.randomUUID().toString();
+
+  // Set once the first build has completed, the suggestions come from Elasticsearch until then
+  private volatile Index index;
+
+  // The index being rebuilt, which gets the changes made during the rebuild as well
+  private volatile Index building;
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @Autowired
+  private StringRedisTemplate redisTemplate;
+
+  @Autowired
+  private RedisMessageListenerContainer listenerContainer;
+
+  @Autowired
+  private SearchQueryLog searchQueryLog;
+
+  @Autowired
+  private DealSearchProperties searchProperties;
+
+  @PostConstruct
+  void subscribe() {
+    listenerContainer.addMessageListener(
+        (message, pattern) -> onChange(new String(message.getBody(), StandardCharsets.UTF_8)),
+        new ChannelTopic(CHANNEL));
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  void buildOnStartup() {
+    if (searchProperties.getSuggestions().isEnabled()) {
+      Thread.ofVirtual().name("deal-suggestion-index").start(this::rebuild);
+    }
+  }
+
+  @Scheduled(
+      fixedDelayString = "${deals.search.suggestions.rebuild-interval:PT1H}",
+      initialDelayString = "${deals.search.suggestions.rebuild-interval:PT1H}")
+  void rebuild() {
+    if (!searchProperties.getSuggestions().isEnabled()) {
+      return;
+    }
+    try {
+      var started = System.nanoTime();
+      var newIndex = new Index();
+      building = newIndex;
+      var query = new Query();
+      query.fields().include("title", "status", "dealScore", "createdAt");
+      try (var deals = mongoTemplate.stream(query.cursorBatchSize(1000), Deal.class)) {
+        deals.forEach(newIndex::put);
+      }
+      loadPopularQueries(newIndex);
+      index = newIndex;
+      log.info("Built the suggestion index of {} deals and {} queries in {} ms",
+          newIndex.deals.size(), newIndex.queries.size(),
+          (System.nanoTime() - started) / 1_000_000);
+    } catch (RuntimeException e) {
+      log.error("Failed to build the suggestion index", e);
+    } finally {
+      building = null;
+    }
+  }
+
+  private void loadPopularQueries(Index target) {
+    var suggestions = searchProperties.getSuggestions();
+    if (suggestions.getPopularQueries() <= 0) {
+      return;
+    }
+    try {
+      searchQueryLog
+          .getPopularQueries(suggestions.getPopularQueryPeriod(), suggestions.getPopularQueries())
+          .forEach(query -> target.putQuery(query.query(), query.count()));
+    } catch (RuntimeException e) {
+      // The deals are still suggested
+      log.warn("Failed to load the popular search queries", e);
+    }
+  }
+
+  /**
+   * Returns the most searched queries that complete the given query, followed by the best ranked
+   * deals with a title containing a word sequence that starts with the given query.
+   *
+   * @param query the query
+   * @param limit the maximum number of suggestions
+   * @return the suggestions, {@code null} if the index is not built yet
+   */
+  public List<SearchSuggestion> suggest(String query, int limit) {
+    var current = index;
+    if (current == null) {
+      return null;
+    }
+    var prefix = normalize(query);
+    if (prefix.isEmpty()) {
+      return List.of();
+    }
+
+    var suggestions = new ArrayList<SearchSuggestion>();
+    var maxQueries = Math.min(limit, searchProperties.getSuggestions().getMaxQuerySuggestions());
+    current.queries.subMap(prefix, false, prefix + Character.MAX_VALUE, false).entrySet().stream()
+        .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+        .limit(maxQueries)
+        .forEach(entry ->
+            suggestions.add(SearchSuggestion.builder().title(entry.getKey()).build()));
+    var maxDeals = limit - suggestions.size();
+    if (maxDeals == 0) {
+      return suggestions;
+    }
+
+    // Keeps the best matches in a min-heap, a short prefix may match many titles
+    var top = new PriorityQueue<>(RANKING);
+    var seen = new HashSet<String>();
+    var maxScan = searchProperties.getSuggestions().getMaxScan();
+    var scanned = 0;
+    for (var entry : current.keys.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+      if (++scanned > maxScan) {
+        break;
+      }
+      if (seen.add(entry.id())) {
+        top.offer(entry);
+        if (top.size() > maxDeals) {
+          top.poll();
+        }
+      }
+    }
+
+    var deals = new ArrayList<SearchSuggestion>(top.size());
+    while (!top.isEmpty()) {
+      var entry = top.poll();
+      deals.addFirst(SearchSuggestion.builder().id(entry.id()).title(entry.title()).build());
+    }
+    suggestions.addAll(deals);
+    return suggestions;
+  }
+
+  @Override
+  public void onAfterSave(AfterSaveEvent<Deal> event) {
+    var deal = event.getSource();
+    if (deal.getId() == null) {
+      return;
+    }
+    apply(target -> target.put(deal));
+    publish(deal.getId());
+  }
+
+  @Override
+  public void onAfterDelete(AfterDeleteEvent<Deal> event) {
+    var document = event.getDocument();
+    if (document == null || document.get("_id") == null) {
+      return;
+    }
+    var id = document.get("_id").toString();
+    apply(target -> target.remove(id));
+    publish(id);
+  }
+
+  private void apply(Consumer<Index> change) {
+    var current = index;
+    if (current != null) {
+      change.accept(current);
+    }
+    var next = building;
+    if (next != null && next != current) {
+      change.accept(next);
+    }
+  }
+
+  private void publish(String dealId) {
+    try {
+      redisTemplate.convertAndSend(CHANNEL, nodeId + "|" + dealId);
+    } catch (RuntimeException e) {
+      // The other nodes will pick the change up with the next rebuild
+      log.warn("Failed to publish the suggestion index change of deal {}", dealId, e);
+    }
+  }
+
+  /**
+   * Handles a change published by any node.
+   *
+   * @param message the message in the form {@code nodeId|dealId}
+   */
+  void onChange(String message) {
+    var parts = message.split("\\|", 2);
+    if (parts.length != 2 || parts[0].equals(nodeId)) {
+      return;
+    }
+    try {
+      var query = new Query(Criteria.where("_id").is(parts[1]));
+      query.fields().include("title", "status", "dealScore", "createdAt");
+      var deal = mongoTemplate.findOne(query, Deal.class);
+      apply(target -> {
+        if (deal == null) {
+          target.remove(parts[1]);
+        } else {
+          target.put(deal);
+        }
+      });
+    } catch (RuntimeException e) {
+      log.warn("Failed to apply the suggestion index change of deal {}", parts[1], e);
+    }
+  }
+
+  /**
+   * Normalizes a title or a query: lowercased, without accents and with the words separated by a
+   * single space.
+   *
+   * @param text the text
+   * @return the normalized text
+   */
+  static String normalize(String text) {
+    var decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+    var folded = MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    return NON_WORD.matcher(folded).replaceAll(" ").trim();
+  }
+
+  private record Entry(
+      String id, String title, List<String> keys, boolean active, int dealScore,
+      Instant createdAt) {}
+
+  private static class Index {
+
+    // "<the normalized title from a word on>\0<deal ID>" -> the deal
+    private final NavigableMap<String, Entry> keys = new ConcurrentSkipListMap<>();
+
+    private final Map<String, Entry> deals = new ConcurrentHashMap<>();
+
+    // The normalized popular query -> its search count, only written before the index is published
+    private final NavigableMap<String, Long> queries = new TreeMap<>();
+
+    void putQuery(String query, long count) {
+      var normalized = normalize(query);
+      if (!normalized.isEmpty()) {
+        // The queries that differ only by their accents or punctuation are merged
+        queries.merge(normalized, count, Long::sum);
+      }
+    }
+
+    void put(Deal deal) {
+      if (deal.getTitle() == null) {
+        remove(deal.getId());
+        return;
+      }
+      var title = normalize(deal.getTitle());
+      var entryKeys = new ArrayList<String>();
+      for (var i = 0; i < title.length(); i++) {
+        if (i == 0 || title.charAt(i - 1) == ' ') {
+          entryKeys.add(title.substring(i) + SEPARATOR + deal.getId());
+        }
+      }
+      var entry = new Entry(deal.getId(), deal.getTitle(), entryKeys,
+          deal.getStatus() == DealStatus.ACTIVE, deal.getDealScore(), deal.getCreatedAt());
+      entryKeys.forEach(key -> keys.put(key, entry));
+      var previous = deals.put(deal.getId(), entry);
+      if (previous != null) {
+        previous.keys().stream()
+            .filter(key -> !entryKeys.contains(key))
+            .forEach(key -> keys.remove(key, previous));
+      }
+    }
+
+    void remove(String id) {
+      var previous = deals.remove(id);
+      if (previous != null) {
+        previous.keys().forEach(key -> keys.remove(key, previous));
+      }
+    }
+  }
+}
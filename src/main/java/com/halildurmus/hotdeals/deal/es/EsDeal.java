@@ -5,6 +5,8 @@ import com.halildurmus.hotdeals.deal.DealStatus;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
@@ -21,6 +23,23 @@ import org.springframework.data.elasticsearch.annotations.Setting;
 @NoArgsConstructor
 public class EsDeal {
 
+  // The fields derived from each Deal field, keep in sync with the constructor
+  private static final Map<String, Set<String>> SOURCE_FIELDS =
+      Map.ofEntries(
+          Map.entry("postedBy", Set.of("postedBy")),
+          Map.entry("title", Set.of("title")),
+          Map.entry("description", Set.of("description")),
+          Map.entry("coverPhoto", Set.of("coverPhoto")),
+          Map.entry("originalPrice", Set.of("originalPrice")),
+          Map.entry("status", Set.of("status")),
+          Map.entry("createdAt", Set.of("createdAt")),
+          Map.entry("price", Set.of("price", "numberFacets")),
+          Map.entry("category", Set.of("category", "stringFacets")),
+          Map.entry("store", Set.of("store", "stringFacets")),
+          Map.entry("type", Set.of("type", "stringFacets")),
+          Map.entry("location", Set.of("location", "stringFacets")),
+          Map.entry("buildingId", Set.of("buildingId", "stringFacets")));
+
   @Id
   @Field(type = FieldType.Keyword)
   private String id;
@@ -49,6 +68,25 @@ public class EsDeal {
   @Field(type = FieldType.Keyword)
   private String buildingId;
 
+  // The facets as plain fields, aggregated from doc values without nested documents, see
+  // FlatFacetQueryBuilder
+  @Field(type = FieldType.Keyword)
+  private String category;
+
+  @Field(type = FieldType.Keyword)
+  private String store;
+
+  @Field(type = FieldType.Keyword)
+  private String type;
+
+  @Field(type = FieldType.Keyword)
+  private String location;
+
+  @Field(type = FieldType.Double)
+  private Double price;
+
+  // The facets as nested documents, see NestedFacetQueryBuilder. They are left out of the indexed
+  // documents in the FLAT facet model.
   @Field(type = FieldType.Nested)
   private List<NumberFacet> numberFacets = new ArrayList<>();
 
@@ -77,8 +115,23 @@ public class EsDeal {
       this.stringFacets.add(new StringFacet("location", deal.getLocation()));
     }
     this.buildingId = deal.getBuildingId();
+    this.category = deal.getCategory();
+    this.store = deal.getStore().toString();
+    this.type = deal.getType();
+    this.location = deal.getLocation();
+    this.price = deal.getPrice();
     if (deal.getBuildingId() != null) {
       this.stringFacets.add(new StringFacet("buildingId", deal.getBuildingId()));
     }
   }
+
+  /**
+   * Returns the fields derived from the given field of {@link Deal}.
+   *
+   * @param dealField the Deal field name
+   * @return the EsDeal field names, empty if the field is not indexed
+   */
+  public static Set<String> fieldsOf(String dealField) {
+    return SOURCE_FIELDS.getOrDefault(dealField, Set.of());
+  }
 }
@@ -0,0 +1,252 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.indices.update_aliases.Action;
+import com.halildurmus.hotdeals.deal.Deal;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Rebuilds the deal index from MongoDB without a search outage.
+ *
+ * <p>The deals are streamed with a Mongo cursor into a new {@code deal-<timestamp>} index in
+ * bounded bulk requests. The cursor is only advanced once the previous bulk request has completed,
+ * so the heap never holds more than one batch. The {@code deal} alias, which the searches and the
+ * writes go through, is then swapped to the new index atomically, and the deals written in the
+ * meantime are copied over in a catch-up pass.
+ *
+ * <p>A running reindex is recorded in {@code es_sync_state}, so only one node can reindex at a
+ * time. The deals deleted on any node in the meantime are added to that record, in the transaction
+ * of the delete, and removed from the new index after the swap.
+ */
+@Slf4j
+@Component
+public class EsDealReindexer extends AbstractMongoEventListener<Deal> {
+
+  public static final String DEAL_ALIAS = "deal";
+
+  private static final int BATCH_SIZE = 500;
+
+  // Covers the clock skew between the nodes for the updatedAt based catch-up
+  private static final Duration CATCH_UP_MARGIN = Duration.ofMinutes(1);
+
+  private static final String STATE_ID = "reindex";
+
+  private final String instanceId = UUID.randomUUID().toString();
+
+  private Instant renewedAt;
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @Autowired
+  private ElasticsearchOperations elasticsearchOperations;
+
+  @Autowired
+  private ElasticsearchClient esClient;
+
+  @Autowired
+  private EsDealWriter esDealWriter;
+
+  @Autowired
+  private DealSearchCache searchCache;
+
+  @Autowired
+  private EsSyncProperties properties;
+
+  /**
+   * Reindexes all deals into a new index and points the {@code deal} alias to it.
+   *
+   * @return the number of indexed deals
+   * @throws ResponseStatusException if a reindex is already running or Elasticsearch fails
+   */
+  public long reindex() {
+    if (!start()) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT, "A reindex is already running!");
+    }
+
+    var index = DEAL_ALIAS + "-" + System.currentTimeMillis();
+    var swapped = false;
+    try {
+      var startedAt = Instant.now();
+      createIndex(index);
+      var count = copyDeals(new Query(), IndexCoordinates.of(index));
+      esClient.indices().putSettings(p -> p
+          .index(index)
+          .settings(s -> s.refreshInterval(t -> t.time("1s"))));
+      esClient.indices().refresh(r -> r.index(index));
+      swapAlias(index);
+      swapped = true;
+
+      var updatedAfter = startedAt.minus(CATCH_UP_MARGIN);
+      var caughtUp = copyDeals(
+          query(where("updatedAt").gte(updatedAfter)), IndexCoordinates.of(DEAL_ALIAS));
+      var deletedIds = deletedIds();
+      deletedIds.forEach(id -> elasticsearchOperations.delete(id, IndexCoordinates.of(DEAL_ALIAS)));
+      searchCache.invalidate();
+      log.info("Reindexed {} deals into {}, caught up with {} updates and {} deletions", count,
+          index, caughtUp, deletedIds.size());
+      return count;
+    } catch (IOException | RuntimeException e) {
+      log.error("Failed to reindex the deals into {}", index, e);
+      if (!swapped) {
+        deleteIndex(index);
+      }
+      throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to reindex deals!");
+    } finally {
+      finish();
+    }
+  }
+
+  @Override
+  public void onAfterDelete(AfterDeleteEvent<Deal> event) {
+    var document = event.getDocument();
+    if (document == null || document.get("_id") == null) {
+      return;
+    }
+    // A no-op unless a reindex is running on some node
+    mongoTemplate.updateFirst(
+        query(where("_id").is(STATE_ID).and("expiresAt").gt(Instant.now())),
+        new Update().addToSet("deletedIds", document.get("_id").toString()),
+        EsSyncLease.COLLECTION);
+  }
+
+  /**
+   * Records the reindex of this node, unless another node is reindexing. A record left behind by a
+   * crashed node expires unless its owner renews it.
+   */
+  private boolean start() {
+    var now = Instant.now();
+    var update =
+        new Update()
+            .set("owner", instanceId)
+            .set("expiresAt", now.plus(properties.getLeaseDuration()))
+            .set("deletedIds", List.of());
+    try {
+      mongoTemplate.upsert(
+          query(where("_id").is(STATE_ID).and("expiresAt").lt(now)), update, EsSyncLease.COLLECTION);
+    } catch (DuplicateKeyException e) {
+      return false;
+    }
+    renewedAt = now;
+    return true;
+  }
+
+  private void renew() {
+    var now = Instant.now();
+    if (Duration.between(renewedAt, now).compareTo(properties.getLeaseDuration().dividedBy(3)) < 0) {
+      return;
+    }
+    var result = mongoTemplate.updateFirst(
+        query(where("_id").is(STATE_ID).and("owner").is(instanceId)),
+        new Update().set("expiresAt", now.plus(properties.getLeaseDuration())),
+        EsSyncLease.COLLECTION);
+    if (result.getMatchedCount() == 0) {
+      // Another node may have started a reindex and would miss the deletes recorded so far
+      throw new IllegalStateException("The reindex record has expired");
+    }
+    renewedAt = now;
+  }
+
+  private List<String> deletedIds() {
+    var state = mongoTemplate.findOne(
+        query(where("_id").is(STATE_ID).and("owner").is(instanceId)), Document.class,
+        EsSyncLease.COLLECTION);
+    if (state == null) {
+      throw new IllegalStateException("The reindex record has expired");
+    }
+    return state.getList("deletedIds", String.class, List.of());
+  }
+
+  private void finish() {
+    try {
+      mongoTemplate.remove(
+          query(where("_id").is(STATE_ID).and("owner").is(instanceId)), EsSyncLease.COLLECTION);
+    } catch (RuntimeException e) {
+      log.warn("Failed to remove the reindex record, it expires in {}",
+          properties.getLeaseDuration(), e);
+    }
+  }
+
+  private void createIndex(String index) throws IOException {
+    var indexOps = elasticsearchOperations.indexOps(IndexCoordinates.of(index));
+    indexOps.create(indexOps.createSettings(EsDeal.class), indexOps.createMapping(EsDeal.class));
+    // Nothing searches the new index before the swap, so there is no need to refresh it
+    esClient.indices().putSettings(p -> p
+        .index(index)
+        .settings(s -> s.refreshInterval(t -> t.time("-1"))));
+  }
+
+  private long copyDeals(Query query, IndexCoordinates coordinates) {
+    var count = 0L;
+    var batch = new ArrayList<EsDeal>(BATCH_SIZE);
+    try (var deals = mongoTemplate.stream(query.cursorBatchSize(BATCH_SIZE), Deal.class)) {
+      for (var iterator = deals.iterator(); iterator.hasNext(); ) {
+        var deal = iterator.next();
+        try {
+          batch.add(esDealWriter.toEsDeal(deal));
+        } catch (RuntimeException e) {
+          log.warn("Skipping deal {}, it can't be indexed", deal.getId(), e);
+        }
+        if (batch.size() == BATCH_SIZE || !iterator.hasNext()) {
+          if (!batch.isEmpty()) {
+            // Blocks until Elasticsearch has processed the batch
+            elasticsearchOperations.save(batch, coordinates);
+            count += batch.size();
+            batch.clear();
+            renew();
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  private void swapAlias(String index) throws IOException {
+    var actions = new ArrayList<Action>();
+    actions.add(Action.of(a -> a.add(add -> add.index(index).alias(DEAL_ALIAS))));
+    List<String> oldIndices = List.of();
+    if (esClient.indices().existsAlias(e -> e.name(DEAL_ALIAS)).value()) {
+      oldIndices = List.copyOf(esClient.indices().getAlias(g -> g.name(DEAL_ALIAS)).result().keySet());
+      oldIndices.forEach(old ->
+          actions.add(Action.of(a -> a.remove(remove -> remove.index(old).alias(DEAL_ALIAS)))));
+    } else if (esClient.indices().exists(e -> e.index(DEAL_ALIAS)).value()) {
+      // The first reindex replaces the index created by Spring Data Elasticsearch with the alias
+      actions.add(Action.of(a -> a.removeIndex(remove -> remove.index(DEAL_ALIAS))));
+    }
+    esClient.indices().updateAliases(u -> u.actions(actions));
+
+    for (var old : oldIndices) {
+      deleteIndex(old);
+    }
+  }
+
+  private void deleteIndex(String index) {
+    try {
+      esClient.indices().delete(d -> d.index(index));
+    } catch (IOException | RuntimeException e) {
+      log.warn("Failed to delete index {}", index, e);
+    }
+  }
+}
@@ -1,7 +1,9 @@
 package com.halildurmus.hotdeals.deal.es;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.halildurmus.hotdeals.deal.DealSearchParams;
+import com.halildurmus.hotdeals.deal.SearchSuggestion;
+import java.io.OutputStream;
+import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -9,9 +11,38 @@ public interface EsDealService {
 
   Page<EsDeal> findAll(Pageable pageable);
 
-  JsonNode getSuggestions(String query);
+  /**
+   * Returns the deals with a title that starts with the query, or has a word sequence that does.
+   * They are served from {@link DealSuggestionIndex}, Elasticsearch is only queried while the
+   * index is being built or if the index has no match.
+   *
+   * @param query the query
+   * @return the suggestions
+   */
+  List<SearchSuggestion> getSuggestions(String query);
 
-  JsonNode searchDeals(DealSearchParams searchParams, Pageable pageable);
+  DealSearchResponse searchDeals(DealSearchParams searchParams, Pageable pageable);
+
+  /**
+   * Returns the page after the given cursor, searched with {@code search_after} in a point in
+   * time, so that the pages don't shift when deals are added or removed meanwhile. The facets are
+   * not counted.
+   *
+   * @param searchParams the search parameters
+   * @param after the cursor returned with the previous page
+   * @param size the page size
+   * @return the page
+   */
+  DealSearchResponse searchDeals(DealSearchParams searchParams, DealSearchCursor after, int size);
+
+  /**
+   * Runs the search and writes the response of Elasticsearch to the given stream as is.
+   *
+   * @param searchParams the search parameters
+   * @param pageable the page
+   * @param outputStream the stream the response is written to
+   */
+  void searchDealsRaw(DealSearchParams searchParams, Pageable pageable, OutputStream outputStream);
 
   EsDeal save(EsDeal esDeal);
 }
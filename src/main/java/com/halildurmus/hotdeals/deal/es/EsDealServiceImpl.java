@@ -1,30 +1,34 @@
 package com.halildurmus.hotdeals.deal.es;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.SortOptions;
 import co.elastic.clients.elasticsearch._types.SortOrder;
 import co.elastic.clients.elasticsearch._types.aggregations.*;
 import co.elastic.clients.elasticsearch._types.query_dsl.*;
 import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
-import co.elastic.clients.json.JsonData;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import co.elastic.clients.json.JsonpUtils;
 import com.halildurmus.hotdeals.deal.DealRepository;
 import com.halildurmus.hotdeals.deal.DealSearchParams;
-import com.halildurmus.hotdeals.deal.PriceRange;
+import com.halildurmus.hotdeals.deal.SearchSuggestion;
 import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.document.Document;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.util.ObjectUtils;
+import org.springframework.util.StringUtils;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
-import jakarta.json.stream.JsonGenerator;
-import java.io.StringWriter;
 
 @Slf4j
 @Service
@@ -32,6 +36,21 @@ public class EsDealServiceImpl implements EsDealService {
 
   private static final int MAX_SUGGESTION = 5;
   private static final String DEAL_INDEX = "deal";
+  // The facets that can be filtered and counted
+  static final List<String> FACETS = List.of("category", "price", "store", "type", "location");
+  private static final List<AggregationRange> PRICE_RANGES = List.of(
+      AggregationRange.of(r -> r.from(0.0).to(1.0)),
+      AggregationRange.of(r -> r.from(1.0).to(5.0)),
+      AggregationRange.of(r -> r.from(5.0).to(10.0)),
+      AggregationRange.of(r -> r.from(10.0).to(20.0)),
+      AggregationRange.of(r -> r.from(20.0).to(50.0)),
+      AggregationRange.of(r -> r.from(50.0).to(100.0)),
+      AggregationRange.of(r -> r.from(100.0).to(250.0)),
+      AggregationRange.of(r -> r.from(250.0).to(500.0)),
+      AggregationRange.of(r -> r.from(500.0).to(1000.0)),
+      AggregationRange.of(r -> r.from(1000.0).to(1500.0)),
+      AggregationRange.of(r -> r.from(1500.0).to(2000.0)),
+      AggregationRange.of(r -> r.from(2000.0)));
 
   @Autowired
   private DealRepository dealRepository;
@@ -40,7 +59,17 @@ public class EsDealServiceImpl implements EsDealService {
   @Autowired
   private ElasticsearchClient esClient;
   @Autowired
-  private ObjectMapper objectMapper;
+  private FacetQueryBuilder facetQueryBuilder;
+  @Autowired
+  private DealSearchCache searchCache;
+  @Autowired
+  private ElasticsearchOperations elasticsearchOperations;
+  @Autowired
+  private RestClient restClient;
+  @Autowired
+  private DealSearchProperties searchProperties;
+  @Autowired
+  private DealSuggestionIndex suggestionIndex;
 
   @Override
   public Page<EsDeal> findAll(Pageable pageable) {
@@ -55,159 +84,60 @@ public class EsDealServiceImpl implements EsDealService {
   }
 
   @Override
-  public JsonNode getSuggestions(String query) {
+  public List<SearchSuggestion> getSuggestions(String query) {
+    var indexed = suggestionIndex.suggest(query, MAX_SUGGESTION);
+    // The index is not built yet, or the words of the query are not in the order of a title
+    if (indexed != null && indexed.stream().anyMatch(suggestion -> suggestion.getId() != null)) {
+      return indexed;
+    }
+
+    // Keeps the popular queries completing the query, the deals come from Elasticsearch
+    var suggestions = new ArrayList<SearchSuggestion>(indexed == null ? List.of() : indexed);
     try {
       SearchRequest request = SearchRequest.of(r -> r
           .index(DEAL_INDEX)
-          .size(MAX_SUGGESTION)
+          .size(MAX_SUGGESTION - suggestions.size())
           .query(q -> q.multiMatch(createAutocompleteQuery(query)))
           .source(s -> s.filter(f -> f.includes("title"))));
 
-      SearchResponse<Object> response = esClient.search(request, Object.class);
-      JsonNode jsonResponse = serializeResponseToJsonNode(response);
-      return jsonResponse.get("hits").get("hits");
+      SearchResponse<Source> response = esClient.search(request, Source.class);
+      response.hits().hits().stream()
+          .filter(hit -> hit.source() != null && hit.source().get("title") != null)
+          .map(hit -> SearchSuggestion.builder()
+              .id(hit.id())
+              .title(hit.source().get("title").toString())
+              .build())
+          .forEach(suggestions::add);
+      return suggestions;
     } catch (IOException e) {
       throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
     }
   }
 
-  private NestedQuery createStringFacetFilter(String facetName, String facetValue) {
-    String facetGroup = "stringFacets";
-    return NestedQuery.of(n -> n
-        .path(facetGroup)
-        .scoreMode(ChildScoreMode.Avg)
-        .query(q -> q
-            .bool(b -> b
-                .must(List.of(
-                    Query.of(q1 -> q1.term(t -> t.field(facetGroup + ".facetName").value(facetName))),
-                    Query.of(q2 -> q2.term(t -> t.field(facetGroup + ".facetValue").value(facetValue))))))));
-  }
-
-  private NestedQuery createNumberFacetFilter(String facetName, Double from, Double to) {
-    String facetGroup = "numberFacets";
-
-    List<Query> queries = new ArrayList<>();
-    queries.add(Query.of(q -> q.term(t -> t.field(facetGroup + ".facetName").value(facetName))));
-
-    RangeQuery.Builder rangeBuilder = new RangeQuery.Builder()
-        .field(facetGroup + ".facetValue")
-        .gte(JsonData.of(from));
-
-    if (to != null) {
-      rangeBuilder.lt(JsonData.of(to));
-    }
-
-    queries.add(Query.of(q -> q.range(rangeBuilder.build())));
-
-    return NestedQuery.of(n -> n
-        .path(facetGroup)
-        .scoreMode(ChildScoreMode.Avg)
-        .query(q -> q
-            .bool(b -> b
-                .must(queries))));
-  }
-
-  private co.elastic.clients.elasticsearch._types.SortOptions createCreatedAtSort(SortOrder sortOrder) {
-    return co.elastic.clients.elasticsearch._types.SortOptions.of(s -> s
+  private SortOptions createCreatedAtSort(SortOrder sortOrder) {
+    return SortOptions.of(s -> s
         .field(f -> f
             .field("createdAt")
             .order(sortOrder)));
   }
 
-  private co.elastic.clients.elasticsearch._types.SortOptions createPriceSort(SortOrder sortOrder) {
-    String nestedPath = "numberFacets";
-    String fieldName = "numberFacets.facetValue";
-
-    return co.elastic.clients.elasticsearch._types.SortOptions.of(s -> s
-        .field(f -> f
-            .field(fieldName)
-            .order(sortOrder)
-            .nested(n -> n
-                .path(nestedPath)
-                .filter(fi -> fi
-                    .term(t -> t
-                        .field(nestedPath + ".facetName")
-                        .value("price"))))));
-  }
-
-  private List<Query> createCategoryFilters(List<String> categories) {
-    List<Query> queries = new ArrayList<>();
-
-    if (categories.size() > 1) {
-      List<Query> shouldQueries = new ArrayList<>();
-      for (String category : categories) {
-        shouldQueries.add(Query.of(q -> q.nested(createStringFacetFilter("category", category))));
-      }
-
-      queries.add(Query.of(q -> q.bool(b -> b.should(shouldQueries))));
-    } else {
-      queries.add(Query.of(q -> q.nested(createStringFacetFilter("category", categories.get(0)))));
-    }
-
-    return queries;
-  }
-
-  private List<Query> createPriceFilters(List<PriceRange> priceRanges) {
-    List<Query> queries = new ArrayList<>();
-
-    List<Query> shouldQueries = new ArrayList<>();
-    for (PriceRange pr : priceRanges) {
-      shouldQueries.add(Query.of(q -> q.nested(createNumberFacetFilter("price", pr.getFrom(), pr.getTo()))));
-    }
-
-    queries.add(Query.of(q -> q.bool(b -> b.should(shouldQueries))));
-    return queries;
-  }
-
-  private List<Query> createStoreFilters(List<String> stores) {
-    List<Query> queries = new ArrayList<>();
-
-    if (stores.size() > 1) {
-      List<Query> shouldQueries = new ArrayList<>();
-      for (String store : stores) {
-        shouldQueries.add(Query.of(q -> q.nested(createStringFacetFilter("store", store))));
-      }
-
-      queries.add(Query.of(q -> q.bool(b -> b.should(shouldQueries))));
-    } else {
-      queries.add(Query.of(q -> q.nested(createStringFacetFilter("store", stores.get(0)))));
-    }
-
-    return queries;
-  }
-
-  private List<Query> createTypeFilters(List<String> types) {
-    List<Query> queries = new ArrayList<>();
-
-    if (types.size() > 1) {
-      List<Query> shouldQueries = new ArrayList<>();
-      for (String type : types) {
-        shouldQueries.add(Query.of(q -> q.nested(createStringFacetFilter("type", type))));
-      }
-
-      queries.add(Query.of(q -> q.bool(b -> b.should(shouldQueries))));
-    } else {
-      queries.add(Query.of(q -> q.nested(createStringFacetFilter("type", types.get(0)))));
-    }
-
-    return queries;
-  }
-
-  private List<Query> createLocationFilters(List<String> locations) {
-    List<Query> queries = new ArrayList<>();
-
-    if (locations.size() > 1) {
-      List<Query> shouldQueries = new ArrayList<>();
-      for (String location : locations) {
-        shouldQueries.add(Query.of(q -> q.nested(createStringFacetFilter("location", location))));
-      }
-
-      queries.add(Query.of(q -> q.bool(b -> b.should(shouldQueries))));
-    } else {
-      queries.add(Query.of(q -> q.nested(createStringFacetFilter("location", locations.get(0)))));
+  // The deals with the same sort values are ordered by the post date and the ID, so that the order
+  // is deterministic, which search_after needs to not skip or repeat deals
+  private List<SortOptions> createSorts(DealSearchParams searchParams) {
+    List<SortOptions> sorts = new ArrayList<>();
+    SortOrder order = "asc".equals(searchParams.getOrder()) ? SortOrder.Asc : SortOrder.Desc;
+    if (searchParams.getSortBy() == null) {
+      sorts.add(SortOptions.of(s -> s
+          .score(sc -> sc.order(SortOrder.Desc))));
+    } else if (searchParams.getSortBy().equals("price")) {
+      sorts.add(facetQueryBuilder.priceSort(order));
     }
-
-    return queries;
+    sorts.add(createCreatedAtSort("createdAt".equals(searchParams.getSortBy()) ? order : SortOrder.Desc));
+    sorts.add(SortOptions.of(s -> s
+        .field(f -> f
+            .field("id")
+            .order(SortOrder.Asc))));
+    return sorts;
   }
 
   private MultiMatchQuery createMultiMatchQuery(String query) {
@@ -222,273 +152,222 @@ public class EsDealServiceImpl implements EsDealService {
         .value("ACTIVE"));
   }
 
-  private BoolQuery createBoolQuery(Boolean hideExpired, String query) {
+  private BoolQuery createBoolQuery(DealSearchParams searchParams, Collection<String> facets) {
     BoolQuery.Builder boolQuery = new BoolQuery.Builder();
 
-    if (hideExpired) {
+    if (Boolean.TRUE.equals(searchParams.getHideExpired())) {
       boolQuery.filter(Query.of(q -> q.term(createTermQuery())));
     }
 
-    boolQuery.must(Query.of(q -> q.multiMatch(createMultiMatchQuery(query))));
+    if (!ObjectUtils.isEmpty(searchParams.getQuery())) {
+      boolQuery.must(Query.of(q -> q.multiMatch(createMultiMatchQuery(searchParams.getQuery()))));
+    }
+
+    boolQuery.filter(createFilters(searchParams, facets).filter());
 
     return boolQuery.build();
   }
 
-  private BoolQuery createFilters(DealSearchParams searchParams, String filterToBeExcluded) {
-    BoolQuery.Builder boolQuery = new BoolQuery.Builder();
-
-    if (searchParams.getCategories() == null
-        && searchParams.getPrices() == null
-        && searchParams.getStores() == null
-        && searchParams.getTypes() == null
-        && searchParams.getLocations() == null) {
-      return boolQuery.build();
-    }
-
-    List<Query> filters = new ArrayList<>();
+  private Query createFacetFilter(DealSearchParams searchParams, String facet) {
+    return switch (facet) {
+      case "category" -> searchParams.getCategories() == null ? null
+          : facetQueryBuilder.filter(facet, searchParams.getCategories());
+      case "price" -> searchParams.getPrices() == null ? null
+          : facetQueryBuilder.priceFilter(searchParams.getPrices());
+      case "store" -> searchParams.getStores() == null ? null
+          : facetQueryBuilder.filter(facet, searchParams.getStores());
+      case "type" -> searchParams.getTypes() == null ? null
+          : facetQueryBuilder.filter(facet, searchParams.getTypes());
+      case "location" -> searchParams.getLocations() == null ? null
+          : facetQueryBuilder.filter(facet, searchParams.getLocations());
+      default -> throw new IllegalArgumentException("Unknown facet " + facet);
+    };
+  }
 
-    if (searchParams.getCategories() != null && !Objects.equals(filterToBeExcluded, "category")) {
-      filters.addAll(createCategoryFilters(searchParams.getCategories()));
+  private BoolQuery createFilters(DealSearchParams searchParams, Collection<String> facets) {
+    BoolQuery.Builder boolQuery = new BoolQuery.Builder();
+    for (String facet : facets) {
+      boolQuery.filter(createFacetFilter(searchParams, facet));
     }
+    return boolQuery.build();
+  }
 
-    if (searchParams.getPrices() != null && !Objects.equals(filterToBeExcluded, "price")) {
-      filters.addAll(createPriceFilters(searchParams.getPrices()));
+  /**
+   * Creates the search request of the given page of a search.
+   *
+   * @throws ResponseStatusException if the page is deeper than the max result window
+   */
+  SearchRequest.Builder createSearchRequest(DealSearchParams searchParams, Pageable pageable) {
+    if (pageable.getOffset() + pageable.getPageSize() > searchProperties.getMaxResultWindow()) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "The page is too deep! Use the cursor of the previous page to fetch the next one.");
     }
 
-    if (searchParams.getStores() != null && !Objects.equals(filterToBeExcluded, "store")) {
-      filters.addAll(createStoreFilters(searchParams.getStores()));
-    }
+    return createSearchRequest(searchParams)
+        .index(DEAL_INDEX)
+        .from((int) pageable.getOffset())
+        .size(pageable.getPageSize());
+  }
 
-    if (searchParams.getTypes() != null && !Objects.equals(filterToBeExcluded, "type")) {
-      filters.addAll(createTypeFilters(searchParams.getTypes()));
+  /**
+   * Creates the search request of the given search, without the index and the page.
+   *
+   * <p>The filters of the facets that are counted go to the {@code post_filter}, so that each of
+   * these facets can be counted without its own filter ("exclude-self"), the other filters go to
+   * the query. The {@code aggAllFilters} aggregation counts every requested facet with all
+   * filters, which is what the facets without a filter need, so the per-facet aggregations are only
+   * added for the requested facets that have a filter.
+   */
+  private SearchRequest.Builder createSearchRequest(DealSearchParams searchParams) {
+    var requestedFacets = requestedFacets(searchParams);
+    var filteredFacets =
+        FACETS.stream().filter(facet -> createFacetFilter(searchParams, facet) != null).toList();
+    var postFilterFacets = filteredFacets.stream().filter(requestedFacets::contains).toList();
+    var queryFacets =
+        filteredFacets.stream().filter(facet -> !postFilterFacets.contains(facet)).toList();
+
+    SearchRequest.Builder requestBuilder = new SearchRequest.Builder()
+        .query(q -> q.bool(createBoolQuery(searchParams, queryFacets)))
+        .sort(createSorts(searchParams));
+
+    if (!requestedFacets.isEmpty()) {
+      requestBuilder.aggregations("aggAllFilters", a -> a
+          .filter(f -> f.bool(createFilters(searchParams, postFilterFacets)))
+          .aggregations(facetQueryBuilder.facetsAggregations(requestedFacets, PRICE_RANGES)));
     }
 
-    if (searchParams.getLocations() != null && !Objects.equals(filterToBeExcluded, "location")) {
-      filters.addAll(createLocationFilters(searchParams.getLocations()));
+    for (String facet : postFilterFacets) {
+      var otherFacets = postFilterFacets.stream().filter(other -> !other.equals(facet)).toList();
+      var facetAggregations = facet.equals("price")
+          ? facetQueryBuilder.priceAggregations(PRICE_RANGES)
+          : facetQueryBuilder.facetAggregations(facet);
+      requestBuilder.aggregations("agg" + StringUtils.capitalize(facet), a -> a
+          .filter(f -> f.bool(createFilters(searchParams, otherFacets)))
+          .aggregations(facetAggregations));
     }
 
-    for (Query filter : filters) {
-      boolQuery.filter(filter);
+    if (!postFilterFacets.isEmpty()) {
+      requestBuilder.postFilter(pf -> pf.bool(createFilters(searchParams, postFilterFacets)));
     }
 
-    return boolQuery.build();
+    return requestBuilder;
   }
 
-  private Aggregation createAllFiltersSubAgg(String facetGroup) {
-    return Aggregation.of(a -> a
-        .nested(n -> n.path(facetGroup))
-        .aggregations(new HashMap<String, Aggregation>() {
-          { // Explicitly create map for aggregations
-            put("names", Aggregation.of(namesAgg -> namesAgg
-                .terms(t -> t.field(facetGroup + ".facetName"))
-                .aggregations(new HashMap<String, Aggregation>() {
-                  {
-                    put("values", Aggregation.of(valuesAgg -> valuesAgg
-                        .terms(t -> t.field(facetGroup + ".facetValue"))));
-                  }
-                })));
-          }
-        }));
+  private static List<String> requestedFacets(DealSearchParams searchParams) {
+    if (searchParams.getFacets() == null) {
+      return FACETS;
+    }
+    return FACETS.stream().filter(searchParams.getFacets()::contains).toList();
   }
 
-  private Aggregation createAllFiltersAgg(DealSearchParams searchParams) {
-    return Aggregation.of(a -> a
-        .filter(f -> f.bool(createFilters(searchParams, null)))
-        .aggregations(new HashMap<String, Aggregation>() {
-          {
-            put("stringFacets", createAllFiltersSubAgg("stringFacets"));
-            put("numberFacets", createAllFiltersSubAgg("numberFacets"));
-          }
-        }));
+  @Override
+  public DealSearchResponse searchDeals(DealSearchParams searchParams, Pageable pageable) {
+    return searchCache.get(searchParams, pageable, () -> search(
+        createSearchRequest(searchParams, pageable), searchParams, pageable.getPageSize()));
   }
 
-  private Aggregation createFilterAgg(String fieldName, String facetName) {
-    return Aggregation.of(a -> a
-        .filter(f -> f.match(m -> m.field(fieldName).query(facetName))));
+  @Override
+  public DealSearchResponse searchDeals(
+      DealSearchParams searchParams, DealSearchCursor after, int size) {
+    // The point in time is opened by the second page, the first page is usually the only one
+    var pitId = after.pitId() == null ? openPointInTime() : after.pitId();
+    var keepAlive = searchProperties.getCursorKeepAlive().toSeconds() + "s";
+    // The facets have been counted by the first page
+    var cursorParams = searchParams.toBuilder().facets(List.of()).build();
+    var request = createSearchRequest(cursorParams)
+        .pit(p -> p.id(pitId).keepAlive(t -> t.time(keepAlive)))
+        .searchAfter(after.sortValues())
+        .size(size);
+    var response = search(request, cursorParams, size);
+    if (response.getNext() == null) {
+      closePointInTime(pitId);
+    }
+    return response;
   }
 
-  private Aggregation createNestedSubAgg(String facetGroup, String facetName) {
-    return Aggregation.of(a -> a
-        .nested(n -> n.path(facetGroup))
-        .aggregations(new HashMap<String, Aggregation>() {
-          {
-            put("aggSpecial", Aggregation.of(specialAgg -> specialAgg
-                .filter(f -> f.term(t -> t.field(facetGroup + ".facetName").value(facetName)))
-                .aggregations(new HashMap<String, Aggregation>() {
-                  {
-                    put("names", Aggregation.of(namesAgg -> namesAgg
-                        .terms(t -> t.field(facetGroup + ".facetName"))
-                        .aggregations(new HashMap<String, Aggregation>() {
-                          {
-                            put("values", Aggregation.of(valuesAgg -> valuesAgg
-                                .terms(t -> t.field(facetGroup + ".facetValue"))));
-                          }
-                        })));
-                  }
-                })));
-          }
-        }));
-  }
+  private DealSearchResponse search(
+      SearchRequest.Builder requestBuilder, DealSearchParams searchParams, int size) {
+    // The nested facets repeat the deal fields, the hits don't need them
+    var request = requestBuilder
+        .source(s -> s.filter(f -> f.excludes("numberFacets", "stringFacets")))
+        .build();
+    SearchResponse<Source> response;
+    try {
+      response = esClient.search(request, Source.class);
+    } catch (ElasticsearchException e) {
+      if (e.status() == 404 && request.pit() != null) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The cursor has expired!");
+      }
+      throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
+    } catch (IOException e) {
+      throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
+    }
 
-  private Aggregation createCategoryAgg(DealSearchParams searchParams) {
-    return Aggregation.of(a -> a
-        .filter(f -> f.bool(createFilters(searchParams, "category")))
-        .aggregations(new HashMap<String, Aggregation>() {
-          {
-            put("stringFacets", createNestedSubAgg("stringFacets", "category"));
-          }
-        }));
-  }
+    var converter = elasticsearchOperations.getElasticsearchConverter();
+    var hits = new ArrayList<EsDeal>();
+    for (var hit : response.hits().hits()) {
+      var document = Document.from(hit.source());
+      document.setId(hit.id());
+      hits.add(converter.read(EsDeal.class, document));
+    }
 
-  private Aggregation createStoreAgg(DealSearchParams searchParams) {
-    return Aggregation.of(a -> a
-        .filter(f -> f.bool(createFilters(searchParams, "store")))
-        .aggregations(new HashMap<String, Aggregation>() {
-          {
-            put("stringFacets", createNestedSubAgg("stringFacets", "store"));
-          }
-        }));
-  }
+    var facets = new HashMap<String, List<FacetBucket>>();
+    var aggregations = response.aggregations();
+    for (String facet : requestedFacets(searchParams)) {
+      // The facets without their own aggregation are counted by aggAllFilters
+      var aggregate = aggregations.getOrDefault(
+          "agg" + StringUtils.capitalize(facet), aggregations.get("aggAllFilters"));
+      facets.put(facet, facetQueryBuilder.readBuckets(facet, aggregate.filter().aggregations()));
+    }
 
-  private Aggregation createTypeAgg(DealSearchParams searchParams) {
-    return Aggregation.of(a -> a
-        .filter(f -> f.bool(createFilters(searchParams, "type")))
-        .aggregations(new HashMap<String, Aggregation>() {
-          {
-            put("stringFacets", createNestedSubAgg("stringFacets", "type"));
-          }
-        }));
-  }
+    String next = null;
+    var responseHits = response.hits().hits();
+    if (responseHits.size() == size && size > 0) {
+      var last = responseHits.get(size - 1);
+      next = new DealSearchCursor(response.pitId(), last.sort()).encode();
+    }
 
-  private Aggregation createLocationAgg(DealSearchParams searchParams) {
-    return Aggregation.of(a -> a
-        .filter(f -> f.bool(createFilters(searchParams, "location")))
-        .aggregations(new HashMap<String, Aggregation>() {
-          {
-            put("stringFacets", createNestedSubAgg("stringFacets", "location"));
-          }
-        }));
+    var total = response.hits().total();
+    return DealSearchResponse.builder()
+        .total(total == null ? hits.size() : total.value())
+        .hits(hits)
+        .facets(facets)
+        .next(next)
+        .build();
   }
 
-  private Aggregation createPriceAgg(DealSearchParams searchParams) {
-    // Create the ranges using AggregationRange
-    List<AggregationRange> ranges = new ArrayList<>();
-    ranges.add(AggregationRange.of(r -> r.from(0.0).to(1.0)));
-    ranges.add(AggregationRange.of(r -> r.from(1.0).to(5.0)));
-    ranges.add(AggregationRange.of(r -> r.from(5.0).to(10.0)));
-    ranges.add(AggregationRange.of(r -> r.from(10.0).to(20.0)));
-    ranges.add(AggregationRange.of(r -> r.from(20.0).to(50.0)));
-    ranges.add(AggregationRange.of(r -> r.from(50.0).to(100.0)));
-    ranges.add(AggregationRange.of(r -> r.from(100.0).to(250.0)));
-    ranges.add(AggregationRange.of(r -> r.from(250.0).to(500.0)));
-    ranges.add(AggregationRange.of(r -> r.from(500.0).to(1000.0)));
-    ranges.add(AggregationRange.of(r -> r.from(1000.0).to(1500.0)));
-    ranges.add(AggregationRange.of(r -> r.from(1500.0).to(2000.0)));
-    ranges.add(AggregationRange.of(r -> r.from(2000.0)));
-
-    return Aggregation.of(a -> a
-        .filter(f -> f.bool(createFilters(searchParams, "price")))
-        .aggregations(new HashMap<String, Aggregation>() {
-          {
-            put("numberFacets", Aggregation.of(numberFacetsAgg -> numberFacetsAgg
-                .nested(n -> n.path("numberFacets"))
-                .aggregations(new HashMap<String, Aggregation>() {
-                  {
-                    put("aggSpecial", Aggregation.of(specialAgg -> specialAgg
-                        .filter(f -> f.term(t -> t.field("numberFacets.facetName").value("price")))
-                        .aggregations(new HashMap<String, Aggregation>() {
-                          {
-                            put("names", Aggregation.of(namesAgg -> namesAgg
-                                .terms(t -> t.field("numberFacets.facetName"))
-                                .aggregations(new HashMap<String, Aggregation>() {
-                                  {
-                                    put("values", Aggregation.of(valuesAgg -> valuesAgg
-                                        .range(r -> r
-                                            .field("numberFacets.facetValue")
-                                            .ranges(ranges))));
-                                  }
-                                })));
-                          }
-                        })));
-                  }
-                })));
-          }
-        }));
+  private String openPointInTime() {
+    try {
+      var keepAlive = searchProperties.getCursorKeepAlive().toSeconds() + "s";
+      return esClient.openPointInTime(p -> p
+          .index(DEAL_INDEX)
+          .keepAlive(t -> t.time(keepAlive))).id();
+    } catch (IOException | ElasticsearchException e) {
+      throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
+    }
   }
 
-  private List<Aggregation> createAggregations(DealSearchParams searchParams) {
-    List<Aggregation> aggregations = new ArrayList<>();
-    aggregations.add(createAllFiltersAgg(searchParams));
-    aggregations.add(createCategoryAgg(searchParams));
-    aggregations.add(createPriceAgg(searchParams));
-    aggregations.add(createStoreAgg(searchParams));
-    aggregations.add(createTypeAgg(searchParams));
-    aggregations.add(createLocationAgg(searchParams));
-    return aggregations;
+  private void closePointInTime(String pitId) {
+    try {
+      esClient.closePointInTime(c -> c.id(pitId));
+    } catch (IOException | ElasticsearchException e) {
+      // It expires with its keep alive
+      log.warn("Failed to close the point in time of a search", e);
+    }
   }
 
   @Override
-  public JsonNode searchDeals(DealSearchParams searchParams, Pageable pageable) {
+  public void searchDealsRaw(
+      DealSearchParams searchParams, Pageable pageable, OutputStream outputStream) {
+    var body = JsonpUtils.toJsonString(
+        createSearchRequest(searchParams, pageable).build(), esClient._transport().jsonpMapper());
+    var request = new Request("POST", "/" + DEAL_INDEX + "/_search");
+    // Prefixes the aggregation names with their types, as in the responses of the Java client
+    request.addParameter("typed_keys", "true");
+    request.setJsonEntity(body);
     try {
-      // Build the search request using the new API
-      SearchRequest.Builder requestBuilder = new SearchRequest.Builder()
-          .index(DEAL_INDEX)
-          .from(pageable.getPageNumber())
-          .size(pageable.getPageSize());
-
-      // Add sort if specified
-      if (searchParams.getSortBy() != null) {
-        SortOrder order = searchParams.getOrder().equals("asc") ? SortOrder.Asc : SortOrder.Desc;
-        if (searchParams.getSortBy().equals("createdAt")) {
-          requestBuilder.sort(createCreatedAtSort(order));
-        } else {
-          requestBuilder.sort(createPriceSort(order));
-        }
-      }
-
-      // Add query if specified
-      if (!ObjectUtils.isEmpty(searchParams.getQuery())) {
-        requestBuilder.query(q -> q.bool(createBoolQuery(searchParams.getHideExpired(), searchParams.getQuery())));
-      }
-
-      // Add aggregations
-      Map<String, Aggregation> aggsMap = new HashMap<>();
-      int i = 0;
-      for (Aggregation agg : createAggregations(searchParams)) {
-        // Use meaningful names for the aggregations
-        String name;
-        switch (i) {
-          case 0:
-            name = "aggAllFilters";
-            break;
-          case 1:
-            name = "aggCategory";
-            break;
-          case 2:
-            name = "aggPrice";
-            break;
-          case 3:
-            name = "aggStore";
-            break;
-          case 4:
-            name = "aggType";
-            break;
-          case 5:
-            name = "aggLocation";
-            break;
-          default:
-            name = "agg" + i;
-        }
-        aggsMap.put(name, agg);
-        i++;
-      }
-      requestBuilder.aggregations(aggsMap);
-
-      // Add post filter
-      requestBuilder.postFilter(pf -> pf.bool(createFilters(searchParams, null)));
-
-      SearchResponse<Object> response = esClient.search(requestBuilder.build(), Object.class);
-      return serializeResponseToJsonNode(response);
+      var response = restClient.performRequest(request);
+      response.getEntity().writeTo(outputStream);
     } catch (IOException e) {
       throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
     }
@@ -499,15 +378,10 @@ public class EsDealServiceImpl implements EsDealService {
     return repository.save(esDeal);
   }
 
-  private JsonNode serializeResponseToJsonNode(SearchResponse<Object> response) {
-    StringWriter writer = new StringWriter();
-    try (JsonGenerator generator = esClient._transport().jsonpMapper().jsonProvider().createGenerator(writer)) {
-      response.serialize(generator, esClient._transport().jsonpMapper());
-    }
-    try {
-      return objectMapper.readTree(writer.toString());
-    } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
-      throw new RuntimeException("Error while serializing actual response", e);
-    }
+  // The _source of a hit, read by Spring Data Elasticsearch's converter rather than the client's
+  // JSON mapper, which doesn't know the field mappings of EsDeal
+  static class Source extends HashMap<String, Object> {
+
+    private static final long serialVersionUID = 1L;
   }
 }
@@ -0,0 +1,176 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import co.elastic.clients.json.JsonData;
+import com.halildurmus.hotdeals.deal.Deal;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.stereotype.Component;
+
+/**
+ * Indexes and deletes deals through the {@code deal} alias in a single bulk request.
+ *
+ * <p>A deal whose changed fields are known is sent as a partial {@code _update} of these fields
+ * only, with {@code detect_noop}: Elasticsearch skips the write if the fields already have the
+ * sent values, e.g. when a deal that is already active is approved again.
+ */
+@Component
+public class EsDealWriter {
+
+  @Autowired
+  private ElasticsearchOperations elasticsearchOperations;
+
+  @Autowired
+  private ElasticsearchClient esClient;
+
+  @Autowired
+  private DealSearchProperties searchProperties;
+
+  @Autowired
+  private DealSearchCache searchCache;
+
+  /**
+   * Converts the given deal to its indexed representation. The nested facets are left out in the
+   * {@link DealSearchProperties.FacetModel#FLAT FLAT} facet model, nothing queries them.
+   *
+   * @param deal the deal
+   * @return the {@link EsDeal}
+   * @throws RuntimeException if the deal can't be converted, e.g. because it has no store
+   */
+  public EsDeal toEsDeal(Deal deal) {
+    var esDeal = new EsDeal(deal);
+    if (searchProperties.getFacetModel() == DealSearchProperties.FacetModel.FLAT) {
+      esDeal.setNumberFacets(null);
+      esDeal.setStringFacets(null);
+    }
+    return esDeal;
+  }
+
+  /**
+   * Converts the given deal to the document that is indexed.
+   *
+   * @param deal the deal
+   * @return the document, keyed by the {@link EsDeal} field names
+   * @throws RuntimeException if the deal can't be converted, e.g. because it has no store
+   */
+  public Map<String, Object> toDocument(Deal deal) {
+    return elasticsearchOperations.getElasticsearchConverter().mapObject(toEsDeal(deal));
+  }
+
+  /**
+   * Returns the fields that differ between two documents returned by {@link #toDocument(Deal)}.
+   *
+   * @param before the document before the change
+   * @param after the document after the change
+   * @return the changed field names
+   */
+  public static Set<String> changedFields(Map<String, Object> before, Map<String, Object> after) {
+    var fields = new HashSet<String>();
+    var names = new HashSet<>(before.keySet());
+    names.addAll(after.keySet());
+    for (var name : names) {
+      if (!Objects.equals(before.get(name), after.get(name))) {
+        fields.add(name);
+      }
+    }
+    return fields;
+  }
+
+  /**
+   * Indexes the given deals in full and deletes the given deal IDs.
+   *
+   * @see #write(Collection, Map, Collection)
+   */
+  public Map<String, Failure> write(Collection<Deal> deals, Collection<String> deletedIds)
+      throws IOException {
+    return write(deals, Map.of(), deletedIds);
+  }
+
+  /**
+   * Indexes the given deals and deletes the given deal IDs.
+   *
+   * @param deals the deals to index
+   * @param changedFields the changed fields by deal ID, the deals without an entry are indexed in
+   *     full
+   * @param deletedIds the IDs of the deals to delete
+   * @return the failed deals by ID, deleting a deal that is not indexed is not a failure
+   * @throws IOException if the bulk request fails as a whole
+   */
+  public Map<String, Failure> write(
+      Collection<Deal> deals, Map<String, Set<String>> changedFields, Collection<String> deletedIds)
+      throws IOException {
+    var failures = new HashMap<String, Failure>();
+    var operations = new ArrayList<BulkOperation>();
+    var dealsById = new HashMap<String, Deal>();
+    for (var deal : deals) {
+      try {
+        var document = toDocument(deal);
+        var fields = changedFields.get(deal.getId());
+        operations.add(
+            fields == null
+                ? index(deal.getId(), document)
+                : update(deal.getId(), document, fields));
+        dealsById.put(deal.getId(), deal);
+      } catch (RuntimeException e) {
+        failures.put(
+            deal.getId(), new Failure("Failed to convert the deal: " + e.getMessage(), false));
+      }
+    }
+    deletedIds.forEach(id -> operations.add(BulkOperation.of(o -> o.delete(d -> d.id(id)))));
+    if (operations.isEmpty()) {
+      return failures;
+    }
+
+    var missingDeals = new ArrayList<Deal>();
+    var response = esClient.bulk(b -> b.index(EsDealReindexer.DEAL_ALIAS).operations(operations));
+    searchCache.invalidate();
+    for (var item : response.items()) {
+      var notFound = item.status() == 404;
+      if (item.error() == null || (notFound && item.operationType() == OperationType.Delete)) {
+        continue;
+      }
+      if (notFound && item.operationType() == OperationType.Update) {
+        // The deal is not indexed yet, e.g. because the index has been rebuilt meanwhile
+        missingDeals.add(dealsById.get(item.id()));
+      } else {
+        // Rejections and server errors may succeed on a retry, the other errors won't
+        var retryable = item.status() == 429 || item.status() >= 500;
+        failures.put(item.id(), new Failure(item.error().reason(), retryable));
+      }
+    }
+    if (!missingDeals.isEmpty()) {
+      failures.putAll(write(missingDeals, List.of()));
+    }
+    return failures;
+  }
+
+  private static BulkOperation index(String id, Map<String, Object> document) {
+    var source = JsonData.fromJson(Document.from(document).toJson());
+    return BulkOperation.of(o -> o.index(i -> i.id(id).document(source)));
+  }
+
+  private static BulkOperation update(String id, Map<String, Object> document, Set<String> fields) {
+    var partial = new HashMap<String, Object>();
+    // The fields that became null are absent from the document and must be sent as null
+    fields.forEach(field -> partial.put(field, document.get(field)));
+    var source = JsonData.fromJson(Document.from(partial).toJson());
+    return BulkOperation.of(
+        o ->
+            o.<JsonData, JsonData>update(
+                u -> u.id(id).action(a -> a.doc(source).detectNoop(true))));
+  }
+
+  public record Failure(String reason, boolean retryable) {}
+}
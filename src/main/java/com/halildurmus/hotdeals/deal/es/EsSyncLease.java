@@ -0,0 +1,57 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import java.time.Instant;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/**
+ * A lease that lets a single node ship the deal changes to Elasticsearch, so that two nodes can't
+ * write different states of a deal concurrently. The lease expires unless its owner renews it.
+ */
+@Component
+public class EsSyncLease {
+
+  static final String COLLECTION = "es_sync_state";
+
+  private static final String LEASE_ID = "lease";
+
+  private final String instanceId = UUID.randomUUID().toString();
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @Autowired
+  private EsSyncProperties properties;
+
+  /**
+   * Acquires the lease, or renews it if this node holds it already.
+   *
+   * @return whether this node holds the lease
+   */
+  public boolean acquire() {
+    var now = Instant.now();
+    var query =
+        query(
+            where("_id")
+                .is(LEASE_ID)
+                .orOperator(where("owner").is(instanceId), where("expiresAt").lt(now)));
+    var update =
+        new Update()
+            .set("owner", instanceId)
+            .set("expiresAt", now.plus(properties.getLeaseDuration()));
+    try {
+      mongoTemplate.upsert(query, update, COLLECTION);
+      return true;
+    } catch (DuplicateKeyException e) {
+      // Another node holds the lease, the upsert tried to insert a second lease
+      return false;
+    }
+  }
+}
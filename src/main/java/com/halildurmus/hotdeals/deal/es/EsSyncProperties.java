@@ -0,0 +1,40 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties("deals.es-sync")
+@Data
+public class EsSyncProperties {
+
+  // How the deal changes reach Elasticsearch
+  private Mode mode = Mode.OUTBOX;
+
+  // How long a node keeps syncing after it stops renewing its lease, e.g. because it crashed
+  private Duration leaseDuration = Duration.ofSeconds(30);
+
+  private ChangeStream changeStream = new ChangeStream();
+
+  public enum Mode {
+    // The deal writes of DealServiceImpl record an outbox event, see DealOutboxRelay
+    OUTBOX,
+    // Every write to the deals collection is picked up, see DealChangeStreamIndexer
+    CHANGE_STREAM
+  }
+
+  @Data
+  public static class ChangeStream {
+
+    // The maximum number of deals shipped to Elasticsearch in a single bulk request
+    private int batchSize = 500;
+
+    // How long a change may wait for the batch to fill up
+    private Duration maxWait = Duration.ofSeconds(1);
+
+    // The delay before reading the change stream again after a failure
+    private Duration retryBackoff = Duration.ofSeconds(5);
+  }
+}
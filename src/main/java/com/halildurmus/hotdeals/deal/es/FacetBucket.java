@@ -0,0 +1,56 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetBucket {
+
+  @Schema(description = "Facet value, or the price range", example = "/computers")
+  private String value;
+
+  @Schema(description = "Lower bound of the price range, inclusive", example = "20.0")
+  private Double from;
+
+  @Schema(description = "Upper bound of the price range, exclusive", example = "50.0")
+  private Double to;
+
+  @Schema(description = "Number of deals", example = "42")
+  private long count;
+
+  /**
+   * Reads the buckets of a terms or range aggregation.
+   *
+   * @param aggregate the aggregation result
+   * @return the buckets, empty if the aggregation has another type
+   */
+  static List<FacetBucket> listOf(Aggregate aggregate) {
+    var buckets = new ArrayList<FacetBucket>();
+    if (aggregate == null) {
+      return buckets;
+    }
+    if (aggregate.isSterms()) {
+      aggregate.sterms().buckets().array().forEach(bucket -> buckets.add(FacetBucket.builder()
+          .value(bucket.key().stringValue())
+          .count(bucket.docCount())
+          .build()));
+    } else if (aggregate.isRange()) {
+      aggregate.range().buckets().array().forEach(bucket -> buckets.add(FacetBucket.builder()
+          .value(bucket.key())
+          .from(bucket.from())
+          .to(bucket.to())
+          .count(bucket.docCount())
+          .build()));
+    }
+    return buckets;
+  }
+}
@@ -0,0 +1,74 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import co.elastic.clients.elasticsearch._types.SortOptions;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.AggregationRange;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import com.halildurmus.hotdeals.deal.PriceRange;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the facet filters, sorts and aggregations of the deal search for one of the {@link
+ * DealSearchProperties.FacetModel facet models}.
+ */
+public interface FacetQueryBuilder {
+
+  /**
+   * Creates a filter matching the deals with any of the given values of a string facet.
+   *
+   * @param facet the facet name, e.g. {@code category}
+   * @param values the facet values
+   * @return the filter
+   */
+  Query filter(String facet, List<String> values);
+
+  /**
+   * Creates a filter matching the deals with a price in any of the given ranges.
+   *
+   * @param ranges the price ranges, the upper bounds are exclusive
+   * @return the filter
+   */
+  Query priceFilter(List<PriceRange> ranges);
+
+  SortOptions priceSort(SortOrder order);
+
+  /**
+   * Creates the aggregations that count the deals per value of a string facet.
+   *
+   * @param facet the facet name
+   * @return the aggregations by name
+   */
+  Map<String, Aggregation> facetAggregations(String facet);
+
+  /**
+   * Creates the aggregations that count the deals per price range.
+   *
+   * @param ranges the price ranges
+   * @return the aggregations by name
+   */
+  Map<String, Aggregation> priceAggregations(List<AggregationRange> ranges);
+
+  /**
+   * Creates the aggregations that count the deals per value of the given facets.
+   *
+   * @param facets the facet names, including {@code price}
+   * @param priceRanges the price ranges
+   * @return the aggregations by name
+   */
+  Map<String, Aggregation> facetsAggregations(
+      Collection<String> facets, List<AggregationRange> priceRanges);
+
+  /**
+   * Reads the counts of a facet from the aggregations created by {@link #facetAggregations},
+   * {@link #priceAggregations} or {@link #facetsAggregations}.
+   *
+   * @param facet the facet name, including {@code price}
+   * @param aggregations the results of the aggregations
+   * @return the buckets, empty if the facet is not counted
+   */
+  List<FacetBucket> readBuckets(String facet, Map<String, Aggregate> aggregations);
+}
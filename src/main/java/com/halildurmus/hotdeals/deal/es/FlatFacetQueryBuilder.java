@@ -0,0 +1,89 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOptions;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.AggregationRange;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.json.JsonData;
+import com.halildurmus.hotdeals.deal.PriceRange;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Queries the facets stored as the plain {@code category}, {@code store}, {@code type}, {@code
+ * location} and {@code price} fields. The filters are single {@code terms} and {@code range}
+ * queries and the aggregations read the doc values of the fields directly, without joining nested
+ * documents.
+ *
+ * <p>The aggregations are named after the facets, e.g. {@code aggCategory.category.buckets}.
+ */
+@Component
+@ConditionalOnProperty(name = "deals.search.facet-model", havingValue = "flat")
+public class FlatFacetQueryBuilder implements FacetQueryBuilder {
+
+  private static final String PRICE_FIELD = "price";
+
+  @Override
+  public Query filter(String facet, List<String> values) {
+    var fieldValues = values.stream().map(FieldValue::of).toList();
+    return Query.of(q -> q.terms(t -> t.field(facet).terms(v -> v.value(fieldValues))));
+  }
+
+  @Override
+  public Query priceFilter(List<PriceRange> ranges) {
+    var shouldQueries =
+        ranges.stream()
+            .map(
+                range ->
+                    Query.of(
+                        q ->
+                            q.range(
+                                r -> {
+                                  r.field(PRICE_FIELD).gte(JsonData.of(range.getFrom()));
+                                  if (range.getTo() != null) {
+                                    r.lt(JsonData.of(range.getTo()));
+                                  }
+                                  return r;
+                                })))
+            .toList();
+    return Query.of(q -> q.bool(b -> b.should(shouldQueries)));
+  }
+
+  @Override
+  public SortOptions priceSort(SortOrder order) {
+    return SortOptions.of(s -> s.field(f -> f.field(PRICE_FIELD).order(order)));
+  }
+
+  @Override
+  public Map<String, Aggregation> facetAggregations(String facet) {
+    return Map.of(facet, Aggregation.of(a -> a.terms(t -> t.field(facet))));
+  }
+
+  @Override
+  public Map<String, Aggregation> priceAggregations(List<AggregationRange> ranges) {
+    return Map.of(PRICE_FIELD, Aggregation.of(a -> a.range(r -> r.field(PRICE_FIELD).ranges(ranges))));
+  }
+
+  @Override
+  public Map<String, Aggregation> facetsAggregations(
+      Collection<String> facets, List<AggregationRange> priceRanges) {
+    var aggregations = new HashMap<String, Aggregation>();
+    for (var facet : facets) {
+      aggregations.putAll(
+          facet.equals(PRICE_FIELD) ? priceAggregations(priceRanges) : facetAggregations(facet));
+    }
+    return aggregations;
+  }
+
+  @Override
+  public List<FacetBucket> readBuckets(String facet, Map<String, Aggregate> aggregations) {
+    return FacetBucket.listOf(aggregations.get(facet));
+  }
+}
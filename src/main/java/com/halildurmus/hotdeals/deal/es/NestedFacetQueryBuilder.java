@@ -0,0 +1,166 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import co.elastic.clients.elasticsearch._types.SortOptions;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.AggregationRange;
+import co.elastic.clients.elasticsearch._types.query_dsl.ChildScoreMode;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch._types.query_dsl.RangeQuery;
+import co.elastic.clients.json.JsonData;
+import com.halildurmus.hotdeals.deal.PriceRange;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Queries the facets stored as {@code numberFacets} and {@code stringFacets} nested documents,
+ * which are {@code facetName}/{@code facetValue} pairs.
+ */
+@Component
+@ConditionalOnProperty(
+    name = "deals.search.facet-model",
+    havingValue = "nested",
+    matchIfMissing = true)
+public class NestedFacetQueryBuilder implements FacetQueryBuilder {
+
+  private static final String STRING_FACETS_PATH = "stringFacets";
+
+  private static final String NUMBER_FACETS_PATH = "numberFacets";
+
+  @Override
+  public Query filter(String facet, List<String> values) {
+    if (values.size() == 1) {
+      return stringFacetFilter(facet, values.getFirst());
+    }
+    var shouldQueries = values.stream().map(value -> stringFacetFilter(facet, value)).toList();
+    return Query.of(q -> q.bool(b -> b.should(shouldQueries)));
+  }
+
+  @Override
+  public Query priceFilter(List<PriceRange> ranges) {
+    var shouldQueries =
+        ranges.stream().map(range -> numberFacetFilter("price", range.getFrom(), range.getTo()))
+            .toList();
+    return Query.of(q -> q.bool(b -> b.should(shouldQueries)));
+  }
+
+  @Override
+  public SortOptions priceSort(SortOrder order) {
+    return SortOptions.of(s -> s
+        .field(f -> f
+            .field(NUMBER_FACETS_PATH + ".facetValue")
+            .order(order)
+            .nested(n -> n
+                .path(NUMBER_FACETS_PATH)
+                .filter(fi -> fi
+                    .term(t -> t
+                        .field(NUMBER_FACETS_PATH + ".facetName")
+                        .value("price"))))));
+  }
+
+  @Override
+  public Map<String, Aggregation> facetAggregations(String facet) {
+    var values = Aggregation.of(a -> a.terms(t -> t.field(STRING_FACETS_PATH + ".facetValue")));
+    return Map.of(STRING_FACETS_PATH, facetNameAggregation(STRING_FACETS_PATH, facet, values));
+  }
+
+  @Override
+  public Map<String, Aggregation> priceAggregations(List<AggregationRange> ranges) {
+    var values =
+        Aggregation.of(a -> a.range(r -> r.field(NUMBER_FACETS_PATH + ".facetValue").ranges(ranges)));
+    return Map.of(NUMBER_FACETS_PATH, facetNameAggregation(NUMBER_FACETS_PATH, "price", values));
+  }
+
+  @Override
+  public Map<String, Aggregation> facetsAggregations(
+      Collection<String> facets, List<AggregationRange> priceRanges) {
+    // All the facets of a group are counted by the same aggregation
+    var aggregations = new HashMap<String, Aggregation>();
+    if (facets.stream().anyMatch(facet -> !facet.equals("price"))) {
+      aggregations.put(STRING_FACETS_PATH, allFacetNamesAggregation(STRING_FACETS_PATH));
+    }
+    if (facets.contains("price")) {
+      aggregations.putAll(priceAggregations(priceRanges));
+    }
+    return aggregations;
+  }
+
+  @Override
+  public List<FacetBucket> readBuckets(String facet, Map<String, Aggregate> aggregations) {
+    var group = aggregations.get(facet.equals("price") ? NUMBER_FACETS_PATH : STRING_FACETS_PATH);
+    if (group == null) {
+      return new ArrayList<>();
+    }
+    // The facet names are either right below the nested aggregation or below aggSpecial
+    var groupAggregations = group.nested().aggregations();
+    var special = groupAggregations.get("aggSpecial");
+    var names =
+        (special == null ? groupAggregations : special.filter().aggregations()).get("names");
+    return names.sterms().buckets().array().stream()
+        .filter(bucket -> bucket.key().stringValue().equals(facet))
+        .findFirst()
+        .map(bucket -> FacetBucket.listOf(bucket.aggregations().get("values")))
+        .orElseGet(ArrayList::new);
+  }
+
+  private static Query stringFacetFilter(String facetName, String facetValue) {
+    return Query.of(q -> q
+        .nested(n -> n
+            .path(STRING_FACETS_PATH)
+            .scoreMode(ChildScoreMode.Avg)
+            .query(nq -> nq
+                .bool(b -> b
+                    .must(List.of(
+                        Query.of(q1 -> q1.term(t -> t.field(STRING_FACETS_PATH + ".facetName").value(facetName))),
+                        Query.of(q2 -> q2.term(t -> t.field(STRING_FACETS_PATH + ".facetValue").value(facetValue)))))))));
+  }
+
+  private static Query numberFacetFilter(String facetName, Double from, Double to) {
+    List<Query> queries = new ArrayList<>();
+    queries.add(Query.of(q -> q.term(t -> t.field(NUMBER_FACETS_PATH + ".facetName").value(facetName))));
+
+    RangeQuery.Builder rangeBuilder = new RangeQuery.Builder()
+        .field(NUMBER_FACETS_PATH + ".facetValue")
+        .gte(JsonData.of(from));
+    if (to != null) {
+      rangeBuilder.lt(JsonData.of(to));
+    }
+    queries.add(Query.of(q -> q.range(rangeBuilder.build())));
+
+    return Query.of(q -> q
+        .nested(n -> n
+            .path(NUMBER_FACETS_PATH)
+            .scoreMode(ChildScoreMode.Avg)
+            .query(nq -> nq.bool(b -> b.must(queries)))));
+  }
+
+  // nested -> aggSpecial (the facet name) -> names -> values
+  private static Aggregation facetNameAggregation(
+      String path, String facetName, Aggregation values) {
+    var names = Aggregation.of(a -> a
+        .terms(t -> t.field(path + ".facetName"))
+        .aggregations("values", values));
+    var special = Aggregation.of(a -> a
+        .filter(f -> f.term(t -> t.field(path + ".facetName").value(facetName)))
+        .aggregations("names", names));
+    return Aggregation.of(a -> a
+        .nested(n -> n.path(path))
+        .aggregations("aggSpecial", special));
+  }
+
+  // nested -> names -> values
+  private static Aggregation allFacetNamesAggregation(String path) {
+    var names = Aggregation.of(a -> a
+        .terms(t -> t.field(path + ".facetName"))
+        .aggregations("values", v -> v.terms(t -> t.field(path + ".facetValue"))));
+    return Aggregation.of(a -> a
+        .nested(n -> n.path(path))
+        .aggregations("names", names));
+  }
+}
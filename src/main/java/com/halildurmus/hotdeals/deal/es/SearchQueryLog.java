@@ -0,0 +1,277 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.limit;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.sort;
+
+import com.halildurmus.hotdeals.deal.DealSearchParams;
+import com.halildurmus.hotdeals.deal.es.SearchQueryStats.QueryCount;
+import com.halildurmus.hotdeals.deal.es.SearchQueryStats.ShapeLatency;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AccumulatorOperators.Percentile;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Records the deal searches in the {@code search_queries} collection, so that the popular, the
+ * fruitless and the slow searches can be told apart.
+ *
+ * <p>Recording a search only offers it to a bounded in-memory buffer, which a virtual thread
+ * drains into MongoDB in batches. The log is lossy on purpose: the searches are dropped when the
+ * buffer is full or a batch can't be written, and counted in {@code deals.search.log.dropped}.
+ *
+ * <p>The latency of the searches is also timed in {@code deals.search.latency} by their kind,
+ * {@code query} or {@code browse}, and their mode. The shapes have too many combinations for a
+ * metric tag, their latency is aggregated from the collection by {@link #getStats}.
+ */
+@Slf4j
+@Component
+public class SearchQueryLog {
+
+  private static final Duration STOP_TIMEOUT = Duration.ofSeconds(5);
+
+  private BlockingQueue<SearchQueryRecord> buffer;
+
+  private Counter dropped;
+
+  private Thread drainer;
+
+  private volatile boolean running;
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private DealSearchProperties searchProperties;
+
+  @PostConstruct
+  void start() {
+    var properties = searchProperties.getQueryLog();
+    buffer = new ArrayBlockingQueue<>(properties.getCapacity());
+    dropped = Counter.builder("deals.search.log.dropped")
+        .description("The deal searches dropped from the query log")
+        .register(meterRegistry);
+    Gauge.builder("deals.search.log.buffered", buffer, BlockingQueue::size)
+        .description("The deal searches waiting to be written to the query log")
+        .register(meterRegistry);
+    if (properties.isEnabled()) {
+      running = true;
+      drainer = Thread.ofVirtual().name("search-query-log").start(this::drain);
+    }
+  }
+
+  @PreDestroy
+  void stop() throws InterruptedException {
+    if (drainer == null) {
+      return;
+    }
+    running = false;
+    drainer.interrupt();
+    drainer.join(STOP_TIMEOUT);
+  }
+
+  /**
+   * Records a search. Never blocks, the search is dropped if the buffer is full.
+   *
+   * @param searchParams the search parameters
+   * @param mode how the page was requested: {@code page}, {@code cursor} or {@code raw}
+   * @param total the number of matching deals, null if unknown
+   * @param latencyNanos how long the search took
+   */
+  public void record(DealSearchParams searchParams, String mode, Long total, long latencyNanos) {
+    if (!running) {
+      return;
+    }
+    var shape = createShape(searchParams, mode);
+    Timer.builder("deals.search.latency")
+        .description("The latency of the deal searches")
+        .tag("kind", StringUtils.hasText(searchParams.getQuery()) ? "query" : "browse")
+        .tag("mode", mode)
+        .publishPercentiles(0.5, 0.95, 0.99)
+        .register(meterRegistry)
+        .record(latencyNanos, TimeUnit.NANOSECONDS);
+
+    var query = searchParams.getQuery();
+    var searchQuery = SearchQueryRecord.builder()
+        .query(StringUtils.hasText(query)
+            ? query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT) : null)
+        .shape(shape)
+        .total(total)
+        .latencyMillis(latencyNanos / 1_000_000.0)
+        .createdAt(Instant.now())
+        .build();
+    if (!buffer.offer(searchQuery)) {
+      dropped.increment();
+    }
+  }
+
+  /**
+   * Describes the parameters used by a search without their values, e.g. {@code query
+   * category,price sort=price facets=all page}.
+   *
+   * @param searchParams the search parameters
+   * @param mode how the page was requested
+   * @return the shape
+   */
+  static String createShape(DealSearchParams searchParams, String mode) {
+    var parts = new ArrayList<String>();
+    parts.add(StringUtils.hasText(searchParams.getQuery()) ? "query" : "browse");
+    var filters = new ArrayList<String>();
+    addFilter(filters, "category", searchParams.getCategories());
+    addFilter(filters, "location", searchParams.getLocations());
+    addFilter(filters, "price", searchParams.getPrices());
+    addFilter(filters, "store", searchParams.getStores());
+    addFilter(filters, "type", searchParams.getTypes());
+    if (Boolean.TRUE.equals(searchParams.getHideExpired())) {
+      filters.add("hideExpired");
+    }
+    if (!filters.isEmpty()) {
+      parts.add(String.join(",", filters));
+    }
+    parts.add("sort=" + (searchParams.getSortBy() == null ? "default" : searchParams.getSortBy()));
+    var facets = searchParams.getFacets();
+    parts.add("facets=" + (facets == null ? "all"
+        : facets.isEmpty() ? "none" : String.join(",", facets.stream().sorted().distinct().toList())));
+    parts.add(mode);
+    return String.join(" ", parts);
+  }
+
+  private static void addFilter(List<String> filters, String name, List<?> values) {
+    if (values != null && !values.isEmpty()) {
+      filters.add(name);
+    }
+  }
+
+  private void drain() {
+    var properties = searchProperties.getQueryLog();
+    var batch = new ArrayList<SearchQueryRecord>(properties.getBatchSize());
+    while (running || !buffer.isEmpty()) {
+      try {
+        var first = buffer.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        // Waits for a full batch, but no longer than the flush interval
+        var deadline = System.nanoTime() + properties.getFlushInterval().toNanos();
+        while (batch.size() < properties.getBatchSize()) {
+          buffer.drainTo(batch, properties.getBatchSize() - batch.size());
+          var remaining = deadline - System.nanoTime();
+          if (batch.size() == properties.getBatchSize() || remaining <= 0) {
+            break;
+          }
+          var next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+          if (next != null) {
+            batch.add(next);
+          }
+        }
+      } catch (InterruptedException e) {
+        // Stopping, the buffered searches are written below
+        buffer.drainTo(batch, properties.getBatchSize() - batch.size());
+      }
+      write(batch);
+    }
+  }
+
+  private void write(List<SearchQueryRecord> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    try {
+      mongoTemplate.insert(batch, SearchQueryRecord.class);
+    } catch (RuntimeException e) {
+      log.warn("Failed to write {} searches to the query log, dropping them", batch.size(), e);
+      dropped.increment(batch.size());
+    } finally {
+      batch.clear();
+    }
+  }
+
+  /**
+   * Aggregates the searches recorded within the given period.
+   *
+   * @param period how far back the searches are aggregated
+   * @param limit the maximum number of queries and shapes returned
+   * @return the statistics
+   */
+  public SearchQueryStats getStats(Duration period, int limit) {
+    var recent = match(Criteria.where("createdAt").gte(Instant.now().minus(period)));
+    var withQuery = match(Criteria.where("query").ne(null));
+
+    var topQueries = countQueries(
+        newAggregation(recent, withQuery, group("query").count().as("count"),
+            sort(Direction.DESC, "count"), limit(limit)));
+    var zeroResultQueries = countQueries(
+        newAggregation(recent, withQuery, match(Criteria.where("total").is(0L)),
+            group("query").count().as("count"), sort(Direction.DESC, "count"), limit(limit)));
+
+    var shapes = mongoTemplate.aggregate(
+            newAggregation(recent,
+                group("shape").count().as("count")
+                    .and("latency", Percentile.percentileOf("latencyMillis").percentages(0.5, 0.95, 0.99)),
+                sort(Direction.DESC, "count"), limit(limit)),
+            SearchQueryRecord.class, Document.class)
+        .getMappedResults().stream()
+        .map(document -> {
+          var latency = document.getList("latency", Number.class);
+          return new ShapeLatency(document.getString("_id"), toLong(document.get("count")),
+              latency.get(0).doubleValue(), latency.get(1).doubleValue(),
+              latency.get(2).doubleValue());
+        })
+        .toList();
+
+    return new SearchQueryStats(topQueries, zeroResultQueries, shapes);
+  }
+
+  /**
+   * Finds the most searched queries that matched at least one deal.
+   *
+   * @param period how far back the searches are counted
+   * @param limit the maximum number of queries
+   * @return the queries, the most searched first
+   */
+  public List<QueryCount> getPopularQueries(Duration period, int limit) {
+    return countQueries(
+        newAggregation(
+            match(Criteria.where("createdAt").gte(Instant.now().minus(period))
+                .and("query").ne(null)
+                .and("total").gt(0L)),
+            group("query").count().as("count"), sort(Direction.DESC, "count"), limit(limit)));
+  }
+
+  private List<QueryCount> countQueries(Aggregation aggregation) {
+    return mongoTemplate.aggregate(aggregation, SearchQueryRecord.class, Document.class)
+        .getMappedResults().stream()
+        .map(document -> new QueryCount(document.getString("_id"), toLong(document.get("count"))))
+        .toList();
+  }
+
+  private static long toLong(Object count) {
+    return ((Number) count).longValue();
+  }
+}
@@ -0,0 +1,40 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A deal search recorded by {@link SearchQueryLog}. The records expire after 30 days.
+ */
+@Document(collection = "search_queries")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchQueryRecord {
+
+  @Id
+  private ObjectId id;
+
+  // The normalized search query, null if the deals were only filtered
+  private String query;
+
+  // The parameters used by the search without their values, e.g.
+  // "query category,price sort=price facets=all page"
+  private String shape;
+
+  // The number of matching deals, null if the response of Elasticsearch was returned as is
+  private Long total;
+
+  private double latencyMillis;
+
+  @Indexed(expireAfter = "30d")
+  private Instant createdAt;
+}
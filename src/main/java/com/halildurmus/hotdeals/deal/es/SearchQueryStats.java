@@ -0,0 +1,18 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import java.util.List;
+
+/**
+ * The deal searches aggregated by {@link SearchQueryLog#getStats}.
+ *
+ * @param topQueries the most searched queries
+ * @param zeroResultQueries the most searched queries that matched no deal
+ * @param shapes the latency of the searches by their shape, the most frequent first
+ */
+public record SearchQueryStats(
+    List<QueryCount> topQueries, List<QueryCount> zeroResultQueries, List<ShapeLatency> shapes) {
+
+  public record QueryCount(String query, long count) {}
+
+  public record ShapeLatency(String shape, long count, double p50, double p95, double p99) {}
+}
@@ -0,0 +1,38 @@
+package com.halildurmus.hotdeals.deal.vote;
+
+import com.halildurmus.hotdeals.deal.DealVoteType;
+import java.io.Serializable;
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/** A user's vote on a deal. A user has at most one vote per deal. */
+@Document(collection = "deal_votes")
+@TypeAlias("vote")
+@CompoundIndex(name = "dealId_userId", def = "{'dealId': 1, 'userId': 1}", unique = true)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Vote implements Serializable {
+
+  private static final long serialVersionUID = 1234567L;
+
+  @Id private String id;
+
+  private ObjectId dealId;
+
+  private ObjectId userId;
+
+  // Either DealVoteType.UP or DealVoteType.DOWN, unvotes delete the document
+  private DealVoteType type;
+
+  private Instant votedAt;
+}
@@ -0,0 +1,102 @@
+package com.halildurmus.hotdeals.deal.vote;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import com.halildurmus.hotdeals.deal.Deal;
+import com.halildurmus.hotdeals.deal.DealVoteType;
+import java.time.Instant;
+import java.util.Collection;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the {@code upvoters} and {@code downvoters} arrays that used to be embedded in the deal
+ * documents into the {@code deal_votes} collection, and replaces them with vote counters.
+ *
+ * <p>The migration runs on startup and is idempotent: deals that don't have the arrays anymore are
+ * skipped, and votes that already exist in {@code deal_votes} are kept.
+ */
+@Slf4j
+@Component
+class VoteMigration {
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @EventListener(ApplicationReadyEvent.class)
+  void migrate() {
+    var query =
+        new Query(
+            new Criteria()
+                .orOperator(where("upvoters").exists(true), where("downvoters").exists(true)));
+    query.fields().include("upvoters", "downvoters");
+
+    int migrated = 0;
+    try (var deals = mongoTemplate.stream(query, Document.class, "deals")) {
+      for (var deal : (Iterable<Document>) deals::iterator) {
+        migrate(deal);
+        migrated++;
+      }
+    }
+    if (migrated > 0) {
+      log.info("Moved the voters of {} deals to the deal_votes collection", migrated);
+    }
+  }
+
+  private void migrate(Document deal) {
+    var dealId = deal.getObjectId("_id");
+    var voteOps = mongoTemplate.bulkOps(BulkMode.UNORDERED, Vote.class);
+    var upvoters = deal.getList("upvoters", ObjectId.class);
+    var downvoters = deal.getList("downvoters", ObjectId.class);
+    var hasVotes = addVotes(voteOps, dealId, upvoters, DealVoteType.UP);
+    hasVotes |= addVotes(voteOps, dealId, downvoters, DealVoteType.DOWN);
+    if (hasVotes) {
+      voteOps.execute();
+    }
+
+    // Recount from deal_votes so that the counters also include votes cast after the arrays were
+    // last written
+    int upvotes = countVotes(dealId, DealVoteType.UP);
+    int downvotes = countVotes(dealId, DealVoteType.DOWN);
+    mongoTemplate.updateFirst(
+        query(where("_id").is(dealId)),
+        new Update()
+            .set("upvotes", upvotes)
+            .set("downvotes", downvotes)
+            .set("dealScore", upvotes - downvotes)
+            .unset("upvoters")
+            .unset("downvoters"),
+        Deal.class);
+  }
+
+  private boolean addVotes(
+      BulkOperations voteOps, ObjectId dealId, Collection<ObjectId> voters, DealVoteType type) {
+    if (voters == null || voters.isEmpty()) {
+      return false;
+    }
+    var now = Instant.now();
+    voters.forEach(
+        userId ->
+            voteOps.upsert(
+                query(where("dealId").is(dealId).and("userId").is(userId)),
+                new Update().setOnInsert("type", type).setOnInsert("votedAt", now)));
+    return true;
+  }
+
+  private int countVotes(ObjectId dealId, DealVoteType type) {
+    return (int) mongoTemplate.count(
+        query(where("dealId").is(dealId).and("type").is(type)), Vote.class);
+  }
+}
@@ -0,0 +1,18 @@
+package com.halildurmus.hotdeals.deal.vote;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+@RepositoryRestResource(collectionResourceRel = "deal_votes", exported = false, path = "deal_votes")
+public interface VoteRepository extends MongoRepository<Vote, String> {
+
+  Optional<Vote> findByDealIdAndUserId(ObjectId dealId, ObjectId userId);
+
+  List<Vote> findAllByUserIdAndDealIdIn(ObjectId userId, Collection<ObjectId> dealIds);
+
+  void deleteAllByDealId(ObjectId dealId);
+}
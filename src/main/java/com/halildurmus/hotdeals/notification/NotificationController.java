@@ -4,6 +4,7 @@ import com.google.firebase.auth.FirebaseAuthException;
 import org.springframework.security.access.prepost.PreAuthorize;
 import com.halildurmus.hotdeals.notification.dto.RoleNotificationRequest;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -13,14 +14,17 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.util.ObjectUtils;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 @Tag(name = "notifications")
 @SecurityRequirement(name = "bearerAuth")
@@ -32,15 +36,23 @@ public class NotificationController {
   @Autowired
   private NotificationService notificationService;
 
+  private static ResponseEntity<NotificationJob> accepted(NotificationJob job) {
+    var location =
+        ServletUriComponentsBuilder.fromCurrentContextPath()
+            .path("/notifications/jobs/{id}")
+            .buildAndExpand(job.getId())
+            .toUri();
+    return ResponseEntity.accepted().location(location).body(job);
+  }
+
   @PostMapping
-  @ResponseStatus(HttpStatus.CREATED)
-  @Operation(summary = "Sends a push notification using FCM", description = "<b>*</b>(<b>title</b> or <b>titleLocKey</b>) and (<b>body</b> or <b>bodyLocKey</b>) parameters are required")
+  @Operation(summary = "Sends a push notification using FCM", description = "<b>*</b>(<b>title</b> or <b>titleLocKey</b>) and (<b>body</b> or <b>bodyLocKey</b>) parameters are required. The notification is sent in the background, its progress can be followed with GET /notifications/jobs/{id}")
   @ApiResponses({
-      @ApiResponse(responseCode = "201", description = "Push notification sent", content = @Content(schema = @Schema(type = "integer", defaultValue = "1"))),
+      @ApiResponse(responseCode = "202", description = "Push notification queued", content = @Content(schema = @Schema(implementation = NotificationJob.class))),
       @ApiResponse(responseCode = "400", description = "Bad Request", content = @Content),
       @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content)
   })
-  public Integer sendNotification(@Valid @RequestBody Notification notification) {
+  public ResponseEntity<NotificationJob> sendNotification(@Valid @RequestBody Notification notification) {
     if (ObjectUtils.isEmpty(notification.getTitle())
         && ObjectUtils.isEmpty(notification.getTitleLocKey())) {
       throw new ResponseStatusException(
@@ -50,20 +62,36 @@ public class NotificationController {
       throw new ResponseStatusException(
           HttpStatus.BAD_REQUEST, "body or bodyLocKey parameters cannot be empty");
     }
-    return notificationService.send(notification);
+    return accepted(notificationService.send(notification));
   }
 
   @PostMapping("/send-to-role")
-  @ResponseStatus(HttpStatus.CREATED)
-  @Operation(summary = "Sends a push notification to all users with a specific role")
+  @Operation(summary = "Sends a push notification to all users with a specific role", description = "The notification is sent in the background, its progress can be followed with GET /notifications/jobs/{id}")
   @ApiResponses({
-      @ApiResponse(responseCode = "201", description = "Push notification sent", content = @Content(schema = @Schema(type = "integer", defaultValue = "5"))),
+      @ApiResponse(responseCode = "202", description = "Push notification queued", content = @Content(schema = @Schema(implementation = NotificationJob.class))),
       @ApiResponse(responseCode = "400", description = "Bad Request", content = @Content),
       @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content),
       @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content)
   })
-  public Integer sendNotificationToRole(@Valid @RequestBody RoleNotificationRequest request)
+  public ResponseEntity<NotificationJob> sendNotificationToRole(@Valid @RequestBody RoleNotificationRequest request)
       throws FirebaseAuthException {
-    return notificationService.sendToRole(request.getRole(), request.getNotification());
+    return accepted(notificationService.sendToRole(request.getRole(), request.getNotification()));
+  }
+
+  @GetMapping("/jobs/{id}")
+  @Operation(summary = "Returns the progress of a push notification job")
+  @ApiResponses({
+      @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(schema = @Schema(implementation = NotificationJob.class))),
+      @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content),
+      @ApiResponse(responseCode = "404", description = "Job not found", content = @Content)
+  })
+  public NotificationJob getJob(
+      @Parameter(description = "String representation of the job ID", example = "3f2c1a8e-5b7d-4e0f-9a6b-2d1c0e9f8a7b")
+      @PathVariable String id) {
+    var job = notificationService.getJob(id);
+    if (job == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Job not found!");
+    }
+    return job;
   }
 }
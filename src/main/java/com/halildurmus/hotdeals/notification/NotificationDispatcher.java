@@ -0,0 +1,277 @@
+package com.halildurmus.hotdeals.notification;
+
+import com.google.firebase.ErrorCode;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.firebase.messaging.FirebaseMessagingException;
+import com.google.firebase.messaging.MessagingErrorCode;
+import com.google.firebase.messaging.MulticastMessage;
+import com.halildurmus.hotdeals.notification.NotificationJob.Status;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sends the notifications in the background, so that the request returns as soon as the job is
+ * created.
+ *
+ * <p>The tokens of a job are split into multicast messages of at most 500 tokens, the FCM limit,
+ * which are sent on virtual threads. The number of messages in flight is bounded across all jobs
+ * by {@code notifications.max-concurrency}, and the token stream is only read further once a
+ * message can be sent, so a job never holds more than that many chunks. The tokens that fail with
+ * a transient error are retried with an exponential backoff.
+ *
+ * <p>The progress of a job is kept in a Redis hash, so that it can be queried on any node.
+ */
+@Slf4j
+@Component
+public class NotificationDispatcher {
+
+  static final int MAX_MULTICAST_TOKENS = 500;
+
+  private static final String JOB_KEY_PREFIX = "notifications:jobs:";
+
+  private static final Set<MessagingErrorCode> TRANSIENT_MESSAGING_ERRORS =
+      Set.of(
+          MessagingErrorCode.UNAVAILABLE,
+          MessagingErrorCode.INTERNAL,
+          MessagingErrorCode.QUOTA_EXCEEDED);
+
+  private static final Set<ErrorCode> TRANSIENT_ERRORS =
+      Set.of(
+          ErrorCode.UNAVAILABLE,
+          ErrorCode.INTERNAL,
+          ErrorCode.DEADLINE_EXCEEDED,
+          ErrorCode.RESOURCE_EXHAUSTED);
+
+  private Semaphore permits;
+
+  @Autowired
+  private FirebaseMessaging firebaseMessaging;
+
+  @Autowired
+  private StringRedisTemplate redisTemplate;
+
+  @Autowired
+  private NotificationProperties properties;
+
+  @PostConstruct
+  void createPermits() {
+    // Fair, so that a chunk coming back from its backoff isn't overtaken by the new chunks
+    permits = new Semaphore(properties.getMaxConcurrency(), true);
+  }
+
+  /**
+   * Starts a job that sends a notification to the given tokens.
+   *
+   * @param tokens opens the stream of the tokens, which is read and closed by the job
+   * @param messageFactory creates the message of a chunk of tokens
+   * @param onTokenFailed called with the tokens that failed with a permanent error
+   * @return the job
+   */
+  public NotificationJob dispatch(
+      Supplier<Stream<String>> tokens,
+      Function<List<String>, MulticastMessage> messageFactory,
+      BiConsumer<String, FirebaseMessagingException> onTokenFailed) {
+    var job =
+        NotificationJob.builder()
+            .id(UUID.randomUUID().toString())
+            .status(Status.RUNNING)
+            .createdAt(Instant.now())
+            .build();
+    var key = JOB_KEY_PREFIX + job.getId();
+    redisTemplate.opsForHash().putAll(key, Map.of(
+        "status", job.getStatus().name(),
+        "createdAt", job.getCreatedAt().toString()));
+    redisTemplate.expire(key, properties.getJobTtl());
+
+    Thread.ofVirtual()
+        .name("notification-job-" + job.getId())
+        .start(() -> run(job.getId(), tokens, messageFactory, onTokenFailed));
+    return job;
+  }
+
+  /**
+   * Finds a job created on any node.
+   *
+   * @param id the job ID
+   * @return the job, {@code null} if there is no such job or it has expired
+   */
+  public NotificationJob getJob(String id) {
+    var fields = redisTemplate.<String, String>opsForHash().entries(JOB_KEY_PREFIX + id);
+    if (fields.isEmpty()) {
+      return null;
+    }
+    return NotificationJob.builder()
+        .id(id)
+        .status(Status.valueOf(fields.get("status")))
+        .tokens(Long.parseLong(fields.getOrDefault("tokens", "0")))
+        .sent(Long.parseLong(fields.getOrDefault("sent", "0")))
+        .failed(Long.parseLong(fields.getOrDefault("failed", "0")))
+        .retried(Long.parseLong(fields.getOrDefault("retried", "0")))
+        .error(fields.get("error"))
+        .createdAt(Instant.parse(fields.get("createdAt")))
+        .completedAt(fields.containsKey("completedAt")
+            ? Instant.parse(fields.get("completedAt")) : null)
+        .build();
+  }
+
+  private void run(
+      String jobId,
+      Supplier<Stream<String>> tokens,
+      Function<List<String>, MulticastMessage> messageFactory,
+      BiConsumer<String, FirebaseMessagingException> onTokenFailed) {
+    var senders = new ArrayList<Thread>();
+    var status = Status.COMPLETED;
+    String error = null;
+    try (var stream = tokens.get()) {
+      var chunk = new ArrayList<String>(MAX_MULTICAST_TOKENS);
+      for (var iterator = stream.iterator(); iterator.hasNext(); ) {
+        chunk.add(iterator.next());
+        if (chunk.size() == MAX_MULTICAST_TOKENS || !iterator.hasNext()) {
+          var tokensOfChunk = List.copyOf(chunk);
+          chunk.clear();
+          increment(jobId, "tokens", tokensOfChunk.size());
+          // Waits for a free slot before reading the next chunk
+          permits.acquire();
+          senders.add(Thread.ofVirtual().start(() -> {
+            try {
+              sendChunk(jobId, tokensOfChunk, messageFactory, onTokenFailed);
+            } catch (RuntimeException e) {
+              log.error("Failed to send a notification of job {} to {} tokens", jobId,
+                  tokensOfChunk.size(), e);
+              increment(jobId, "failed", tokensOfChunk.size());
+            } finally {
+              permits.release();
+            }
+          }));
+        }
+      }
+      for (var sender : senders) {
+        sender.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      status = Status.FAILED;
+      error = "Interrupted";
+    } catch (RuntimeException e) {
+      log.error("Notification job {} failed", jobId, e);
+      status = Status.FAILED;
+      error = e.getMessage();
+    }
+
+    var key = JOB_KEY_PREFIX + jobId;
+    var fields = new HashMap<String, String>();
+    fields.put("status", status.name());
+    fields.put("completedAt", Instant.now().toString());
+    if (error != null) {
+      fields.put("error", error);
+    }
+    redisTemplate.opsForHash().putAll(key, fields);
+  }
+
+  // Called with a permit, which is only held while a message is being sent
+  private void sendChunk(
+      String jobId,
+      List<String> tokens,
+      Function<List<String>, MulticastMessage> messageFactory,
+      BiConsumer<String, FirebaseMessagingException> onTokenFailed) {
+    var pending = tokens;
+    for (var attempt = 1; ; attempt++) {
+      var retry = new ArrayList<String>();
+      var sent = 0;
+      var failed = 0;
+      try {
+        var batchResponse = firebaseMessaging.sendEachForMulticast(messageFactory.apply(pending));
+        for (var i = 0; i < batchResponse.getResponses().size(); i++) {
+          var response = batchResponse.getResponses().get(i);
+          var exception = response.getException();
+          if (response.isSuccessful()) {
+            sent++;
+          } else if (exception != null && isTransient(exception)) {
+            retry.add(pending.get(i));
+          } else {
+            failed++;
+            notifyFailed(onTokenFailed, pending.get(i), exception);
+          }
+        }
+      } catch (FirebaseMessagingException e) {
+        if (isTransient(e)) {
+          retry.addAll(pending);
+        } else {
+          log.warn("Failed to send a notification of job {} to {} tokens", jobId, pending.size(), e);
+          failed += pending.size();
+        }
+      }
+
+      if (!retry.isEmpty() && attempt == properties.getMaxAttempts()) {
+        failed += retry.size();
+        retry.clear();
+      }
+      increment(jobId, "sent", sent);
+      increment(jobId, "failed", failed);
+      if (retry.isEmpty()) {
+        return;
+      }
+
+      increment(jobId, "retried", retry.size());
+      // Gives the permit back while backing off, so that the retries don't stall the other jobs
+      permits.release();
+      try {
+        Thread.sleep(backoff(attempt));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        increment(jobId, "failed", retry.size());
+        return;
+      } finally {
+        // The caller releases the permit once the chunk is done
+        permits.acquireUninterruptibly();
+      }
+      pending = retry;
+    }
+  }
+
+  private static void notifyFailed(
+      BiConsumer<String, FirebaseMessagingException> onTokenFailed,
+      String token,
+      FirebaseMessagingException exception) {
+    try {
+      onTokenFailed.accept(token, exception);
+    } catch (RuntimeException e) {
+      log.warn("Failed to handle the failed FCM token {}", token, e);
+    }
+  }
+
+  static boolean isTransient(FirebaseMessagingException exception) {
+    // The immutable sets throw on contains(null)
+    var messagingErrorCode = exception.getMessagingErrorCode();
+    var errorCode = exception.getErrorCode();
+    return (messagingErrorCode != null && TRANSIENT_MESSAGING_ERRORS.contains(messagingErrorCode))
+        || (errorCode != null && TRANSIENT_ERRORS.contains(errorCode));
+  }
+
+  Duration backoff(int attempts) {
+    var backoff = properties.getInitialBackoff().multipliedBy(1L << Math.min(attempts - 1, 20));
+    return backoff.compareTo(properties.getMaxBackoff()) > 0 ? properties.getMaxBackoff() : backoff;
+  }
+
+  private void increment(String jobId, String field, long delta) {
+    if (delta > 0) {
+      redisTemplate.opsForHash().increment(JOB_KEY_PREFIX + jobId, field, delta);
+    }
+  }
+}
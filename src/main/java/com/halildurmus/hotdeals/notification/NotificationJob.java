@@ -0,0 +1,46 @@
+package com.halildurmus.hotdeals.notification;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationJob {
+
+  @Schema(description = "Job ID", example = "3f2c1a8e-5b7d-4e0f-9a6b-2d1c0e9f8a7b")
+  private String id;
+
+  @Schema(description = "Job status", example = "RUNNING")
+  private Status status;
+
+  @Schema(description = "The number of FCM tokens queued so far", example = "1200")
+  private long tokens;
+
+  @Schema(description = "The number of FCM tokens the notification was sent to", example = "1150")
+  private long sent;
+
+  @Schema(description = "The number of FCM tokens the notification couldn't be sent to", example = "3")
+  private long failed;
+
+  @Schema(description = "The number of retried FCM tokens", example = "40")
+  private long retried;
+
+  @Schema(description = "Why the job failed")
+  private String error;
+
+  private Instant createdAt;
+
+  private Instant completedAt;
+
+  public enum Status {
+    RUNNING,
+    COMPLETED,
+    FAILED
+  }
+}
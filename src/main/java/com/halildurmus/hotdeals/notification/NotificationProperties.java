@@ -0,0 +1,26 @@
+package com.halildurmus.hotdeals.notification;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties("notifications")
+@Data
+public class NotificationProperties {
+
+  // The maximum number of multicast messages sent to FCM at the same time, across all jobs
+  private int maxConcurrency = 8;
+
+  // The attempts of a token that fails with a transient error, e.g. UNAVAILABLE
+  private int maxAttempts = 5;
+
+  // The delay before the first retry, doubled on every further attempt
+  private Duration initialBackoff = Duration.ofSeconds(1);
+
+  private Duration maxBackoff = Duration.ofMinutes(1);
+
+  // How long the status of a job can be queried after it was created
+  private Duration jobTtl = Duration.ofDays(1);
+}
@@ -5,6 +5,7 @@ import com.halildurmus.hotdeals.security.role.Role;
 
 public interface NotificationService {
 
-  int send(Notification notification);
-  int sendToRole(Role role, Notification notification) throws FirebaseAuthException;
+  NotificationJob send(Notification notification);
+  NotificationJob sendToRole(Role role, Notification notification) throws FirebaseAuthException;
+  NotificationJob getJob(String id);
 }
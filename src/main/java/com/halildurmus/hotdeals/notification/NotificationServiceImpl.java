@@ -6,23 +6,26 @@ import com.google.firebase.messaging.AndroidConfig.Priority;
 import com.halildurmus.hotdeals.security.SecurityService;
 import com.halildurmus.hotdeals.security.role.Role;
 import com.halildurmus.hotdeals.security.role.RoleService;
+import com.halildurmus.hotdeals.security.role.RoleServiceImpl.UserWithRoles;
 import com.halildurmus.hotdeals.user.FCMTokenParams;
 import com.halildurmus.hotdeals.user.UserService;
 
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 import org.springframework.web.server.ResponseStatusException;
 
 @Slf4j
 @Service
 public class NotificationServiceImpl implements NotificationService {
 
-  @Autowired private FirebaseMessaging firebaseMessaging;
+  @Autowired private NotificationDispatcher dispatcher;
 
   @Autowired private SecurityService securityService;
 
@@ -31,12 +34,8 @@ public class NotificationServiceImpl implements NotificationService {
   @Autowired private RoleService roleService;
 
 
-  // This method will now create a single MulticastMessage
-  private MulticastMessage  createMessagesForTokens(Notification notification) {
-    var user = securityService.getUser();
-    Map<String, String> data = notification.getData();
-    data.put("actor", user.getId());
-
+  // The message of a chunk of tokens, the actor is set on the request thread
+  private static MulticastMessage createMessage(Notification notification, List<String> tokens) {
     // Build the common notification payload
     var firebaseNotification =
         com.google.firebase.messaging.Notification.builder()
@@ -68,74 +67,68 @@ public class NotificationServiceImpl implements NotificationService {
     return MulticastMessage.builder()
             .setNotification(firebaseNotification)
             .setAndroidConfig(androidConfig)
-            .putAllData(notification.getData()) // Use the potentially modified data map
-            .addAllTokens(notification.getTokens()) // Add all tokens to the single MulticastMessage
+            .putAllData(notification.getData())
+            .addAllTokens(tokens)
             .build();
 
   }
 
-  @Override
-  public int send(Notification notification) {
-    BatchResponse batchResponse;
-    // Create individual messages for each token
-    MulticastMessage  messagesToSend = createMessagesForTokens(notification);
-
-    try {
-      batchResponse = firebaseMessaging.sendEachForMulticast(messagesToSend);
-      log.debug(batchResponse.getSuccessCount() + " messages were sent successfully");
-    } catch (FirebaseMessagingException e) {
-      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "", e);
-    }
-
-    // Remove invalid FCM tokens from the authenticated user
-    for (int i = 0; i < batchResponse.getResponses().size(); i++) {
-      SendResponse sendResponse = batchResponse.getResponses().get(i);
-      if (!sendResponse.isSuccessful() && sendResponse.getException() != null) {
-        // It's good to check if getMessagingErrorCode() is not null before calling name()
-
-        FirebaseMessagingException fme = sendResponse.getException();
-        String errorCode = (fme.getMessagingErrorCode() != null) ?
-                fme.getMessagingErrorCode().name() : "UNKNOWN_ERROR";
-
-
-        // Log the failure for debugging
-        log.warn("Failed to send message to token {}: ErrorCode={}, Message={}", notification.getTokens().get(i), errorCode, fme.getMessage());
-
-        if (errorCode.equals("INVALID_ARGUMENT") || errorCode.equals("UNREGISTERED")) {
-          var userUid = notification.getData().get("uid");
-          var fcmToken = notification.getTokens().get(i);
-          // Ensure userUid is not null before attempting to delete
-          if (userUid != null) {
-            var fcmTokenParams = FCMTokenParams.builder().token(fcmToken).build();
-            userService.deleteFCMToken(userUid, fcmTokenParams);
-              log.debug("{} was removed successfully from user {}", fcmToken, userUid);
-          } else {
-            log.warn("Could not remove FCM token {} as 'uid' was missing from notification data.", fcmToken);
-          }
-        }
+  // Removes an invalid FCM token from the user in the notification data
+  private void onTokenFailed(
+      Notification notification, String fcmToken, FirebaseMessagingException fme) {
+    String errorCode = (fme != null && fme.getMessagingErrorCode() != null) ?
+            fme.getMessagingErrorCode().name() : "UNKNOWN_ERROR";
+
+    // Log the failure for debugging
+    log.warn("Failed to send message to token {}: ErrorCode={}, Message={}", fcmToken, errorCode,
+        fme != null ? fme.getMessage() : null);
+
+    if (errorCode.equals("INVALID_ARGUMENT") || errorCode.equals("UNREGISTERED")) {
+      var userUid = notification.getData().get("uid");
+      // Ensure userUid is not null before attempting to delete
+      if (userUid != null) {
+        var fcmTokenParams = FCMTokenParams.builder().token(fcmToken).build();
+        userService.deleteFCMToken(userUid, fcmTokenParams);
+        log.debug("{} was removed successfully from user {}", fcmToken, userUid);
+      } else {
+        log.warn("Could not remove FCM token {} as 'uid' was missing from notification data.", fcmToken);
       }
     }
+  }
 
-
-    return batchResponse.getSuccessCount();
+  private NotificationJob dispatch(Notification notification, Supplier<Stream<String>> tokens) {
+    // The security context isn't available on the threads of the job
+    var user = securityService.getUser();
+    if (notification.getData() == null) {
+      notification.setData(new HashMap<>());
+    }
+    notification.getData().put("actor", user.getId());
+    return dispatcher.dispatch(
+        tokens,
+        chunk -> createMessage(notification, chunk),
+        (token, exception) -> onTokenFailed(notification, token, exception));
   }
 
   @Override
-  public int sendToRole(Role role, Notification notification) throws FirebaseAuthException {
-    // Get all users with the specified role from Firebase
-    var usersWithRole = roleService.getUsersByRole(role);
-
-    // Collect all FCM tokens from MongoDB users
-    List<String> allTokens = new ArrayList<>();
-    for (var userWithRole : usersWithRole) {
-      var userOpt = userService.findByUid(userWithRole.getUid());
-      if (userOpt.isPresent() && userOpt.get().getFcmTokens() != null) {
-        allTokens.addAll(userOpt.get().getFcmTokens().values());
-      }
+  public NotificationJob send(Notification notification) {
+    var tokens = notification.getTokens() == null ? List.<String>of()
+        : notification.getTokens().stream().filter(StringUtils::hasText).toList();
+    if (tokens.isEmpty()) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "tokens cannot be empty");
     }
-    // Send notification to all collected tokens
-    notification.setTokens(allTokens);
-    return send(notification);
+    return dispatch(notification, tokens::stream);
+  }
 
+  @Override
+  public NotificationJob sendToRole(Role role, Notification notification)
+      throws FirebaseAuthException {
+    var uids = roleService.getUsersByRole(role).stream().map(UserWithRoles::getUid).toList();
+    // The tokens are looked up by the job
+    return dispatch(notification, () -> userService.streamFcmTokens(uids));
+  }
+
+  @Override
+  public NotificationJob getJob(String id) {
+    return dispatcher.getJob(id);
   }
 }
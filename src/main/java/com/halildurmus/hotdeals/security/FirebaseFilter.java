@@ -1,5 +1,8 @@
 package com.halildurmus.hotdeals.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseAuthException;
 import com.google.firebase.auth.FirebaseToken;
@@ -10,7 +13,14 @@ import com.halildurmus.hotdeals.security.role.Role;
 import com.halildurmus.hotdeals.security.role.RoleService;
 import com.halildurmus.hotdeals.user.User;
 import com.halildurmus.hotdeals.user.UserRepository;
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.http.HttpServletRequest;
@@ -38,6 +48,18 @@ public class FirebaseFilter extends OncePerRequestFilter {
 
   @Autowired private UserRepository userRepository;
 
+  // The verified tokens by the SHA-256 of the token, each until the token expires
+  private Cache<String, FirebaseToken> verifiedTokens;
+
+  @PostConstruct
+  void createTokenCache() {
+    verifiedTokens =
+        Caffeine.newBuilder()
+            .maximumSize(securityProperties.getTokenCacheSize())
+            .expireAfter(new TokenExpiry())
+            .build();
+  }
+
   @SneakyThrows
   @Override
   protected void doFilterInternal(
@@ -57,7 +79,6 @@ public class FirebaseFilter extends OncePerRequestFilter {
   }
 
   private User firebaseTokenToUser(FirebaseToken decodedToken) {
-    log.info(decodedToken.getUid());
     return userRepository.findByUid(decodedToken.getUid()).orElse(null);
   }
 
@@ -81,20 +102,76 @@ public class FirebaseFilter extends OncePerRequestFilter {
     return authorities;
   }
 
+  /**
+   * Verifies the given ID token, or returns it from the cache if it has been verified before and
+   * has not expired yet.
+   *
+   * @param token the ID token
+   * @return the decoded token
+   * @throws FirebaseAuthException if the token is invalid
+   */
+  FirebaseToken decodeToken(String token) throws FirebaseAuthException {
+    var key = sha256(token);
+    var decodedToken = verifiedTokens.getIfPresent(key);
+    if (decodedToken != null) {
+      return decodedToken;
+    }
+
+    decodedToken = FirebaseAuth.getInstance().verifyIdToken(token);
+    if (getExpiry(decodedToken).isAfter(Instant.now())) {
+      verifiedTokens.put(key, decodedToken);
+    }
+    return decodedToken;
+  }
+
+  private static Instant getExpiry(FirebaseToken token) {
+    // verifyIdToken() rejects the tokens without an exp claim
+    return token.getClaims().get("exp") instanceof Number exp
+        ? Instant.ofEpochSecond(exp.longValue())
+        : Instant.EPOCH;
+  }
+
+  // Expires the entries when their token does, the reads and updates don't extend them
+  private static class TokenExpiry implements Expiry<String, FirebaseToken> {
+
+    @Override
+    public long expireAfterCreate(String key, FirebaseToken token, long currentTime) {
+      return Math.max(0, Duration.between(Instant.now(), getExpiry(token)).toNanos());
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        String key, FirebaseToken token, long currentTime, long currentDuration) {
+      return expireAfterCreate(key, token, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(
+        String key, FirebaseToken token, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+
+  private static String sha256(String token) {
+    try {
+      var digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   private void verifyToken(HttpServletRequest request) throws Exception {
     var token = parseBearerToken(request);
-    log.info("Bearer Token: " + token);
     FirebaseToken decodedToken;
     try {
-      decodedToken = FirebaseAuth.getInstance().verifyIdToken(token);
-      log.info("Decoded Token: " + decodedToken);
+      decodedToken = decodeToken(token);
     } catch (FirebaseAuthException e) {
       log.error("Firebase Exception: " + e.getLocalizedMessage());
       throw e;
     }
 
     var user = firebaseTokenToUser(decodedToken);
-    log.info("User: " + user);
     String email = user != null ? user.getEmail() : null;
     List<GrantedAuthority> authorities = parseAuthorities(decodedToken, email);
     var authentication =
@@ -1,11 +1,13 @@
 package com.halildurmus.hotdeals.security;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.halildurmus.hotdeals.deal.DealCursor;
 import com.halildurmus.hotdeals.security.models.SecurityProperties;
 import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -76,6 +78,8 @@ public class SecurityConfig {
     configuration.setAllowCredentials(true);
     // You might want to allow specific headers if your frontend sends custom ones
     configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "Cache-Control"));
+    // Lets browsers read the cursor of the next page of the deal listings
+    configuration.setExposedHeaders(List.of(DealCursor.NEXT_CURSOR_HEADER));
     var source = new UrlBasedCorsConfigurationSource();
     source.registerCorsConfiguration("/**", configuration);
     return source;
@@ -1,6 +1,9 @@
 package com.halildurmus.hotdeals.security;
 
+import com.halildurmus.hotdeals.security.role.Role;
 import com.halildurmus.hotdeals.user.User;
+import java.util.Arrays;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
@@ -20,4 +23,33 @@ public class SecurityService {
     }
     return null;
   }
+
+  /**
+   * Whether the authenticated user is an admin, a moderator or a super admin. The roles are read
+   * from the claims of the ID token, see {@code FirebaseFilter#parseAuthorities}.
+   *
+   * @return {@code true} if the user has one of the roles; otherwise {@code false}
+   */
+  public boolean isAdminOrMod() {
+    return hasAnyRole(Role.ROLE_ADMIN, Role.ROLE_MODERATOR, Role.ROLE_SUPER);
+  }
+
+  /**
+   * Whether the authenticated user is a super admin.
+   *
+   * @return {@code true} if the user has the {@code ROLE_SUPER} role; otherwise {@code false}
+   */
+  public boolean isSuper() {
+    return hasAnyRole(Role.ROLE_SUPER);
+  }
+
+  private boolean hasAnyRole(Role... roles) {
+    var authentication = SecurityContextHolder.getContext().getAuthentication();
+    if (authentication == null) {
+      return false;
+    }
+    return authentication.getAuthorities().stream()
+        .map(GrantedAuthority::getAuthority)
+        .anyMatch(authority -> Arrays.stream(roles).anyMatch(role -> role.name().equals(authority)));
+  }
 }
@@ -15,4 +15,7 @@ public class SecurityProperties {
   private List<String> allowedMethods;
 
   private List<String> superAdmins;
+
+  // The maximum number of verified ID tokens kept by FirebaseFilter, each until its expiry
+  private int tokenCacheSize = 10_000;
 }
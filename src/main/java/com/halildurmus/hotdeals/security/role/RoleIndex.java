@@ -0,0 +1,172 @@
+package com.halildurmus.hotdeals.security.role;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.UserRecord;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Mirrors the role claims of the Firebase users in the {@code user_roles} collection, so that the
+ * users with a role are found with an index lookup instead of listing every Firebase user.
+ *
+ * <p>The index is updated by {@link RoleServiceImpl} whenever it changes the claims of a user.
+ * The claims changed elsewhere, e.g. in the Firebase console, are picked up by the periodic
+ * reconciliation, which lists all Firebase users and replaces the index. The index is also
+ * reconciled on startup if it is empty.
+ *
+ * <p>A user who loses their last role keeps an entry without roles, a tombstone, until the next
+ * reconciliation. A removed entry would be written again by a reconciliation running meanwhile,
+ * with the roles it read before the change.
+ */
+@Slf4j
+@Component
+public class RoleIndex {
+
+  private static final int BATCH_SIZE = 500;
+
+  private static final int DUPLICATE_KEY = 11000;
+
+  private final AtomicBoolean reconciling = new AtomicBoolean();
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @Autowired
+  private FirebaseAuth firebaseAuth;
+
+  /**
+   * Parses the roles from the custom claims of a user. The claims that are not a role, or that are
+   * not {@code true}, are ignored.
+   *
+   * @param claims the custom claims
+   * @return the roles
+   */
+  public static Set<Role> parseRoles(Map<String, Object> claims) {
+    return claims.entrySet().stream()
+        .filter(entry -> Boolean.TRUE.equals(entry.getValue()))
+        .map(entry -> {
+          try {
+            return Role.valueOf(entry.getKey());
+          } catch (IllegalArgumentException e) {
+            return null;
+          }
+        })
+        .filter(Objects::nonNull)
+        .collect(Collectors.toSet());
+  }
+
+  /**
+   * Records the roles of a user, an empty set of roles leaves a tombstone.
+   *
+   * @param user the Firebase user
+   * @param roles the roles of the user
+   */
+  public void put(UserRecord user, Set<Role> roles) {
+    mongoTemplate.save(new UserRoles(
+        user.getUid(), user.getEmail(), user.getDisplayName(), roles, Instant.now()));
+  }
+
+  /**
+   * Finds the users with the given role.
+   *
+   * @param role the role
+   * @return the users
+   */
+  public List<UserRoles> findAllByRole(Role role) {
+    return mongoTemplate.find(query(where("roles").is(role)), UserRoles.class);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  void reconcileIfEmpty() {
+    if (mongoTemplate.estimatedCount(UserRoles.class) == 0) {
+      Thread.ofVirtual().name("role-index").start(this::reconcile);
+    }
+  }
+
+  /**
+   * Replaces the index with the roles of all Firebase users. The users whose roles are changed
+   * meanwhile keep their newer entry.
+   */
+  @Scheduled(
+      fixedDelayString = "${security.role-index.reconcile-interval:PT6H}",
+      initialDelayString = "${security.role-index.reconcile-interval:PT6H}")
+  public void reconcile() {
+    if (!reconciling.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      var startedAt = Instant.now();
+      var bulkOps = mongoTemplate.bulkOps(BulkMode.UNORDERED, UserRoles.class);
+      var pending = 0;
+      var count = 0;
+      for (var user : firebaseAuth.listUsers(null).iterateAll()) {
+        var roles = parseRoles(user.getCustomClaims());
+        if (roles.isEmpty()) {
+          continue;
+        }
+        // Doesn't overwrite the entries written by RoleServiceImpl during the reconciliation
+        bulkOps.upsert(
+            query(where("_id").is(user.getUid()).and("updatedAt").lt(startedAt)),
+            new Update()
+                .set("email", user.getEmail())
+                .set("displayName", user.getDisplayName())
+                .set("roles", roles)
+                .set("updatedAt", startedAt));
+        count++;
+        if (++pending == BATCH_SIZE) {
+          executeIgnoringDuplicates(bulkOps);
+          bulkOps = mongoTemplate.bulkOps(BulkMode.UNORDERED, UserRoles.class);
+          pending = 0;
+        }
+      }
+      if (pending > 0) {
+        executeIgnoringDuplicates(bulkOps);
+      }
+
+      // The users that lost all their roles weren't seen by the reconciliation, and the tombstones
+      // written before it started aren't needed anymore. The newer tombstones are kept, another
+      // node may still be reconciling
+      var removed = mongoTemplate.remove(
+          new Query(where("updatedAt").lt(startedAt)), UserRoles.class);
+      log.info("Reconciled the role index with {} users, removed {}", count,
+          removed.getDeletedCount());
+    } catch (FirebaseAuthException | RuntimeException e) {
+      log.error("Failed to reconcile the role index", e);
+    } finally {
+      reconciling.set(false);
+    }
+  }
+
+  // An upsert of an entry updated meanwhile misses the filter and fails on the _id index, which
+  // leaves the newer entry in place
+  private static void executeIgnoringDuplicates(BulkOperations bulkOps) {
+    try {
+      bulkOps.execute();
+    } catch (BulkOperationException e) {
+      if (!e.getErrors().stream().allMatch(error -> error.getCode() == DUPLICATE_KEY)) {
+        throw e;
+      }
+    }
+  }
+}
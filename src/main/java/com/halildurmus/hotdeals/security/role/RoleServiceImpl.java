@@ -22,6 +22,8 @@ public class RoleServiceImpl implements RoleService {
 
   @Autowired private FirebaseAuth firebaseAuth;
 
+  @Autowired private RoleIndex roleIndex;
+
   @Override
   public void add(String uid, Role role) {
     try {
@@ -29,6 +31,7 @@ public class RoleServiceImpl implements RoleService {
       Map<String, Object> claims = new HashMap<>(user.getCustomClaims());
       claims.putIfAbsent(role.name(), true);
       firebaseAuth.setCustomUserClaims(uid, claims);
+      roleIndex.put(user, RoleIndex.parseRoles(claims));
     } catch (FirebaseAuthException e) {
       e.printStackTrace();
       throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Firebase Auth Exception", e);
@@ -42,6 +45,7 @@ public class RoleServiceImpl implements RoleService {
       Map<String, Object> claims = new HashMap<>(user.getCustomClaims());
       claims.remove(role.name());
       firebaseAuth.setCustomUserClaims(uid, claims);
+      roleIndex.put(user, RoleIndex.parseRoles(claims));
     } catch (FirebaseAuthException e) {
       throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Firebase Auth Exception", e);
     }
@@ -130,8 +134,9 @@ public class RoleServiceImpl implements RoleService {
 
   @Override
   public List<UserWithRoles> getUsersByRole(Role role) throws FirebaseAuthException {
-    return viewAllRoles().stream()
-            .filter(user -> user.getRoles().contains(role))
-            .collect(Collectors.toList());
+    return roleIndex.findAllByRole(role).stream()
+        .map(user -> new UserWithRoles(
+            user.getUid(), user.getEmail(), user.getDisplayName(), user.getRoles()))
+        .collect(Collectors.toList());
   }
 }
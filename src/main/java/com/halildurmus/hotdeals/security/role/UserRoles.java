@@ -0,0 +1,35 @@
+package com.halildurmus.hotdeals.security.role;
+
+import java.time.Instant;
+import java.util.Set;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * The roles of a Firebase user, as set in their custom claims. The users with at least one role
+ * are stored, and the users who lost their last role keep an entry without roles, a tombstone,
+ * until the next reconciliation, see {@link RoleIndex}.
+ */
+@Document(collection = "user_roles")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserRoles {
+
+  // The Firebase user ID
+  @Id
+  private String uid;
+
+  private String email;
+
+  private String displayName;
+
+  @Indexed
+  private Set<Role> roles;
+
+  private Instant updatedAt;
+}
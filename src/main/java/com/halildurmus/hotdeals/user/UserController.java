@@ -2,6 +2,8 @@ package com.halildurmus.hotdeals.user;
 
 import com.github.fge.jsonpatch.JsonPatch;
 import com.halildurmus.hotdeals.comment.CommentService;
+import com.halildurmus.hotdeals.deal.DealService;
+import com.halildurmus.hotdeals.deal.DealVoteType;
 import com.halildurmus.hotdeals.deal.dto.DealGetDTO;
 import com.halildurmus.hotdeals.exception.UserNotFoundException;
 import com.halildurmus.hotdeals.mapstruct.MapStructMapper;
@@ -23,9 +25,11 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.Size;
 import org.apache.commons.lang3.ObjectUtils;
 import org.bson.types.ObjectId;
 import org.springdoc.core.annotations.ParameterObject;
@@ -54,6 +58,8 @@ public class UserController {
 
   @Autowired private CommentService commentService;
 
+  @Autowired private DealService dealService;
+
   @Autowired private MapStructMapper mapStructMapper;
 
   @Autowired private SecurityService securityService;
@@ -332,6 +338,31 @@ public class UserController {
     service.unfavoriteDeal(dealId);
   }
 
+  @GetMapping("/me/deal-votes")
+  @Operation(
+      summary = "Returns the votes of the authenticated user on the given deals",
+      security = @SecurityRequirement(name = "bearerAuth"))
+  @ApiResponses({
+    @ApiResponse(
+        responseCode = "200",
+        description = "Successful operation",
+        content =
+            @Content(
+                mediaType = "application/json",
+                schema = @Schema(example = "{\"5fbe790ec6f0b32014074bb1\": \"UP\"}"))),
+    @ApiResponse(responseCode = "400", description = "Invalid deal ID", content = @Content),
+    @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content)
+  })
+  public Map<String, DealVoteType> getDealVotes(
+      @Parameter(
+              description = "String representations of the Deal IDs",
+              example = "5fbe790ec6f0b32014074bb1,5fbe790ec6f0b32014074bb2")
+          @RequestParam
+          @Size(max = 100)
+          List<@IsObjectId String> dealIds) {
+    return dealService.getVotes(dealIds);
+  }
+
   @PutMapping("/me/fcm-tokens")
   @Operation(
       summary = "Adds a FCM token to the authenticated user",
@@ -1,43 +1,38 @@
 package com.halildurmus.hotdeals.user;
 
+import java.util.Collection;
 import java.util.Optional;
+import java.util.stream.Stream;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 
 @RepositoryRestResource(collectionResourceRel = "users", exported = false, path = "users")
 public interface UserRepository extends MongoRepository<User, String> {
 
   @Override
-  @Caching(
-      evict = {
-        @CacheEvict(value = "users:findByEmail", key = "#entity.email"),
-        @CacheEvict(value = "users:findByNickname", key = "#entity.nickname"),
-        @CacheEvict(value = "users:findByUid", key = "#entity.uid")
-      })
+  @CacheEvict(value = "users:findByUid", key = "#entity.uid")
   <S extends User> S save(S entity);
 
-  @Cacheable(
-      value = "users:findByEmail",
-      key = "#email",
-      condition = "#email.blank != true and #result != null")
+  // Not cached, save() only knows the new email and nickname, so it can't evict the old ones
   Optional<User> findByEmail(String email);
 
-  @Cacheable(
-      value = "users:findByNickname",
-      key = "#nickname",
-      condition = "#nickname.blank != true and #result != null")
   Optional<User> findByNickname(String nickname);
 
   @Cacheable(
       value = "users:findByUid",
       key = "#uid",
-      condition = "#uid.blank != true and #result != null")
+      condition = "#uid.blank != true",
+      unless = "#result == null")
   Optional<User> findByUid(String uid);
 
   Page<User> findAllByIdIn(Iterable<String> userIds, Pageable pageable);
+
+  // Only the uid and the FCM tokens are loaded, so the users must not be cached or saved
+  @Query(value = "{'uid': {$in: ?0}}", fields = "{'uid': 1, 'fcmTokens': 1}")
+  Stream<User> findAllByUidIn(Collection<String> uids);
 }
@@ -3,8 +3,10 @@ package com.halildurmus.hotdeals.user;
 import com.github.fge.jsonpatch.JsonPatch;
 import com.halildurmus.hotdeals.deal.Deal;
 import com.halildurmus.hotdeals.security.role.IsSuper;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -20,6 +22,16 @@ public interface UserService {
 
   Optional<User> findByUid(String uid);
 
+  /**
+   * Streams the FCM tokens of the given users. The users cached by {@link #findByUid} are read
+   * from the cache in bulk, the others are queried in batches with only their tokens loaded. The
+   * stream must be closed.
+   *
+   * @param uids the Firebase user IDs
+   * @return the FCM tokens
+   */
+  Stream<String> streamFcmTokens(Collection<String> uids);
+
   User create(User user);
 
   User patchUser(JsonPatch patch);
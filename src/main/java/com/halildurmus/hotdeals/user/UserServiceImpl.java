@@ -6,6 +6,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.github.fge.jsonpatch.JsonPatch;
 import com.github.fge.jsonpatch.JsonPatchException;
+import com.halildurmus.hotdeals.config.cache.TwoTierCacheManager;
 import com.halildurmus.hotdeals.deal.Deal;
 import com.halildurmus.hotdeals.deal.DealRepository;
 import com.halildurmus.hotdeals.exception.DealNotFoundException;
@@ -14,9 +15,14 @@ import com.halildurmus.hotdeals.exception.UserNotFoundException;
 import com.halildurmus.hotdeals.security.SecurityService;
 import com.halildurmus.hotdeals.user.dto.UserPatchDTO;
 import com.halildurmus.hotdeals.util.FakerUtil;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -31,6 +37,10 @@ import org.springframework.web.server.ResponseStatusException;
 @Service
 public class UserServiceImpl implements UserService {
 
+  private static final String FIND_BY_UID_CACHE = "users:findByUid";
+
+  private static final int FCM_TOKEN_BATCH_SIZE = 500;
+
   private final DealRepository dealRepository;
 
   private final UserRepository repository;
@@ -41,6 +51,8 @@ public class UserServiceImpl implements UserService {
 
   @Autowired private SecurityService securityService;
 
+  @Autowired private TwoTierCacheManager cacheManager;
+
   @Autowired
   public UserServiceImpl(
       DealRepository dealRepository, UserRepository userRepository, FakerUtil fakerUtil) {
@@ -69,6 +81,35 @@ public class UserServiceImpl implements UserService {
     return repository.findByUid(uid);
   }
 
+  @Override
+  public Stream<String> streamFcmTokens(Collection<String> uids) {
+    var distinctUids = List.copyOf(new LinkedHashSet<>(uids));
+    var batchCount = (distinctUids.size() + FCM_TOKEN_BATCH_SIZE - 1) / FCM_TOKEN_BATCH_SIZE;
+    // The batches are looked up lazily, as the stream is consumed
+    return IntStream.range(0, batchCount)
+        .mapToObj(
+            i ->
+                distinctUids.subList(
+                    i * FCM_TOKEN_BATCH_SIZE,
+                    Math.min((i + 1) * FCM_TOKEN_BATCH_SIZE, distinctUids.size())))
+        .flatMap(this::streamFcmTokenBatch);
+  }
+
+  private Stream<String> streamFcmTokenBatch(List<String> uids) {
+    var cachedUsers = cacheManager.getAll(FIND_BY_UID_CACHE, uids);
+    var missingUids = uids.stream().filter(uid -> !cachedUsers.containsKey(uid)).toList();
+    var users =
+        missingUids.isEmpty()
+            ? cachedUsers.values().stream().map(User.class::cast)
+            : Stream.concat(
+                cachedUsers.values().stream().map(User.class::cast),
+                repository.findAllByUidIn(missingUids));
+    return users
+        .map(User::getFcmTokens)
+        .filter(Objects::nonNull)
+        .flatMap(fcmTokens -> fcmTokens.values().stream());
+  }
+
   @Override
   public User create(User user) {
     boolean errorOccurred;
@@ -10,7 +10,7 @@ import jakarta.validation.Payload;
 import jakarta.validation.constraints.NotNull;
 
 /** Validates if annotated field or parameter is {@code ObjectId}. */
-@Target({ElementType.FIELD, ElementType.PARAMETER})
+@Target({ElementType.FIELD, ElementType.PARAMETER, ElementType.TYPE_USE})
 @Retention(RetentionPolicy.RUNTIME)
 @Constraint(validatedBy = ObjectIdValidator.class)
 @NotNull
@@ -0,0 +1,76 @@
+package com.halildurmus.hotdeals.config.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.halildurmus.hotdeals.comment.dummy.DummyComments;
+import com.halildurmus.hotdeals.deal.dummy.DummyDeals;
+import com.halildurmus.hotdeals.user.dummy.DummyUsers;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+class BinaryJacksonRedisSerializerTest {
+
+  private Object roundTrip(CacheFormat format, Object value) {
+    RedisSerializer<Object> serializer = new BinaryJacksonRedisSerializer(format);
+    return serializer.deserialize(serializer.serialize(value));
+  }
+
+  @ParameterizedTest
+  @EnumSource(value = CacheFormat.class, names = {"SMILE", "CBOR"})
+  @DisplayName("Deserializes a serialized page of deals")
+  public void roundTripsPageOfDeals(CacheFormat format) {
+    var deal = DummyDeals.deal1;
+    Page<Object> page =
+        new PageImpl<>(
+            List.of(deal), PageRequest.of(1, 20, Sort.by(Sort.Direction.DESC, "createdAt")), 21);
+
+    var result = (Page<?>) roundTrip(format, page);
+
+    assertEquals(page.getPageable(), result.getPageable());
+    assertEquals(page.getTotalElements(), result.getTotalElements());
+    assertEquals(List.of(deal), result.getContent());
+  }
+
+  @ParameterizedTest
+  @EnumSource(value = CacheFormat.class, names = {"SMILE", "CBOR"})
+  @DisplayName("Deserializes an unpaged page")
+  public void roundTripsUnpagedPage(CacheFormat format) {
+    Page<Object> page = new PageImpl<>(List.of(DummyComments.comment1));
+
+    var result = (Page<?>) roundTrip(format, page);
+
+    assertEquals(Pageable.unpaged(), result.getPageable());
+    assertEquals(page.getContent(), result.getContent());
+  }
+
+  @ParameterizedTest
+  @EnumSource(value = CacheFormat.class, names = {"SMILE", "CBOR"})
+  @DisplayName("Deserializes read-only properties of a serialized user")
+  public void roundTripsUser(CacheFormat format) {
+    var user = DummyUsers.user1;
+
+    var result = roundTrip(format, user);
+
+    assertEquals(user, result);
+  }
+
+  @ParameterizedTest
+  @EnumSource(value = CacheFormat.class, names = {"SMILE", "CBOR"})
+  @DisplayName("Deserializes counts, null values and missing entries")
+  public void roundTripsSimpleValues(CacheFormat format) {
+    assertEquals(5, roundTrip(format, 5));
+    assertSame(NullValue.INSTANCE, roundTrip(format, NullValue.INSTANCE));
+    assertNull(new BinaryJacksonRedisSerializer(format).deserialize(null));
+  }
+}
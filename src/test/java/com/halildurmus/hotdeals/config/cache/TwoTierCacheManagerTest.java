@@ -0,0 +1,143 @@
+package com.halildurmus.hotdeals.config.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.halildurmus.hotdeals.user.User;
+import com.halildurmus.hotdeals.user.dummy.DummyUsers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
+
+class TwoTierCacheManagerTest {
+
+  private static final String CACHE_NAME = "users:findByUid";
+
+  private TwoTierCacheManager cacheManager;
+
+  private RedisCacheWriter cacheWriter;
+
+  private StringRedisTemplate redisTemplate;
+
+  private BinaryJacksonRedisSerializer serializer;
+
+  @BeforeEach
+  void setUp() {
+    cacheWriter = mock(RedisCacheWriter.class);
+    redisTemplate = mock(StringRedisTemplate.class);
+    serializer = new BinaryJacksonRedisSerializer(CacheFormat.SMILE);
+    var nearCacheProperties = new RedisCacheProperties.Near();
+    nearCacheProperties.setCaches(List.of(CACHE_NAME));
+    var cacheConfiguration =
+        RedisCacheConfiguration.defaultCacheConfig()
+            .serializeValuesWith(SerializationPair.fromSerializer(serializer));
+    cacheManager =
+        new TwoTierCacheManager(
+            cacheWriter,
+            cacheConfiguration,
+            Map.of(),
+            nearCacheProperties,
+            new SimpleMeterRegistry(),
+            redisTemplate);
+    when(cacheWriter.get(eq(CACHE_NAME), any(byte[].class)))
+        .thenReturn(serializer.serialize(DummyUsers.user1));
+  }
+
+  @Test
+  @DisplayName("Creates a two-tier cache only for the configured caches")
+  public void createsTwoTierCacheForConfiguredCaches() {
+    var cache = (ListeningCache) cacheManager.getCache(CACHE_NAME);
+    var otherCache = (ListeningCache) cacheManager.getCache("users:findByEmail");
+
+    assertInstanceOf(TwoTierCache.class, cache.getDelegate());
+    assertFalse(otherCache.getDelegate() instanceof TwoTierCache);
+  }
+
+  @Test
+  @DisplayName("Serves repeated reads from the near cache with fresh copies")
+  public void servesRepeatedReadsFromNearCache() {
+    var cache = cacheManager.getCache(CACHE_NAME);
+
+    var user1 = cache.get("uid", User.class);
+    var user2 = cache.get("uid", User.class);
+
+    verify(cacheWriter, times(1)).get(eq(CACHE_NAME), any(byte[].class));
+    assertEquals(DummyUsers.user1, user2);
+    assertNotSame(user1, user2);
+  }
+
+  @Test
+  @DisplayName("Evicting an entry drops it locally and publishes an invalidation")
+  public void evictPublishesInvalidation() {
+    var cache = cacheManager.getCache(CACHE_NAME);
+    cache.get("uid");
+    cache.evict("uid");
+    cache.get("uid");
+
+    verify(cacheWriter, times(2)).get(eq(CACHE_NAME), any(byte[].class));
+    verify(redisTemplate, times(1))
+        .convertAndSend(eq(TwoTierCacheManager.INVALIDATION_CHANNEL), anyString());
+  }
+
+  @Test
+  @DisplayName("Invalidations published by other nodes drop the entry")
+  public void invalidationFromOtherNodeDropsEntry() {
+    var cache = cacheManager.getCache(CACHE_NAME);
+    cache.get("uid");
+    cacheManager.onInvalidation("other-node|" + CACHE_NAME + "|" + CACHE_NAME + "::uid");
+    cache.get("uid");
+
+    verify(cacheWriter, times(2)).get(eq(CACHE_NAME), any(byte[].class));
+    verify(redisTemplate, never()).convertAndSend(anyString(), anyString());
+  }
+
+  @Test
+  @DisplayName("Notifies the put listeners registered for the cache")
+  public void putNotifiesListeners() {
+    var listener = mock(CachePutListener.class);
+    cacheManager.addPutListener(CACHE_NAME, listener);
+
+    cacheManager.getCache(CACHE_NAME).put("uid", DummyUsers.user1);
+    cacheManager.getCache("users:findByEmail").put("email", DummyUsers.user1);
+
+    verify(listener, times(1)).onPut(CACHE_NAME, "uid", DummyUsers.user1);
+    verify(listener, never()).onPut(eq("users:findByEmail"), any(), any());
+  }
+
+  @Test
+  @DisplayName("Looks up the entries missing from the near cache in a single round trip")
+  @SuppressWarnings("unchecked")
+  public void getAllReadsMissingEntriesAtOnce() {
+    when(redisTemplate.execute(any(RedisCallback.class)))
+        .thenReturn(Arrays.asList(serializer.serialize(DummyUsers.user2), null));
+    cacheManager.getCache(CACHE_NAME).get("uid1");
+
+    var users = cacheManager.getAll(CACHE_NAME, List.of("uid1", "uid2", "missing"));
+
+    assertEquals(Map.of("uid1", DummyUsers.user1, "uid2", DummyUsers.user2), users);
+    verify(cacheWriter, times(1)).get(eq(CACHE_NAME), any(byte[].class));
+    verify(redisTemplate, times(1)).execute(any(RedisCallback.class));
+    // The entries read from Redis are kept in the near cache
+    assertEquals(DummyUsers.user2, cacheManager.getCache(CACHE_NAME).get("uid2", User.class));
+    verify(cacheWriter, times(1)).get(eq(CACHE_NAME), any(byte[].class));
+  }
+}
@@ -0,0 +1,164 @@
+package com.halildurmus.hotdeals.deal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.halildurmus.hotdeals.config.cache.RedisCacheProperties;
+import com.halildurmus.hotdeals.config.cache.TwoTierCacheManager;
+import java.util.Set;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class DealCacheIndexTest {
+
+  private static final String DEAL_ID = "5fbe790ec6f0b32014074bb2";
+
+  private static final String INDEX_PREFIX = "deals:cache-index:";
+
+  private TwoTierCacheManager cacheManager;
+
+  private SetOperations<String, String> setOperations;
+
+  private DealCacheIndex cacheIndex;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    cacheManager = mock(TwoTierCacheManager.class);
+    var redisTemplate = mock(StringRedisTemplate.class);
+    setOperations = mock(SetOperations.class);
+    when(redisTemplate.opsForSet()).thenReturn(setOperations);
+    when(setOperations.members(anyString())).thenReturn(Set.of());
+    cacheIndex = new DealCacheIndex();
+    ReflectionTestUtils.setField(cacheIndex, "cacheManager", cacheManager);
+    ReflectionTestUtils.setField(cacheIndex, "redisTemplate", redisTemplate);
+    ReflectionTestUtils.setField(cacheIndex, "cacheProperties", new RedisCacheProperties());
+  }
+
+  private Cache mockCache(String name) {
+    var cache = mock(Cache.class);
+    when(cacheManager.getCache(name)).thenReturn(cache);
+    return cache;
+  }
+
+  private static Deal createDeal(DealStatus status, int dealScore) {
+    return Deal.builder()
+        .id(DEAL_ID)
+        .category("/computers/laptops")
+        .store(new ObjectId("5fbe790ec6f0b32014074bb3"))
+        .postedBy(new ObjectId("5fbe790ec6f0b32014074bb4"))
+        .status(status)
+        .dealScore(dealScore)
+        .build();
+  }
+
+  @Test
+  @DisplayName("Extracts the dimension from the page keys")
+  public void dimensionOf() {
+    assertEquals(
+        "/home-garden",
+        DealCacheIndex.dimensionOf("/home-garden-Page request [number: 0, size 20, sort: UNSORTED]"));
+    assertEquals("ACTIVE", DealCacheIndex.dimensionOf("ACTIVE-Page request [number: 1, size 5]"));
+  }
+
+  @Test
+  @DisplayName("Updating the content of a deal only evicts the pages listing it")
+  public void updateEvictsPagesListingTheDeal() {
+    var latestCache = mockCache(DealCacheIndex.LATEST_CACHE);
+    var mostLikedCache = mockCache(DealCacheIndex.MOST_LIKED_CACHE);
+    when(setOperations.members(INDEX_PREFIX + "deal:" + DEAL_ID))
+        .thenReturn(Set.of(DealCacheIndex.LATEST_CACHE + "|ACTIVE-page0"));
+
+    var deal = createDeal(DealStatus.ACTIVE, 0);
+    cacheIndex.evict(deal, createDeal(DealStatus.ACTIVE, 0));
+
+    verify(latestCache).evict("ACTIVE-page0");
+    verify(setOperations, never())
+        .members(INDEX_PREFIX + DealCacheIndex.LATEST_CACHE + ":ACTIVE");
+    verify(mostLikedCache, never()).evict("ACTIVE-page1");
+  }
+
+  @Test
+  @DisplayName("Changing the score of a deal evicts the pages ordered by score")
+  public void scoreChangeEvictsMostLikedPages() {
+    var mostLikedCache = mockCache(DealCacheIndex.MOST_LIKED_CACHE);
+    when(setOperations.members(INDEX_PREFIX + DealCacheIndex.MOST_LIKED_CACHE + ":ACTIVE"))
+        .thenReturn(Set.of("ACTIVE-page1"));
+
+    cacheIndex.evict(createDeal(DealStatus.ACTIVE, 0), createDeal(DealStatus.ACTIVE, 5));
+
+    verify(mostLikedCache).evict("ACTIVE-page1");
+  }
+
+  @Test
+  @DisplayName("Changing the status of a deal evicts the pages of the old and the new status")
+  public void statusChangeEvictsPagesOfOldAndNewStatus() {
+    var latestCache = mockCache(DealCacheIndex.LATEST_CACHE);
+    when(setOperations.members(INDEX_PREFIX + DealCacheIndex.LATEST_CACHE + ":ACTIVE"))
+        .thenReturn(Set.of("ACTIVE-page3"));
+    when(setOperations.members(INDEX_PREFIX + DealCacheIndex.LATEST_CACHE + ":EXPIRED"))
+        .thenReturn(Set.of("EXPIRED-page0"));
+
+    cacheIndex.evict(createDeal(DealStatus.ACTIVE, 0), createDeal(DealStatus.EXPIRED, 0));
+
+    // The later pages of the old status don't list the deal, but they shift by one
+    verify(latestCache).evict("ACTIVE-page3");
+    verify(latestCache).evict("EXPIRED-page0");
+  }
+
+  @Test
+  @DisplayName("Moving a deal to another category and store evicts the pages of both")
+  public void moveEvictsPagesOfOldAndNewDimensions() {
+    var categoryCache = mockCache(DealCacheIndex.CATEGORY_CACHE);
+    var storeCache = mockCache(DealCacheIndex.STORE_CACHE);
+    when(setOperations.members(INDEX_PREFIX + DealCacheIndex.CATEGORY_CACHE))
+        .thenReturn(Set.of("/computers", "/home-garden"));
+    when(setOperations.members(INDEX_PREFIX + DealCacheIndex.CATEGORY_CACHE + ":/computers"))
+        .thenReturn(Set.of("/computers-page2"));
+    when(setOperations.members(INDEX_PREFIX + DealCacheIndex.CATEGORY_CACHE + ":/home-garden"))
+        .thenReturn(Set.of("/home-garden-page0"));
+    when(setOperations.members(
+            INDEX_PREFIX + DealCacheIndex.STORE_CACHE + ":5fbe790ec6f0b32014074bb3"))
+        .thenReturn(Set.of("5fbe790ec6f0b32014074bb3-page1"));
+    when(setOperations.members(
+            INDEX_PREFIX + DealCacheIndex.STORE_CACHE + ":5fbe790ec6f0b32014074bb5"))
+        .thenReturn(Set.of("5fbe790ec6f0b32014074bb5-page0"));
+    var before = createDeal(DealStatus.ACTIVE, 0);
+    var after = createDeal(DealStatus.ACTIVE, 0);
+    after.setCategory("/home-garden/furniture");
+    after.setStore(new ObjectId("5fbe790ec6f0b32014074bb5"));
+
+    cacheIndex.evict(before, after);
+
+    verify(categoryCache).evict("/computers-page2");
+    verify(categoryCache).evict("/home-garden-page0");
+    verify(storeCache).evict("5fbe790ec6f0b32014074bb3-page1");
+    verify(storeCache).evict("5fbe790ec6f0b32014074bb5-page0");
+  }
+
+  @Test
+  @DisplayName("Creating a deal evicts the category pages of every matching prefix")
+  public void createEvictsMatchingCategoryPrefixes() {
+    var categoryCache = mockCache(DealCacheIndex.CATEGORY_CACHE);
+    when(setOperations.members(INDEX_PREFIX + DealCacheIndex.CATEGORY_CACHE))
+        .thenReturn(Set.of("/computers", "/computers/desktops"));
+    when(setOperations.members(INDEX_PREFIX + DealCacheIndex.CATEGORY_CACHE + ":/computers"))
+        .thenReturn(Set.of("/computers-page0"));
+
+    cacheIndex.evict(null, createDeal(DealStatus.ACTIVE, 0));
+
+    verify(categoryCache).evict("/computers-page0");
+    verify(setOperations, never())
+        .members(INDEX_PREFIX + DealCacheIndex.CATEGORY_CACHE + ":/computers/desktops");
+  }
+}
@@ -5,7 +5,9 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -14,6 +16,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -28,6 +31,7 @@ import com.halildurmus.hotdeals.deal.dto.DealPatchDTO;
 import com.halildurmus.hotdeals.deal.dto.DealPostDTO;
 import com.halildurmus.hotdeals.deal.dummy.DummyDeals;
 import com.halildurmus.hotdeals.deal.es.EsDealService;
+import com.halildurmus.hotdeals.deal.es.SearchQueryLog;
 import com.halildurmus.hotdeals.exception.DealNotFoundException;
 import com.halildurmus.hotdeals.mapstruct.MapStructMapperImpl;
 import com.halildurmus.hotdeals.report.comment.CommentReportService;
@@ -49,7 +53,9 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.test.web.servlet.MockMvc;
@@ -70,6 +76,8 @@ public class DealControllerTest extends BaseControllerUnitTest {
 
   @MockBean private EsDealService esDealService;
 
+  @MockBean private SearchQueryLog searchQueryLog;
+
   @Autowired private JacksonTester<DealPostDTO> json;
 
   @Autowired private MapStructMapperImpl mapStructMapper;
@@ -115,8 +123,8 @@ public class DealControllerTest extends BaseControllerUnitTest {
         .andExpect(jsonPath("$[0].photos", hasSize(deal.getPhotos().size())))
         .andExpect(jsonPath("$[0].dealUrl").value(deal.getDealUrl()))
         .andExpect(jsonPath("$[0].dealScore").value(deal.getDealScore()))
-        .andExpect(jsonPath("$[0].upvoters", hasSize(deal.getUpvoters().size())))
-        .andExpect(jsonPath("$[0].downvoters", hasSize(deal.getDownvoters().size())))
+        .andExpect(jsonPath("$[0].upvotes").value(deal.getUpvotes()))
+        .andExpect(jsonPath("$[0].downvotes").value(deal.getDownvotes()))
         .andExpect(jsonPath("$[0].views").value(deal.getViews()))
         .andExpect(jsonPath("$[0].status").value(deal.getStatus().toString()))
         .andExpect(jsonPath("$[0].createdAt").value(deal.getCreatedAt().toString()))
@@ -215,8 +223,8 @@ public class DealControllerTest extends BaseControllerUnitTest {
         .andExpect(jsonPath("$[0].photos", hasSize(deal.getPhotos().size())))
         .andExpect(jsonPath("$[0].dealUrl").value(deal.getDealUrl()))
         .andExpect(jsonPath("$[0].dealScore").value(deal.getDealScore()))
-        .andExpect(jsonPath("$[0].upvoters", hasSize(deal.getUpvoters().size())))
-        .andExpect(jsonPath("$[0].downvoters", hasSize(deal.getDownvoters().size())))
+        .andExpect(jsonPath("$[0].upvotes").value(deal.getUpvotes()))
+        .andExpect(jsonPath("$[0].downvotes").value(deal.getDownvotes()))
         .andExpect(jsonPath("$[0].views").value(deal.getViews()))
         .andExpect(jsonPath("$[0].status").value(deal.getStatus().toString()))
         .andExpect(jsonPath("$[0].createdAt").value(deal.getCreatedAt().toString()));
@@ -262,8 +270,8 @@ public class DealControllerTest extends BaseControllerUnitTest {
         .andExpect(jsonPath("$[0].photos", hasSize(deal.getPhotos().size())))
         .andExpect(jsonPath("$[0].dealUrl").value(deal.getDealUrl()))
         .andExpect(jsonPath("$[0].dealScore").value(deal.getDealScore()))
-        .andExpect(jsonPath("$[0].upvoters", hasSize(deal.getUpvoters().size())))
-        .andExpect(jsonPath("$[0].downvoters", hasSize(deal.getDownvoters().size())))
+        .andExpect(jsonPath("$[0].upvotes").value(deal.getUpvotes()))
+        .andExpect(jsonPath("$[0].downvotes").value(deal.getDownvotes()))
         .andExpect(jsonPath("$[0].views").value(deal.getViews()))
         .andExpect(jsonPath("$[0].status").value(deal.getStatus().toString()))
         .andExpect(jsonPath("$[0].createdAt").value(deal.getCreatedAt().toString()));
@@ -306,13 +314,66 @@ public class DealControllerTest extends BaseControllerUnitTest {
         .andExpect(jsonPath("$[0].photos", hasSize(deal.getPhotos().size())))
         .andExpect(jsonPath("$[0].dealUrl").value(deal.getDealUrl()))
         .andExpect(jsonPath("$[0].dealScore").value(deal.getDealScore()))
-        .andExpect(jsonPath("$[0].upvoters", hasSize(deal.getUpvoters().size())))
-        .andExpect(jsonPath("$[0].downvoters", hasSize(deal.getDownvoters().size())))
+        .andExpect(jsonPath("$[0].upvotes").value(deal.getUpvotes()))
+        .andExpect(jsonPath("$[0].downvotes").value(deal.getDownvotes()))
         .andExpect(jsonPath("$[0].views").value(deal.getViews()))
         .andExpect(jsonPath("$[0].status").value(deal.getStatus().toString()))
         .andExpect(jsonPath("$[0].createdAt").value(deal.getCreatedAt().toString()));
   }
 
+  @Test
+  @DisplayName("GET /deals/search/latestActive (returns the cursor of the next page)")
+  public void getLatestActiveDealsReturnsNextCursor() throws Exception {
+    var deal = DummyDeals.deal1;
+    var pagedDeals = new PageImpl<>(List.of(deal), PageRequest.of(0, 1), 2);
+    when(dealService.getLatestActiveDeals(any(Pageable.class))).thenReturn(pagedDeals);
+    var request = get("/deals/search/latestActive?size=1");
+
+    mvc.perform(request)
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(header().string(DealCursor.NEXT_CURSOR_HEADER,
+            DealCursor.of(deal, "createdAt").encode()));
+  }
+
+  @Test
+  @DisplayName("GET /deals/search/latestActive?after={cursor}")
+  public void getLatestActiveDealsAfterCursor() throws Exception {
+    var deal = DummyDeals.deal1;
+    var after = DealCursor.of(deal, "createdAt").encode();
+    when(dealService.getLatestActiveDeals(eq(DealCursor.decode(after)), anyInt()))
+        .thenReturn(new SliceImpl<>(List.of(deal)));
+    var request = get("/deals/search/latestActive?after=" + after);
+
+    mvc.perform(request)
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].id").value(deal.getId()))
+        .andExpect(header().doesNotExist(DealCursor.NEXT_CURSOR_HEADER));
+  }
+
+  @Test
+  @DisplayName("GET /deals/search/mostLikedActive?after={cursor} (invalid cursor)")
+  public void getMostLikedActiveDealsRejectsInvalidCursor() throws Exception {
+    var request = get("/deals/search/mostLikedActive?after=invalid");
+
+    mvc.perform(request).andExpect(status().isBadRequest());
+  }
+
+  @Test
+  @DisplayName("GET /deals/search/hot")
+  public void returnsHotDeals() throws Exception {
+    var deal = DummyDeals.deal1;
+    when(dealService.getHotDeals(any(Pageable.class))).thenReturn(List.of(deal));
+    var request = get("/deals/search/hot");
+
+    mvc.perform(request)
+        .andExpect(status().isOk())
+        .andExpect(content().contentType("application/json"))
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].id").value(deal.getId()));
+  }
+
   @Test
   @DisplayName("GET /deals/search/mostLikedActive (returns empty array)")
   public void getMostLikedActiveDealsReturnsEmptyArray() throws Exception {
@@ -350,8 +411,8 @@ public class DealControllerTest extends BaseControllerUnitTest {
         .andExpect(jsonPath("$[0].photos", hasSize(deal.getPhotos().size())))
         .andExpect(jsonPath("$[0].dealUrl").value(deal.getDealUrl()))
         .andExpect(jsonPath("$[0].dealScore").value(deal.getDealScore()))
-        .andExpect(jsonPath("$[0].upvoters", hasSize(deal.getUpvoters().size())))
-        .andExpect(jsonPath("$[0].downvoters", hasSize(deal.getDownvoters().size())))
+        .andExpect(jsonPath("$[0].upvotes").value(deal.getUpvotes()))
+        .andExpect(jsonPath("$[0].downvotes").value(deal.getDownvotes()))
         .andExpect(jsonPath("$[0].views").value(deal.getViews()))
         .andExpect(jsonPath("$[0].status").value(deal.getStatus().toString()))
         .andExpect(jsonPath("$[0].createdAt").value(deal.getCreatedAt().toString()));
@@ -401,6 +462,20 @@ public class DealControllerTest extends BaseControllerUnitTest {
             status().reason(equalTo("Invalid order! Supported order values => [asc, desc]")));
   }
 
+  @Test
+  @DisplayName("GET /deals/searches (unsupported facets)")
+  public void getSearchesValidationFailsDueToUnsupportedFacets() throws Exception {
+    var request = get("/deals/searches?query=max&facets=category,invalid");
+
+    mvc.perform(request)
+        .andExpect(status().isBadRequest())
+        .andExpect(
+            status()
+                .reason(
+                    equalTo(
+                        "Invalid facets! Supported facets values => [category, price, store, type, location, none]")));
+  }
+
   @Test
   @DisplayName("GET /deals/suggestions (missing query)")
   public void getSuggestionsValidationFailsDueToMissingQuery() throws Exception {
@@ -461,8 +536,8 @@ public class DealControllerTest extends BaseControllerUnitTest {
         .andExpect(jsonPath("$.photos", hasSize(deal.getPhotos().size())))
         .andExpect(jsonPath("$.dealUrl").value(deal.getDealUrl()))
         .andExpect(jsonPath("$.dealScore").value(deal.getDealScore()))
-        .andExpect(jsonPath("$.upvoters", hasSize(deal.getUpvoters().size())))
-        .andExpect(jsonPath("$.downvoters", hasSize(deal.getDownvoters().size())))
+        .andExpect(jsonPath("$.upvotes").value(deal.getUpvotes()))
+        .andExpect(jsonPath("$.downvotes").value(deal.getDownvotes()))
         .andExpect(jsonPath("$.views").value(deal.getViews()))
         .andExpect(jsonPath("$.status").value(deal.getStatus().toString()))
         .andExpect(jsonPath("$.createdAt").value(deal.getCreatedAt().toString()));
@@ -514,8 +589,8 @@ public class DealControllerTest extends BaseControllerUnitTest {
         .andExpect(jsonPath("$.photos", hasSize(deal.getPhotos().size())))
         .andExpect(jsonPath("$.dealUrl").value(deal.getDealUrl()))
         .andExpect(jsonPath("$.dealScore").value(deal.getDealScore()))
-        .andExpect(jsonPath("$.upvoters", hasSize(deal.getUpvoters().size())))
-        .andExpect(jsonPath("$.downvoters", hasSize(deal.getDownvoters().size())))
+        .andExpect(jsonPath("$.upvotes").value(deal.getUpvotes()))
+        .andExpect(jsonPath("$.downvotes").value(deal.getDownvotes()))
         .andExpect(jsonPath("$.views").value(deal.getViews()))
         .andExpect(jsonPath("$.status").value(deal.getStatus().toString()))
         .andExpect(jsonPath("$.createdAt").value(deal.getCreatedAt().toString()));
@@ -644,8 +719,8 @@ public class DealControllerTest extends BaseControllerUnitTest {
         .andExpect(jsonPath("$.photos", hasSize(deal.getPhotos().size())))
         .andExpect(jsonPath("$.dealUrl").value(deal.getDealUrl()))
         .andExpect(jsonPath("$.dealScore").value(deal.getDealScore()))
-        .andExpect(jsonPath("$.upvoters", hasSize(deal.getUpvoters().size())))
-        .andExpect(jsonPath("$.downvoters", hasSize(deal.getDownvoters().size())))
+        .andExpect(jsonPath("$.upvotes").value(deal.getUpvotes()))
+        .andExpect(jsonPath("$.downvotes").value(deal.getDownvotes()))
         .andExpect(jsonPath("$.views").value(deal.getViews()))
         .andExpect(jsonPath("$.status").value(deal.getStatus().toString()))
         .andExpect(jsonPath("$.createdAt").value(deal.getCreatedAt().toString()));
@@ -679,8 +754,8 @@ public class DealControllerTest extends BaseControllerUnitTest {
         .andExpect(jsonPath("$.photos", hasSize(deal.getPhotos().size())))
         .andExpect(jsonPath("$.dealUrl").value(deal.getDealUrl()))
         .andExpect(jsonPath("$.dealScore").value(deal.getDealScore()))
-        .andExpect(jsonPath("$.upvoters", hasSize(deal.getUpvoters().size())))
-        .andExpect(jsonPath("$.downvoters", hasSize(deal.getDownvoters().size())))
+        .andExpect(jsonPath("$.upvotes").value(deal.getUpvotes()))
+        .andExpect(jsonPath("$.downvotes").value(deal.getDownvotes()))
         .andExpect(jsonPath("$.views").value(deal.getViews()))
         .andExpect(jsonPath("$.status").value(deal.getStatus().toString()))
         .andExpect(jsonPath("$.createdAt").value(deal.getCreatedAt().toString()));
@@ -1076,8 +1151,8 @@ public class DealControllerTest extends BaseControllerUnitTest {
         .andExpect(jsonPath("$.photos", hasSize(deal.getPhotos().size())))
         .andExpect(jsonPath("$.dealUrl").value(deal.getDealUrl()))
         .andExpect(jsonPath("$.dealScore").value(deal.getDealScore()))
-        .andExpect(jsonPath("$.upvoters", hasSize(deal.getUpvoters().size())))
-        .andExpect(jsonPath("$.downvoters", hasSize(deal.getDownvoters().size())))
+        .andExpect(jsonPath("$.upvotes").value(deal.getUpvotes()))
+        .andExpect(jsonPath("$.downvotes").value(deal.getDownvotes()))
         .andExpect(jsonPath("$.views").value(deal.getViews()))
         .andExpect(jsonPath("$.status").value(deal.getStatus().toString()))
         .andExpect(jsonPath("$.createdAt").value(deal.getCreatedAt().toString()));
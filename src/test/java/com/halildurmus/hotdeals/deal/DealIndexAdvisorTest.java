@@ -0,0 +1,33 @@
+package com.halildurmus.hotdeals.deal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import org.bson.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class DealIndexAdvisorTest {
+
+  @Test
+  @DisplayName("Finds the stages of a classic query plan")
+  public void findsClassicStages() {
+    var plan =
+        Document.parse(
+            "{stage: 'SORT', inputStage: {stage: 'FETCH', inputStage: {stage: 'IXSCAN',"
+                + " indexName: 'status_createdAt'}}}");
+
+    assertEquals(List.of("SORT", "FETCH", "IXSCAN"), DealIndexAdvisor.findStages(plan));
+  }
+
+  @Test
+  @DisplayName("Finds the stages of a slot based query plan")
+  public void findsSlotBasedStages() {
+    var plan =
+        Document.parse(
+            "{queryPlan: {stage: 'OR', inputStages: [{stage: 'COLLSCAN'}, {stage: 'IXSCAN'}]},"
+                + " slotBasedPlan: {slots: '', stages: ''}}");
+
+    assertEquals(List.of("OR", "COLLSCAN", "IXSCAN"), DealIndexAdvisor.findStages(plan));
+  }
+}
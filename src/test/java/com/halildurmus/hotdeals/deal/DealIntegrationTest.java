@@ -92,8 +92,8 @@ public class DealIntegrationTest extends BaseIntegrationTest {
         .andExpect(jsonPath("$.photos", hasSize(deal.getPhotos().size())))
         .andExpect(jsonPath("$.dealUrl").value(deal.getDealUrl()))
         .andExpect(jsonPath("$.dealScore").value(deal.getDealScore()))
-        .andExpect(jsonPath("$.upvoters", hasSize(deal.getUpvoters().size())))
-        .andExpect(jsonPath("$.downvoters", hasSize(deal.getDownvoters().size())))
+        .andExpect(jsonPath("$.upvotes").value(deal.getUpvotes()))
+        .andExpect(jsonPath("$.downvotes").value(deal.getDownvotes()))
         .andExpect(jsonPath("$.views").value(deal.getViews()))
         .andExpect(jsonPath("$.status").value(deal.getStatus().toString()))
         .andExpect(jsonPath("$.createdAt").isNotEmpty());
@@ -143,8 +143,8 @@ public class DealIntegrationTest extends BaseIntegrationTest {
         .andExpect(jsonPath("$[0].photos", hasSize(deal.getPhotos().size())))
         .andExpect(jsonPath("$[0].dealUrl").value(deal.getDealUrl()))
         .andExpect(jsonPath("$[0].dealScore").value(deal.getDealScore()))
-        .andExpect(jsonPath("$[0].upvoters", hasSize(deal.getUpvoters().size())))
-        .andExpect(jsonPath("$[0].downvoters", hasSize(deal.getDownvoters().size())))
+        .andExpect(jsonPath("$[0].upvotes").value(deal.getUpvotes()))
+        .andExpect(jsonPath("$[0].downvotes").value(deal.getDownvotes()))
         .andExpect(jsonPath("$[0].views").value(deal.getViews()))
         .andExpect(jsonPath("$[0].status").value(deal.getStatus().toString()))
         .andExpect(jsonPath("$[0].createdAt").isNotEmpty())
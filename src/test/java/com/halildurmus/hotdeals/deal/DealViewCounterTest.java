@@ -0,0 +1,99 @@
+package com.halildurmus.hotdeals.deal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class DealViewCounterTest {
+
+  private BulkOperations bulkOps;
+
+  private MongoTemplate mongoTemplate;
+
+  private DealViewCounter viewCounter;
+
+  private HotDealRanker hotDealRanker;
+
+  @BeforeEach
+  void setUp() {
+    bulkOps = mock(BulkOperations.class);
+    mongoTemplate = mock(MongoTemplate.class);
+    when(mongoTemplate.bulkOps(BulkMode.UNORDERED, Deal.class)).thenReturn(bulkOps);
+    hotDealRanker = mock(HotDealRanker.class);
+    viewCounter = new DealViewCounter();
+    ReflectionTestUtils.setField(viewCounter, "mongoTemplate", mongoTemplate);
+    ReflectionTestUtils.setField(viewCounter, "hotDealRanker", hotDealRanker);
+  }
+
+  @Test
+  @DisplayName("increment() accumulates pending views per deal")
+  public void incrementAccumulatesPendingViews() {
+    viewCounter.increment("deal1");
+    viewCounter.increment("deal1");
+    viewCounter.increment("deal2");
+
+    assertEquals(2, viewCounter.getPending("deal1"));
+    assertEquals(1, viewCounter.getPending("deal2"));
+    assertEquals(0, viewCounter.getPending("deal3"));
+  }
+
+  @Test
+  @DisplayName("flush() writes all pending views in one bulk operation")
+  public void flushWritesPendingViewsInOneBulkOperation() {
+    viewCounter.increment("deal1");
+    viewCounter.increment("deal1");
+    viewCounter.increment("deal2");
+    viewCounter.flush();
+
+    verify(mongoTemplate, times(1)).bulkOps(BulkMode.UNORDERED, Deal.class);
+    verify(bulkOps, times(2)).updateOne(any(Query.class), any(Update.class));
+    verify(bulkOps, times(1)).execute();
+    verify(hotDealRanker, times(1)).refresh(Set.of("deal1", "deal2"));
+    assertEquals(0, viewCounter.getPending("deal1"));
+    assertEquals(0, viewCounter.getPending("deal2"));
+  }
+
+  @Test
+  @DisplayName("flush() does nothing when there are no pending views")
+  public void flushDoesNothingWithoutPendingViews() {
+    viewCounter.flush();
+
+    verify(mongoTemplate, never()).bulkOps(eq(BulkMode.UNORDERED), eq(Deal.class));
+  }
+
+  @Test
+  @DisplayName("flush() keeps the pending views if the bulk write fails")
+  public void flushKeepsPendingViewsOnFailure() {
+    when(bulkOps.execute()).thenThrow(new RuntimeException("Mongo is down"));
+    viewCounter.increment("deal1");
+    viewCounter.increment("deal1");
+    viewCounter.flush();
+
+    assertEquals(2, viewCounter.getPending("deal1"));
+  }
+
+  @Test
+  @DisplayName("discard() drops the pending views of a deal")
+  public void discardDropsPendingViews() {
+    viewCounter.increment("deal1");
+    viewCounter.discard("deal1");
+
+    assertEquals(0, viewCounter.getPending("deal1"));
+  }
+}
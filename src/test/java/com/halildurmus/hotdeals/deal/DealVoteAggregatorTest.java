@@ -0,0 +1,200 @@
+package com.halildurmus.hotdeals.deal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.halildurmus.hotdeals.deal.vote.Vote;
+import com.halildurmus.hotdeals.deal.vote.VoteRepository;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+class DealVoteAggregatorTest {
+
+  private static final String DEAL_ID = "5fbe790ec6f0b32014074bb2";
+
+  private BulkOperations dealOps;
+
+  private BulkOperations voteOps;
+
+  private MongoTemplate mongoTemplate;
+
+  private DealVoteAggregator voteAggregator;
+
+  private VoteRepository voteRepository;
+
+  private HotDealRanker hotDealRanker;
+
+  @BeforeEach
+  void setUp() {
+    dealOps = mock(BulkOperations.class);
+    voteOps = mock(BulkOperations.class);
+    mongoTemplate = mock(MongoTemplate.class);
+    voteRepository = mock(VoteRepository.class);
+    hotDealRanker = mock(HotDealRanker.class);
+    when(mongoTemplate.bulkOps(BulkMode.UNORDERED, Deal.class)).thenReturn(dealOps);
+    when(mongoTemplate.bulkOps(BulkMode.UNORDERED, Vote.class)).thenReturn(voteOps);
+    voteAggregator = new DealVoteAggregator();
+    ReflectionTestUtils.setField(voteAggregator, "mongoTemplate", mongoTemplate);
+    ReflectionTestUtils.setField(voteAggregator, "voteRepository", voteRepository);
+    ReflectionTestUtils.setField(voteAggregator, "hotDealRanker", hotDealRanker);
+    var transactionTemplate = mock(TransactionTemplate.class);
+    doAnswer(invocation -> {
+          invocation.<Consumer<TransactionStatus>>getArgument(0)
+              .accept(mock(TransactionStatus.class));
+          return null;
+        })
+        .when(transactionTemplate)
+        .executeWithoutResult(any());
+    ReflectionTestUtils.setField(voteAggregator, "transactionTemplate", transactionTemplate);
+  }
+
+  private void storeVotes(Vote... votes) {
+    when(mongoTemplate.find(any(Query.class), eq(Vote.class))).thenReturn(List.of(votes));
+  }
+
+  private static Vote vote(ObjectId userId, DealVoteType type) {
+    return Vote.builder().dealId(new ObjectId(DEAL_ID)).userId(userId).type(type).build();
+  }
+
+  @Test
+  @DisplayName("getVote() returns the latest pending vote before the persisted one")
+  public void getVoteReturnsPendingVote() {
+    var userId = new ObjectId();
+    when(voteRepository.findByDealIdAndUserId(any(ObjectId.class), eq(userId)))
+        .thenReturn(Optional.of(Vote.builder().type(DealVoteType.DOWN).build()));
+
+    assertEquals(DealVoteType.DOWN, voteAggregator.getVote(DEAL_ID, userId));
+    voteAggregator.add(DEAL_ID, userId, DealVoteType.DOWN, DealVoteType.UP);
+    assertEquals(DealVoteType.UP, voteAggregator.getVote(DEAL_ID, userId));
+  }
+
+  @Test
+  @DisplayName("getVotes() merges pending and persisted votes")
+  public void getVotesMergesPendingAndPersistedVotes() {
+    var userId = new ObjectId();
+    var otherDealId = "5fbe790ec6f0b32014074bb3";
+    when(voteRepository.findAllByUserIdAndDealIdIn(eq(userId), anyList()))
+        .thenReturn(
+            List.of(
+                Vote.builder()
+                    .dealId(new ObjectId(otherDealId))
+                    .userId(userId)
+                    .type(DealVoteType.DOWN)
+                    .build()));
+    voteAggregator.add(DEAL_ID, userId, DealVoteType.UNVOTE, DealVoteType.UP);
+
+    var votes = voteAggregator.getVotes(userId, List.of(DEAL_ID, otherDealId));
+
+    assertEquals(Map.of(DEAL_ID, DealVoteType.UP, otherDealId, DealVoteType.DOWN), votes);
+  }
+
+  @Test
+  @DisplayName("applyPending() applies the pending votes to the vote counters")
+  public void applyPendingAppliesPendingVotes() {
+    var deal = Deal.builder().id(DEAL_ID).upvotes(0).downvotes(1).dealScore(-1).build();
+    var user1 = new ObjectId();
+    var user2 = new ObjectId();
+    voteAggregator.add(DEAL_ID, user1, DealVoteType.DOWN, DealVoteType.UNVOTE);
+    voteAggregator.add(DEAL_ID, user1, DealVoteType.UNVOTE, DealVoteType.UP);
+    voteAggregator.add(DEAL_ID, user2, DealVoteType.UNVOTE, DealVoteType.DOWN);
+    voteAggregator.applyPending(deal);
+
+    assertEquals(1, deal.getUpvotes());
+    assertEquals(1, deal.getDownvotes());
+    assertEquals(0, deal.getDealScore());
+  }
+
+  @Test
+  @DisplayName("flush() writes the votes and the counters in bulk")
+  public void flushWritesVotesAndCountersInBulk() {
+    var unvoter = new ObjectId();
+    storeVotes(vote(unvoter, DealVoteType.UP));
+    voteAggregator.add(DEAL_ID, new ObjectId(), DealVoteType.UNVOTE, DealVoteType.UP);
+    voteAggregator.add(DEAL_ID, unvoter, DealVoteType.UP, DealVoteType.UNVOTE);
+    voteAggregator.add(DEAL_ID, new ObjectId(), DealVoteType.UNVOTE, DealVoteType.DOWN);
+    voteAggregator.flush();
+
+    verify(voteOps, times(2)).upsert(any(Query.class), any(Update.class));
+    verify(voteOps, times(1)).remove(any(Query.class));
+    verify(voteOps, times(1)).execute();
+    verify(dealOps, times(1)).updateOne(any(Query.class), any(Update.class));
+    verify(dealOps, times(1)).execute();
+    verify(hotDealRanker, times(1)).refresh(Set.of(DEAL_ID));
+  }
+
+  @Test
+  @DisplayName("flush() skips votes that ended up unchanged")
+  public void flushSkipsUnchangedVotes() {
+    var userId = new ObjectId();
+    storeVotes(vote(userId, DealVoteType.UP));
+    voteAggregator.add(DEAL_ID, userId, DealVoteType.UP, DealVoteType.UNVOTE);
+    voteAggregator.add(DEAL_ID, userId, DealVoteType.UNVOTE, DealVoteType.UP);
+    voteAggregator.flush();
+
+    verify(voteOps, never()).execute();
+    verify(dealOps, never()).execute();
+  }
+
+  @Test
+  @DisplayName("flush() doesn't count the votes that are already stored twice")
+  public void flushCountsFromStoredVotes() {
+    var userId = new ObjectId();
+    var otherUserId = new ObjectId();
+    // A previous flush was committed although it reported a failure
+    storeVotes(vote(userId, DealVoteType.UP));
+    voteAggregator.add(DEAL_ID, userId, DealVoteType.UNVOTE, DealVoteType.UP);
+    voteAggregator.add(DEAL_ID, otherUserId, DealVoteType.UNVOTE, DealVoteType.DOWN);
+    voteAggregator.flush();
+
+    verify(voteOps, times(1)).upsert(any(Query.class), any(Update.class));
+    verify(dealOps)
+        .updateOne(
+            any(Query.class),
+            eq(new Update().inc("upvotes", 0).inc("downvotes", 1).inc("dealScore", -1)));
+  }
+
+  @Test
+  @DisplayName("flush() does nothing when there are no pending votes")
+  public void flushDoesNothingWithoutPendingVotes() {
+    voteAggregator.flush();
+
+    verify(mongoTemplate, never()).bulkOps(eq(BulkMode.UNORDERED), eq(Deal.class));
+  }
+
+  @Test
+  @DisplayName("flush() keeps the pending votes if the bulk write fails")
+  public void flushKeepsPendingVotesOnFailure() {
+    when(voteOps.execute()).thenThrow(new RuntimeException("Mongo is down"));
+    var userId = new ObjectId();
+    voteAggregator.add(DEAL_ID, userId, DealVoteType.UNVOTE, DealVoteType.UP);
+    voteAggregator.flush();
+
+    var deal = voteAggregator.applyPending(Deal.builder().id(DEAL_ID).build());
+    assertEquals(1, deal.getUpvotes());
+    assertEquals(1, deal.getDealScore());
+    assertEquals(DealVoteType.UP, voteAggregator.getVote(DEAL_ID, userId));
+  }
+}
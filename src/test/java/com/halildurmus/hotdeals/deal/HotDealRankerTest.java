@@ -0,0 +1,126 @@
+package com.halildurmus.hotdeals.deal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.stream.Stream;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class HotDealRankerTest {
+
+  private static final Instant NOW = Instant.parse("2024-07-01T12:00:00Z");
+
+  private HotDealProperties properties;
+
+  private ZSetOperations<String, String> zSetOperations;
+
+  private StringRedisTemplate redisTemplate;
+
+  private HotDealRanker hotDealRanker;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    properties = new HotDealProperties();
+    properties.setMaxSize(100);
+    redisTemplate = mock(StringRedisTemplate.class);
+    zSetOperations = mock(ZSetOperations.class);
+    when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+    hotDealRanker = new HotDealRanker();
+    ReflectionTestUtils.setField(hotDealRanker, "redisTemplate", redisTemplate);
+    ReflectionTestUtils.setField(hotDealRanker, "properties", properties);
+  }
+
+  private static Deal createDeal(int dealScore, int views, Instant createdAt) {
+    var deal = Deal.builder().dealScore(dealScore).views(views).build();
+    deal.setCreatedAt(createdAt);
+    return deal;
+  }
+
+  @Test
+  @DisplayName("A newer deal outranks an older deal with the same votes")
+  public void newerDealRanksHigher() {
+    var older = createDeal(10, 100, NOW.minusSeconds(3600));
+    var newer = createDeal(10, 100, NOW);
+
+    assertTrue(hotDealRanker.score(newer) > hotDealRanker.score(older));
+  }
+
+  @Test
+  @DisplayName("Ten times the deal score outweighs one decay period of age")
+  public void tenTimesTheDealScoreWeighsOneDecayPeriod() {
+    var older = createDeal(100, 0, NOW.minus(properties.getDecay()));
+    var newer = createDeal(10, 0, NOW);
+
+    assertEquals(hotDealRanker.score(newer), hotDealRanker.score(older), 1e-9);
+  }
+
+  @Test
+  @DisplayName("A downvoted deal ranks below a deal without votes")
+  public void downvotedDealRanksLower() {
+    var downvoted = createDeal(-10, 0, NOW);
+    var unvoted = createDeal(0, 0, NOW);
+
+    assertTrue(hotDealRanker.score(downvoted) < hotDealRanker.score(unvoted));
+  }
+
+  @Test
+  @DisplayName("getHotDealIds() reads the requested range of the ranking")
+  public void getHotDealIdsReadsRange() {
+    var ids = new LinkedHashSet<>(List.of("deal2", "deal1"));
+    when(zSetOperations.reverseRange(HotDealRanker.KEY, 90, 99)).thenReturn(ids);
+
+    assertEquals(List.of("deal2", "deal1"), hotDealRanker.getHotDealIds(PageRequest.of(3, 30)));
+    assertEquals(List.of(), hotDealRanker.getHotDealIds(PageRequest.of(4, 30)));
+    // Pages past the end of the ranking don't hit Redis
+    verify(zSetOperations, times(1)).reverseRange(anyString(), anyLong(), anyLong());
+  }
+
+  @Test
+  @DisplayName("rebuild() refreshes the deals saved during the rebuild after the swap")
+  public void rebuildRefreshesDealsSavedMeanwhile() {
+    var mongoTemplate = mock(MongoTemplate.class);
+    ReflectionTestUtils.setField(hotDealRanker, "mongoTemplate", mongoTemplate);
+    var streamed = createDeal(10, 0, NOW);
+    streamed.setId("streamed");
+    streamed.setStatus(DealStatus.ACTIVE);
+    var saved = createDeal(20, 0, NOW);
+    saved.setId("saved");
+    saved.setStatus(DealStatus.ACTIVE);
+    when(mongoTemplate.stream(any(Query.class), eq(Deal.class)))
+        .thenAnswer(invocation -> {
+          // Saved while the deals are streamed, after the copy read it
+          hotDealRanker.onAfterSave(new AfterSaveEvent<>(saved, new Document(), "deals"));
+          return Stream.of(streamed);
+        });
+    when(mongoTemplate.find(any(Query.class), eq(Deal.class))).thenReturn(List.of(saved));
+
+    hotDealRanker.rebuild();
+
+    var inOrder = inOrder(redisTemplate, mongoTemplate);
+    inOrder.verify(redisTemplate).rename(HotDealRanker.KEY + ":rebuild", HotDealRanker.KEY);
+    inOrder.verify(mongoTemplate).find(any(Query.class), eq(Deal.class));
+  }
+}
@@ -3,7 +3,6 @@ package com.halildurmus.hotdeals.deal.dummy;
 import com.halildurmus.hotdeals.deal.Deal;
 import com.halildurmus.hotdeals.deal.DealStatus;
 import java.time.Instant;
-import java.util.HashSet;
 import java.util.List;
 import org.bson.types.ObjectId;
 
@@ -26,8 +25,8 @@ public class DummyDeals {
           .category("/electronics")
           .coverPhoto("http://www.gravatar.com/avatar")
           .dealUrl("https://www.amazon.com/item")
-          .upvoters(new HashSet<>(List.of()))
-          .downvoters(new HashSet<>(List.of()))
+          .upvotes(0)
+          .downvotes(0)
           .createdAt(Instant.now())
           .updatedAt(Instant.now())
           .build();
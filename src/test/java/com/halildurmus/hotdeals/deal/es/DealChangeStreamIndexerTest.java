@@ -0,0 +1,75 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import java.util.List;
+import java.util.Set;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class DealChangeStreamIndexerTest {
+
+  private static ChangeStreamDocument<Document> createChange(
+      OperationType operationType, UpdateDescription updateDescription) {
+    return new ChangeStreamDocument<>(
+        operationType.getValue(),
+        new BsonDocument(),
+        null,
+        null,
+        null,
+        null,
+        new BsonDocument("_id", new BsonObjectId()),
+        null,
+        updateDescription,
+        null,
+        null,
+        null,
+        null,
+        null);
+  }
+
+  private static UpdateDescription update(String updatedFields, String... removedFields) {
+    return new UpdateDescription(List.of(removedFields), BsonDocument.parse(updatedFields));
+  }
+
+  @Test
+  @DisplayName("Inserts, replacements and deletes are indexed in full")
+  public void indexesWholeDocumentChanges() {
+    assertNull(DealChangeStreamIndexer.changedFields(createChange(OperationType.INSERT, null)));
+    assertNull(DealChangeStreamIndexer.changedFields(createChange(OperationType.REPLACE, null)));
+    assertNull(DealChangeStreamIndexer.changedFields(createChange(OperationType.DELETE, null)));
+  }
+
+  @Test
+  @DisplayName("Updates of the views and the votes only are skipped")
+  public void skipsUnindexedUpdates() {
+    var views = update("{views: 12}");
+    var votes = update("{upvotes: 3, dealScore: 2, 'upvoters.3': 'x'}", "downvoters");
+
+    assertEquals(
+        Set.of(), DealChangeStreamIndexer.changedFields(createChange(OperationType.UPDATE, views)));
+    assertEquals(
+        Set.of(), DealChangeStreamIndexer.changedFields(createChange(OperationType.UPDATE, votes)));
+  }
+
+  @Test
+  @DisplayName("Updates only ship the fields derived from the updated fields")
+  public void shipsDerivedFieldsOfUpdates() {
+    var status = update("{views: 12, status: 'EXPIRED'}");
+    var removal = update("{}", "buildingId");
+
+    assertEquals(
+        Set.of("status"),
+        DealChangeStreamIndexer.changedFields(createChange(OperationType.UPDATE, status)));
+    assertEquals(
+        Set.of("buildingId", "stringFacets"),
+        DealChangeStreamIndexer.changedFields(createChange(OperationType.UPDATE, removal)));
+  }
+}
@@ -0,0 +1,117 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.halildurmus.hotdeals.deal.Deal;
+import com.halildurmus.hotdeals.deal.dummy.DummyDeals;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class DealOutboxRelayTest {
+
+  private MongoTemplate mongoTemplate;
+
+  private BulkOperations bulkOps;
+
+  private EsDealWriter esDealWriter;
+
+  private DealOutboxRelay relay;
+
+  @BeforeEach
+  void setUp() {
+    mongoTemplate = mock(MongoTemplate.class);
+    bulkOps = mock(BulkOperations.class);
+    when(mongoTemplate.bulkOps(BulkMode.UNORDERED, DealOutboxEvent.class)).thenReturn(bulkOps);
+    esDealWriter = mock(EsDealWriter.class);
+    relay = new DealOutboxRelay();
+    ReflectionTestUtils.setField(relay, "mongoTemplate", mongoTemplate);
+    ReflectionTestUtils.setField(relay, "esDealWriter", esDealWriter);
+    ReflectionTestUtils.setField(relay, "properties", new DealOutboxProperties());
+  }
+
+  private static DealOutboxEvent createEvent(String dealId, Set<String> fields) {
+    var event = new DealOutboxEvent(dealId, DealOutboxEvent.Type.UPSERT, fields);
+    event.setId(new ObjectId());
+    return event;
+  }
+
+  @Test
+  @DisplayName("The backoff doubles on every attempt up to the maximum")
+  public void backoffDoublesUpToMaximum() {
+    assertEquals(Duration.ofSeconds(1), relay.backoff(1));
+    assertEquals(Duration.ofSeconds(8), relay.backoff(4));
+    assertEquals(Duration.ofMinutes(5), relay.backoff(100));
+  }
+
+  @Test
+  @DisplayName("relayBatch() ships the latest state of the deals and retries the failures")
+  public void relayBatchShipsDealsAndRetriesFailures() throws Exception {
+    var deal = DummyDeals.deal1;
+    var failingDeal = Deal.builder().id("failing").build();
+    var events =
+        List.of(
+            createEvent(deal.getId(), Set.of("status")),
+            createEvent("deleted", null),
+            createEvent(deal.getId(), Set.of("title")),
+            createEvent("failing", null));
+    when(mongoTemplate.find(any(Query.class), eq(DealOutboxEvent.class))).thenReturn(events);
+    when(mongoTemplate.find(any(Query.class), eq(Deal.class)))
+        .thenReturn(List.of(deal, failingDeal));
+    // The changed fields of the events of a deal are merged
+    var changedFields = Map.of(deal.getId(), Set.of("status", "title"));
+    when(esDealWriter.write(List.of(deal, failingDeal), changedFields, List.of("deleted")))
+        .thenReturn(Map.of("failing", new EsDealWriter.Failure("Failed to convert", false)));
+
+    assertEquals(4, relay.relayBatch());
+
+    // The failed deal is retried, the others are removed from the outbox
+    verify(bulkOps, times(2)).remove(any(Query.class));
+    verify(bulkOps).updateMulti(any(Query.class), any(Update.class));
+    verify(bulkOps).execute();
+  }
+
+  @Test
+  @DisplayName("relayBatch() only removes the events it has read")
+  public void relayBatchOnlyRemovesReadEvents() throws Exception {
+    var deal = DummyDeals.deal1;
+    var first = createEvent(deal.getId(), Set.of("status"));
+    var second = createEvent(deal.getId(), Set.of("title"));
+    when(mongoTemplate.find(any(Query.class), eq(DealOutboxEvent.class)))
+        .thenReturn(List.of(first, second));
+    when(mongoTemplate.find(any(Query.class), eq(Deal.class))).thenReturn(List.of(deal));
+    when(esDealWriter.write(any(), any(), any())).thenReturn(Map.of());
+
+    relay.relayBatch();
+
+    // An event with a lower ID committed after the read must stay in the outbox
+    verify(bulkOps)
+        .remove(
+            argThat(
+                (Query query) ->
+                    query.getQueryObject()
+                        .equals(
+                            new Document(
+                                "_id",
+                                new Document("$in", List.of(first.getId(), second.getId()))))));
+  }
+}
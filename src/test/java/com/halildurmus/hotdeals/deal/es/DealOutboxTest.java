@@ -0,0 +1,61 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.halildurmus.hotdeals.deal.dummy.DummyDeals;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class DealOutboxTest {
+
+  private MongoTemplate mongoTemplate;
+
+  private EsDealWriter esDealWriter;
+
+  private DealOutbox dealOutbox;
+
+  @BeforeEach
+  void setUp() {
+    mongoTemplate = mock(MongoTemplate.class);
+    esDealWriter = mock(EsDealWriter.class);
+    dealOutbox = new DealOutbox();
+    ReflectionTestUtils.setField(dealOutbox, "mongoTemplate", mongoTemplate);
+    ReflectionTestUtils.setField(dealOutbox, "esDealWriter", esDealWriter);
+    ReflectionTestUtils.setField(dealOutbox, "properties", new EsSyncProperties());
+  }
+
+  @Test
+  @DisplayName("upserted() records the changed indexed fields of an update")
+  public void upsertedRecordsChangedFields() {
+    var deal = DummyDeals.deal1;
+    when(esDealWriter.toDocument(deal)).thenReturn(Map.of("title", "HDD", "status", "ACTIVE"));
+
+    dealOutbox.upserted(deal, Map.of("title", "HDD", "status", "PENDING"));
+
+    var events = ArgumentCaptor.forClass(DealOutboxEvent.class);
+    verify(mongoTemplate).insert(events.capture());
+    assertEquals(Set.of("status"), events.getValue().getFields());
+  }
+
+  @Test
+  @DisplayName("upserted() records nothing if no indexed field has changed")
+  public void upsertedSkipsUnchangedDeals() {
+    var deal = DummyDeals.deal1;
+    when(esDealWriter.toDocument(deal)).thenReturn(Map.of("title", "HDD"));
+
+    dealOutbox.upserted(deal, Map.of("title", "HDD"));
+
+    verify(mongoTemplate, never()).insert(any(DealOutboxEvent.class));
+  }
+}
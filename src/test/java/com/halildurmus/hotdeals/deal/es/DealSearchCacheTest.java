@@ -0,0 +1,141 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.halildurmus.hotdeals.deal.DealSearchParams;
+import com.halildurmus.hotdeals.deal.PriceRange;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class DealSearchCacheTest {
+
+  private DealSearchCache searchCache;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    var redisTemplate = mock(StringRedisTemplate.class);
+    when(redisTemplate.opsForValue()).thenReturn(mock(ValueOperations.class));
+    searchCache = new DealSearchCache();
+    ReflectionTestUtils.setField(searchCache, "cacheManager", new ConcurrentMapCacheManager());
+    ReflectionTestUtils.setField(searchCache, "redisTemplate", redisTemplate);
+  }
+
+  @Test
+  @DisplayName("The key ignores the case and whitespace of the query and the order of the filters")
+  public void createKeyNormalizesSearchParams() {
+    var pageable = PageRequest.of(1, 20);
+    var searchParams =
+        DealSearchParams.builder()
+            .query(" iPhone   15 ")
+            .stores(List.of("store2", "store1"))
+            .prices(
+                List.of(
+                    PriceRange.builder().from(100.0).build(),
+                    PriceRange.builder().from(0.0).to(10.0).build()))
+            .build();
+    var sameSearch =
+        DealSearchParams.builder()
+            .query("iphone 15")
+            .stores(List.of("store1", "store2"))
+            .prices(
+                List.of(
+                    PriceRange.builder().from(0.0).to(10.0).build(),
+                    PriceRange.builder().from(100.0).build()))
+            .hideExpired(false)
+            .build();
+
+    assertEquals(
+        DealSearchCache.createKey(searchParams, pageable),
+        DealSearchCache.createKey(sameSearch, pageable));
+    assertNotEquals(
+        DealSearchCache.createKey(searchParams, pageable),
+        DealSearchCache.createKey(searchParams, PageRequest.of(2, 20)));
+  }
+
+  @Test
+  @DisplayName("The key tells apart the filter values that only differ in their separators")
+  public void createKeyKeepsFilterValuesApart() {
+    var pageable = PageRequest.of(0, 20);
+    var joined = DealSearchParams.builder().stores(List.of("a, b")).build();
+    var split = DealSearchParams.builder().stores(List.of("a", "b")).build();
+    var padded = DealSearchParams.builder().stores(List.of(" a")).build();
+    var trimmed = DealSearchParams.builder().stores(List.of("a")).build();
+
+    assertNotEquals(
+        DealSearchCache.createKey(joined, pageable), DealSearchCache.createKey(split, pageable));
+    // The values are matched exactly by the term filters
+    assertNotEquals(
+        DealSearchCache.createKey(padded, pageable), DealSearchCache.createKey(trimmed, pageable));
+  }
+
+  @Test
+  @DisplayName("Concurrent misses of the same search run it once")
+  public void concurrentMissesRunSearchOnce() throws Exception {
+    var searchParams = DealSearchParams.builder().query("laptop").build();
+    var pageable = PageRequest.of(0, 20);
+    var result = DealSearchResponse.builder().total(1).build();
+    var searches = new AtomicInteger();
+    var started = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var first =
+          executor.submit(
+              () ->
+                  searchCache.get(
+                      searchParams,
+                      pageable,
+                      () -> {
+                        searches.incrementAndGet();
+                        started.countDown();
+                        await(release);
+                        return result;
+                      }));
+      started.await();
+      var others = new ArrayList<Future<DealSearchResponse>>();
+      for (var i = 0; i < 10; i++) {
+        others.add(
+            executor.submit(
+                () ->
+                    searchCache.get(
+                        searchParams,
+                        pageable,
+                        () -> {
+                          searches.incrementAndGet();
+                          return result;
+                        })));
+      }
+      release.countDown();
+
+      assertEquals(result, first.get());
+      for (var other : others) {
+        assertEquals(result, other.get());
+      }
+    }
+    assertEquals(1, searches.get());
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.halildurmus.hotdeals.deal.Deal;
+import com.halildurmus.hotdeals.deal.DealStatus;
+import com.halildurmus.hotdeals.deal.SearchSuggestion;
+import com.halildurmus.hotdeals.deal.es.SearchQueryStats.QueryCount;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class DealSuggestionIndexTest {
+
+  private static final Deal hdd =
+      deal("1", "12TB WD My Book Desktop External HDD", DealStatus.ACTIVE, 10);
+
+  private static final Deal camera =
+      deal("2", "Appareil photo réflex numérique", DealStatus.ACTIVE, 3);
+
+  private static final Deal expiredBook =
+      deal("3", "Book light, rechargeable", DealStatus.EXPIRED, 50);
+
+  private static final Deal popularBook =
+      deal("4", "Bookshelf speakers", DealStatus.ACTIVE, 20);
+
+  private MongoTemplate mongoTemplate;
+
+  private SearchQueryLog searchQueryLog;
+
+  private DealSuggestionIndex suggestionIndex;
+
+  @BeforeEach
+  void setUp() {
+    mongoTemplate = mock(MongoTemplate.class);
+    when(mongoTemplate.stream(any(Query.class), eq(Deal.class)))
+        .thenReturn(Stream.of(hdd, camera, expiredBook, popularBook));
+    searchQueryLog = mock(SearchQueryLog.class);
+    suggestionIndex = new DealSuggestionIndex();
+    ReflectionTestUtils.setField(suggestionIndex, "searchQueryLog", searchQueryLog);
+    ReflectionTestUtils.setField(suggestionIndex, "mongoTemplate", mongoTemplate);
+    ReflectionTestUtils.setField(suggestionIndex, "redisTemplate", mock(StringRedisTemplate.class));
+    ReflectionTestUtils.setField(suggestionIndex, "searchProperties", new DealSearchProperties());
+  }
+
+  private static Deal deal(String id, String title, DealStatus status, int dealScore) {
+    return Deal.builder().id(id).title(title).status(status).dealScore(dealScore).build();
+  }
+
+  private List<String> suggestIds(String query) {
+    return suggestionIndex.suggest(query, 5).stream()
+        .map(SearchSuggestion::getId)
+        .filter(Objects::nonNull)
+        .toList();
+  }
+
+  @Test
+  @DisplayName("Returns null until the index is built")
+  public void returnsNullBeforeBuild() {
+    assertNull(suggestionIndex.suggest("book", 5));
+  }
+
+  @Test
+  @DisplayName("Matches a prefix of any word, ranking the active deals first, then by score")
+  public void matchesWordPrefixes() {
+    suggestionIndex.rebuild();
+
+    assertEquals(List.of("4", "1", "3"), suggestIds("book"));
+    assertEquals(List.of("1"), suggestIds("My  Book d"));
+    assertEquals(List.of("4", "1"), suggestionIndex.suggest("book", 2).stream()
+        .map(SearchSuggestion::getId).toList());
+  }
+
+  @Test
+  @DisplayName("Ignores the case, the accents and the punctuation")
+  public void foldsQueries() {
+    suggestionIndex.rebuild();
+
+    assertEquals(List.of("2"), suggestIds("REFLEX"));
+    assertEquals(List.of("3"), suggestIds("light rechar"));
+    assertEquals(List.of(), suggestIds("?!"));
+  }
+
+  @Test
+  @DisplayName("Suggests the most searched queries completing the query ahead of the deals")
+  public void suggestsPopularQueries() {
+    when(searchQueryLog.getPopularQueries(any(Duration.class), anyInt()))
+        .thenReturn(List.of(
+            new QueryCount("book", 100), new QueryCount("bookshelf speakers", 40),
+            new QueryCount("book light", 25), new QueryCount("Book-light!", 20),
+            new QueryCount("camera", 90)));
+    suggestionIndex.rebuild();
+
+    var suggestions = suggestionIndex.suggest("book", 5);
+
+    // The query itself isn't suggested, and the queries that only differ by punctuation are merged
+    assertEquals(
+        List.of(
+            SearchSuggestion.builder().title("book light").build(),
+            SearchSuggestion.builder().title("bookshelf speakers").build()),
+        suggestions.subList(0, 2));
+    assertEquals(List.of("4", "1", "3"),
+        suggestions.subList(2, 5).stream().map(SearchSuggestion::getId).toList());
+    assertEquals(List.of("4"), suggestionIndex.suggest("book", 3).subList(2, 3).stream()
+        .map(SearchSuggestion::getId).toList());
+  }
+
+  @Test
+  @DisplayName("Applies the saved and the deleted deals")
+  public void appliesChanges() {
+    suggestionIndex.rebuild();
+
+    var renamed = deal("4", "Soundbar", DealStatus.ACTIVE, 20);
+    suggestionIndex.onAfterSave(new AfterSaveEvent<>(renamed, new Document(), "deals"));
+    suggestionIndex.onAfterDelete(
+        new AfterDeleteEvent<>(new Document("_id", "1"), Deal.class, "deals"));
+
+    assertEquals(List.of("3"), suggestIds("book"));
+    assertEquals(List.of("4"), suggestIds("sound"));
+  }
+
+  @Test
+  @DisplayName("Reloads the deals changed on the other nodes")
+  public void appliesRemoteChanges() {
+    suggestionIndex.rebuild();
+    when(mongoTemplate.findOne(any(Query.class), eq(Deal.class))).thenReturn(null);
+
+    suggestionIndex.onChange("another-node|4");
+    // The changes published by this node are already applied
+    suggestionIndex.onChange(ReflectionTestUtils.getField(suggestionIndex, "nodeId") + "|1");
+
+    assertEquals(List.of("1", "3"), suggestIds("book"));
+  }
+}
@@ -0,0 +1,97 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.indices.ElasticsearchIndicesClient;
+import com.halildurmus.hotdeals.deal.Deal;
+import java.util.function.Function;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+class EsDealReindexerTest {
+
+  private MongoTemplate mongoTemplate;
+
+  private ElasticsearchOperations elasticsearchOperations;
+
+  private ElasticsearchIndicesClient indicesClient;
+
+  private EsDealReindexer esDealReindexer;
+
+  @BeforeEach
+  void setUp() {
+    mongoTemplate = mock(MongoTemplate.class);
+    elasticsearchOperations = mock(ElasticsearchOperations.class);
+    var esClient = mock(ElasticsearchClient.class);
+    indicesClient = mock(ElasticsearchIndicesClient.class);
+    when(esClient.indices()).thenReturn(indicesClient);
+    esDealReindexer = new EsDealReindexer();
+    ReflectionTestUtils.setField(esDealReindexer, "mongoTemplate", mongoTemplate);
+    ReflectionTestUtils.setField(esDealReindexer, "elasticsearchOperations", elasticsearchOperations);
+    ReflectionTestUtils.setField(esDealReindexer, "esClient", esClient);
+    ReflectionTestUtils.setField(esDealReindexer, "properties", new EsSyncProperties());
+  }
+
+  @Test
+  @DisplayName("Rejects a reindex while another one is running on any node")
+  public void rejectsConcurrentReindex() {
+    // The upsert inserts a second reindex record if an unexpired one exists
+    when(mongoTemplate.upsert(any(Query.class), any(Update.class), eq(EsSyncLease.COLLECTION)))
+        .thenThrow(new DuplicateKeyException("E11000 duplicate key error"));
+
+    var exception = assertThrows(ResponseStatusException.class, esDealReindexer::reindex);
+
+    assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
+    verifyNoInteractions(elasticsearchOperations);
+  }
+
+  @Test
+  @DisplayName("Deletes the new index if the reindex fails before the alias swap")
+  @SuppressWarnings("unchecked")
+  public void deletesNewIndexOnFailure() throws Exception {
+    when(elasticsearchOperations.indexOps(any(IndexCoordinates.class)))
+        .thenThrow(new IllegalStateException("Connection refused"));
+
+    var exception = assertThrows(ResponseStatusException.class, esDealReindexer::reindex);
+
+    assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getStatusCode());
+    verify(indicesClient).delete(any(Function.class));
+    // A failed reindex doesn't block the next one
+    exception = assertThrows(ResponseStatusException.class, esDealReindexer::reindex);
+    assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getStatusCode());
+  }
+
+  @Test
+  @DisplayName("Records the deleted deals in the reindex record")
+  public void recordsDeletedDeals() {
+    esDealReindexer.onAfterDelete(
+        new AfterDeleteEvent<>(new Document("_id", "1"), Deal.class, "deals"));
+
+    var update = ArgumentCaptor.forClass(Update.class);
+    verify(mongoTemplate)
+        .updateFirst(any(Query.class), update.capture(), eq(EsSyncLease.COLLECTION));
+    assertEquals(new Document("deletedIds", "1"),
+        update.getValue().getUpdateObject().get("$addToSet"));
+  }
+}
@@ -0,0 +1,114 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import com.halildurmus.hotdeals.deal.DealSearchParams;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+class EsDealServiceImplTest {
+
+  private EsDealServiceImpl esDealService;
+
+  @BeforeEach
+  void setUp() {
+    esDealService = new EsDealServiceImpl();
+    ReflectionTestUtils.setField(esDealService, "facetQueryBuilder", new FlatFacetQueryBuilder());
+    ReflectionTestUtils.setField(esDealService, "searchProperties", new DealSearchProperties());
+  }
+
+  @Test
+  @DisplayName("Only the requested facets with a filter get their own aggregation")
+  public void addsFacetAggregationsOnlyForFilteredFacets() {
+    var searchParams =
+        DealSearchParams.builder()
+            .query("iphone")
+            .categories(List.of("/computers"))
+            .stores(List.of("store1"))
+            .facets(List.of("category", "type"))
+            .build();
+
+    var request = esDealService.createSearchRequest(searchParams, PageRequest.of(0, 20)).build();
+
+    assertEquals(Set.of("aggAllFilters", "aggCategory"), request.aggregations().keySet());
+    assertEquals(
+        Set.of("category", "type"),
+        request.aggregations().get("aggAllFilters").aggregations().keySet());
+    // The store isn't counted, so its filter is applied by the query
+    assertEquals(1, request.query().bool().filter().size());
+    assertEquals(1, request.postFilter().bool().filter().size());
+    // The category is counted without its own filter
+    assertTrue(request.aggregations().get("aggCategory").filter().bool().filter().isEmpty());
+  }
+
+  @Test
+  @DisplayName("A search without facets has no aggregations and no post filter")
+  public void searchWithoutFacets() {
+    var searchParams =
+        DealSearchParams.builder()
+            .query("iphone")
+            .categories(List.of("/computers"))
+            .facets(List.of())
+            .build();
+
+    var request = esDealService.createSearchRequest(searchParams, PageRequest.of(0, 20)).build();
+
+    assertTrue(request.aggregations().isEmpty());
+    assertNull(request.postFilter());
+    assertEquals(1, request.query().bool().filter().size());
+  }
+
+  @Test
+  @DisplayName("Pages are searched from their offset, with a deterministic sort")
+  public void searchesPageFromOffset() {
+    var searchParams = DealSearchParams.builder().query("iphone").sortBy("price").order("asc").build();
+
+    var request = esDealService.createSearchRequest(searchParams, PageRequest.of(2, 20)).build();
+
+    assertEquals(40, request.from());
+    assertEquals(
+        List.of("price", "createdAt", "id"),
+        request.sort().stream().map(sort -> sort.field().field()).toList());
+  }
+
+  @Test
+  @DisplayName("Pages deeper than the max result window are rejected")
+  public void rejectsDeepPages() {
+    var searchParams = DealSearchParams.builder().query("iphone").build();
+
+    var exception =
+        assertThrows(
+            ResponseStatusException.class,
+            () -> esDealService.createSearchRequest(searchParams, PageRequest.of(50, 20)));
+
+    assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+  }
+
+  @Test
+  @DisplayName("A search cursor survives encoding")
+  public void encodesSearchCursor() {
+    var cursor =
+        new DealSearchCursor(
+            "pit-id",
+            List.of(FieldValue.of(1.5), FieldValue.of(1700000000000L), FieldValue.of("deal-id")));
+
+    var decoded = DealSearchCursor.decode(cursor.encode());
+
+    assertEquals("pit-id", decoded.pitId());
+    assertEquals(
+        cursor.sortValues().stream().map(FieldValue::_toJsonString).toList(),
+        decoded.sortValues().stream().map(FieldValue::_toJsonString).toList());
+    assertThrows(ResponseStatusException.class, () -> DealSearchCursor.decode("invalid"));
+  }
+}
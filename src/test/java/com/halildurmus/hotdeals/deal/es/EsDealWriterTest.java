@@ -0,0 +1,151 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import co.elastic.clients.util.ObjectBuilder;
+import com.halildurmus.hotdeals.deal.Deal;
+import com.halildurmus.hotdeals.deal.dummy.DummyDeals;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class EsDealWriterTest {
+
+  private ElasticsearchClient esClient;
+
+  private EsDealWriter esDealWriter;
+
+  @BeforeEach
+  void setUp() {
+    var converter = mock(ElasticsearchConverter.class);
+    when(converter.mapObject(any())).thenReturn(Document.create());
+    var elasticsearchOperations = mock(ElasticsearchOperations.class);
+    when(elasticsearchOperations.getElasticsearchConverter()).thenReturn(converter);
+    esClient = mock(ElasticsearchClient.class);
+    esDealWriter = new EsDealWriter();
+    ReflectionTestUtils.setField(esDealWriter, "elasticsearchOperations", elasticsearchOperations);
+    ReflectionTestUtils.setField(esDealWriter, "esClient", esClient);
+    ReflectionTestUtils.setField(esDealWriter, "searchProperties", new DealSearchProperties());
+    ReflectionTestUtils.setField(esDealWriter, "searchCache", mock(DealSearchCache.class));
+  }
+
+  private static BulkResponseItem item(OperationType type, String id, int status, String error) {
+    return BulkResponseItem.of(
+        i -> {
+          i.operationType(type).index("deal").id(id).status(status);
+          if (error != null) {
+            i.error(e -> e.type("error").reason(error));
+          }
+          return i;
+        });
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  @DisplayName("write() reports the failed deals and whether they can be retried")
+  public void writeReportsFailures() throws Exception {
+    var deal = DummyDeals.deal1;
+    // A deal without a poster and a store can't be converted
+    var invalidDeal = Deal.builder().id("invalid").build();
+    var rejectedDeal =
+        Deal.builder()
+            .id("rejected")
+            .postedBy(deal.getPostedBy())
+            .store(deal.getStore())
+            .price(deal.getPrice())
+            .build();
+    var response =
+        BulkResponse.of(
+            r ->
+                r.errors(true)
+                    .took(1)
+                    .items(
+                        item(OperationType.Index, deal.getId(), 201, null),
+                        item(OperationType.Index, "rejected", 429, "rejected execution"),
+                        item(OperationType.Delete, "deleted", 404, null)));
+    when(esClient.bulk(any(Function.class))).thenReturn(response);
+
+    var failures =
+        esDealWriter.write(List.of(deal, invalidDeal, rejectedDeal), List.of("deleted"));
+
+    verify(esClient).bulk(any(Function.class));
+    assertEquals(2, failures.size());
+    assertFalse(failures.get("invalid").retryable());
+    assertTrue(failures.get("rejected").retryable());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  @DisplayName("write() sends the changed fields of a deal as a partial update")
+  public void writeSendsPartialUpdate() throws Exception {
+    var deal = DummyDeals.deal1;
+    var response =
+        BulkResponse.of(
+            r ->
+                r.errors(false)
+                    .took(1)
+                    .items(item(OperationType.Update, deal.getId(), 200, null)));
+    var requests = ArgumentCaptor.forClass(Function.class);
+    when(esClient.bulk(requests.capture())).thenReturn(response);
+
+    var failures =
+        esDealWriter.write(List.of(deal), Map.of(deal.getId(), Set.of("status")), List.of());
+
+    assertTrue(failures.isEmpty());
+    var request =
+        ((Function<BulkRequest.Builder, ObjectBuilder<BulkRequest>>) requests.getValue())
+            .apply(new BulkRequest.Builder())
+            .build();
+    var operation = request.operations().getFirst();
+    assertTrue(operation.isUpdate());
+    assertEquals(deal.getId(), operation.update().id());
+    assertTrue(operation.update().action().detectNoop());
+  }
+
+  @Test
+  @DisplayName("changedFields() returns the fields with different values")
+  public void changedFieldsReturnsDifferentFields() {
+    var before = Map.<String, Object>of("title", "HDD", "status", "PENDING", "location", "home");
+    var after = Map.<String, Object>of("title", "HDD", "status", "ACTIVE");
+
+    assertEquals(Set.of("status", "location"), EsDealWriter.changedFields(before, after));
+  }
+
+  @Test
+  @DisplayName("toEsDeal() leaves out the nested facets in the FLAT facet model")
+  public void toEsDealLeavesOutNestedFacetsInFlatModel() {
+    var deal = DummyDeals.deal1;
+    assertFalse(esDealWriter.toEsDeal(deal).getStringFacets().isEmpty());
+
+    var properties = new DealSearchProperties();
+    properties.setFacetModel(DealSearchProperties.FacetModel.FLAT);
+    ReflectionTestUtils.setField(esDealWriter, "searchProperties", properties);
+    var esDeal = esDealWriter.toEsDeal(deal);
+
+    assertNull(esDeal.getStringFacets());
+    assertNull(esDeal.getNumberFacets());
+    assertEquals(deal.getCategory(), esDeal.getCategory());
+    assertEquals(deal.getPrice(), esDeal.getPrice());
+  }
+}
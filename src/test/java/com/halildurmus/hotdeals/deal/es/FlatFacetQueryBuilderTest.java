@@ -0,0 +1,85 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.AggregationRange;
+import co.elastic.clients.elasticsearch._types.aggregations.RangeBucket;
+import co.elastic.clients.elasticsearch._types.aggregations.StringTermsBucket;
+import com.halildurmus.hotdeals.deal.PriceRange;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class FlatFacetQueryBuilderTest {
+
+  private final FlatFacetQueryBuilder builder = new FlatFacetQueryBuilder();
+
+  @Test
+  @DisplayName("Filters on the facet fields without nested queries")
+  public void filtersOnFacetFields() {
+    var filter = builder.filter("store", List.of("store1", "store2"));
+    assertTrue(filter.isTerms());
+    assertEquals("store", filter.terms().field());
+    assertEquals(2, filter.terms().terms().value().size());
+
+    var priceFilter =
+        builder.priceFilter(
+            List.of(PriceRange.builder().from(0.0).to(10.0).build(), PriceRange.builder().from(100.0).build()));
+    var shouldQueries = priceFilter.bool().should();
+    assertEquals(2, shouldQueries.size());
+    assertTrue(shouldQueries.stream().allMatch(query -> query.isRange()));
+  }
+
+  @Test
+  @DisplayName("Aggregates the facet fields and the price ranges")
+  public void aggregatesFacets() {
+    var ranges = List.of(AggregationRange.of(r -> r.from(0.0).to(1.0)));
+
+    var aggregations = builder.facetsAggregations(List.of("category", "price"), ranges);
+
+    assertEquals(Set.of("category", "price"), aggregations.keySet());
+    assertTrue(aggregations.get("category").isTerms());
+    assertTrue(aggregations.get("price").isRange());
+  }
+
+  @Test
+  @DisplayName("Reads the buckets of the facet aggregations")
+  public void readsBuckets() {
+    var category =
+        Aggregate.of(
+            a ->
+                a.sterms(
+                    t ->
+                        t.sumOtherDocCount(0L)
+                            .buckets(
+                                b ->
+                                    b.array(
+                                        List.of(
+                                            StringTermsBucket.of(
+                                                s -> s.key("/computers").docCount(3)))))));
+    var price =
+        Aggregate.of(
+            a ->
+                a.range(
+                    r ->
+                        r.buckets(
+                            b ->
+                                b.array(
+                                    List.of(
+                                        RangeBucket.of(
+                                            s -> s.key("0.0-1.0").from(0.0).to(1.0).docCount(2)))))));
+    var aggregations = Map.of("category", category, "price", price);
+
+    assertEquals(
+        List.of(FacetBucket.builder().value("/computers").count(3).build()),
+        builder.readBuckets("category", aggregations));
+    assertEquals(
+        List.of(FacetBucket.builder().value("0.0-1.0").from(0.0).to(1.0).count(2).build()),
+        builder.readBuckets("price", aggregations));
+    assertTrue(builder.readBuckets("store", aggregations).isEmpty());
+  }
+}
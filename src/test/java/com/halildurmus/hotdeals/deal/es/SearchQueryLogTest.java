@@ -0,0 +1,87 @@
+package com.halildurmus.hotdeals.deal.es;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+import com.halildurmus.hotdeals.deal.DealSearchParams;
+import com.halildurmus.hotdeals.deal.PriceRange;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class SearchQueryLogTest {
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private SearchQueryLog searchQueryLog;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    var searchProperties = new DealSearchProperties();
+    searchProperties.getQueryLog().setCapacity(2);
+    // The drainer is not started, so the searches stay in the buffer
+    searchProperties.getQueryLog().setEnabled(false);
+    searchQueryLog = new SearchQueryLog();
+    ReflectionTestUtils.setField(searchQueryLog, "mongoTemplate", mock(MongoTemplate.class));
+    ReflectionTestUtils.setField(searchQueryLog, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(searchQueryLog, "searchProperties", searchProperties);
+    ReflectionTestUtils.invokeMethod(searchQueryLog, "start");
+    ReflectionTestUtils.setField(searchQueryLog, "running", true);
+  }
+
+  @Test
+  @DisplayName("Describes the search parameters without their values")
+  public void createsShapes() {
+    var searchParams = DealSearchParams.builder()
+        .query("iphone")
+        .prices(List.of(PriceRange.builder().from(0.0).to(100.0).build()))
+        .categories(List.of("/computers"))
+        .stores(List.of())
+        .hideExpired(true)
+        .sortBy("price")
+        .facets(List.of("store", "category"))
+        .build();
+
+    assertEquals("query category,price,hideExpired sort=price facets=category,store page",
+        SearchQueryLog.createShape(searchParams, "page"));
+    assertEquals("browse sort=default facets=all cursor",
+        SearchQueryLog.createShape(DealSearchParams.builder().query(" ").build(), "cursor"));
+  }
+
+  @Test
+  @DisplayName("Drops the searches recorded on a full buffer")
+  @SuppressWarnings("unchecked")
+  public void dropsSearchesOnFullBuffer() {
+    var searchParams = DealSearchParams.builder().query("  iPhone   13 ").build();
+
+    for (var i = 0; i < 3; i++) {
+      searchQueryLog.record(searchParams, "page", 0L, 1_000_000);
+    }
+
+    var buffer =
+        (BlockingQueue<SearchQueryRecord>) ReflectionTestUtils.getField(searchQueryLog, "buffer");
+    assertEquals(2, buffer.size());
+    assertEquals("iphone 13", buffer.peek().getQuery());
+    assertEquals(1.0, meterRegistry.get("deals.search.log.dropped").counter().count());
+    assertEquals(3,
+        meterRegistry.get("deals.search.latency").tags("kind", "query", "mode", "page").timer()
+            .count());
+  }
+
+  @Test
+  @DisplayName("Doesn't record the searches when disabled")
+  public void ignoresSearchesWhenDisabled() {
+    ReflectionTestUtils.setField(searchQueryLog, "running", false);
+
+    searchQueryLog.record(DealSearchParams.builder().query("iphone").build(), "page", 1L, 1);
+
+    assertNull(meterRegistry.find("deals.search.latency").timer());
+  }
+}
@@ -1,10 +1,13 @@
 package com.halildurmus.hotdeals.notification;
 
+import static org.hamcrest.Matchers.endsWith;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -33,7 +36,12 @@ public class NotificationControllerTest extends BaseControllerUnitTest {
   @Test
   @DisplayName("POST /notifications")
   public void sendsNotification() throws Exception {
-    when(notificationService.send(any(Notification.class))).thenReturn(1);
+    var job =
+        NotificationJob.builder()
+            .id("3f2c1a8e-5b7d-4e0f-9a6b-2d1c0e9f8a7b")
+            .status(NotificationJob.Status.RUNNING)
+            .build();
+    when(notificationService.send(any(Notification.class))).thenReturn(job);
     var request =
         post("/notifications")
             .accept(MediaType.APPLICATION_JSON)
@@ -41,9 +49,19 @@ public class NotificationControllerTest extends BaseControllerUnitTest {
             .contentType(MediaType.APPLICATION_JSON);
 
     mvc.perform(request)
-        .andExpect(status().isCreated())
+        .andExpect(status().isAccepted())
+        .andExpect(header().string("Location", endsWith("/notifications/jobs/" + job.getId())))
         .andExpect(content().contentType("application/json"))
-        .andExpect(jsonPath("$").value(1));
+        .andExpect(jsonPath("$.id").value(job.getId()))
+        .andExpect(jsonPath("$.status").value("RUNNING"));
+  }
+
+  @Test
+  @DisplayName("GET /notifications/jobs/{id} (job not found)")
+  public void jobNotFound() throws Exception {
+    var request = get("/notifications/jobs/unknown").accept(MediaType.APPLICATION_JSON);
+
+    mvc.perform(request).andExpect(status().isNotFound());
   }
 
   @Test
@@ -0,0 +1,216 @@
+package com.halildurmus.hotdeals.notification;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.firebase.ErrorCode;
+import com.google.firebase.messaging.BatchResponse;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.firebase.messaging.FirebaseMessagingException;
+import com.google.firebase.messaging.MessagingErrorCode;
+import com.google.firebase.messaging.MulticastMessage;
+import com.google.firebase.messaging.SendResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class NotificationDispatcherTest {
+
+  private FirebaseMessaging firebaseMessaging;
+
+  private HashOperations<String, Object, Object> hashOps;
+
+  private NotificationDispatcher dispatcher;
+
+  // The tokens of the messages, in the order they were sent
+  private final List<List<String>> sentChunks = Collections.synchronizedList(new ArrayList<>());
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    firebaseMessaging = mock(FirebaseMessaging.class);
+    var redisTemplate = mock(StringRedisTemplate.class);
+    hashOps = mock(HashOperations.class);
+    when(redisTemplate.opsForHash()).thenReturn(hashOps);
+    var properties = new NotificationProperties();
+    properties.setInitialBackoff(Duration.ofMillis(1));
+    properties.setMaxAttempts(3);
+    // Sends the chunks one by one, so that the responses can be matched with the last chunk
+    properties.setMaxConcurrency(1);
+    dispatcher = new NotificationDispatcher();
+    ReflectionTestUtils.setField(dispatcher, "firebaseMessaging", firebaseMessaging);
+    ReflectionTestUtils.setField(dispatcher, "redisTemplate", redisTemplate);
+    ReflectionTestUtils.setField(dispatcher, "properties", properties);
+    dispatcher.createPermits();
+  }
+
+  private static FirebaseMessagingException createException(
+      ErrorCode errorCode, MessagingErrorCode messagingErrorCode) {
+    var exception = mock(FirebaseMessagingException.class);
+    when(exception.getErrorCode()).thenReturn(errorCode);
+    when(exception.getMessagingErrorCode()).thenReturn(messagingErrorCode);
+    return exception;
+  }
+
+  private static BatchResponse createBatchResponse(List<SendResponse> responses) {
+    var batchResponse = mock(BatchResponse.class);
+    when(batchResponse.getResponses()).thenReturn(responses);
+    return batchResponse;
+  }
+
+  private static SendResponse createResponse(FirebaseMessagingException exception) {
+    var response = mock(SendResponse.class);
+    when(response.isSuccessful()).thenReturn(exception == null);
+    when(response.getException()).thenReturn(exception);
+    return response;
+  }
+
+  // The message factory of the test, records the tokens of the messages
+  private MulticastMessage createMessage(List<String> tokens) {
+    sentChunks.add(tokens);
+    return MulticastMessage.builder().addAllTokens(tokens).build();
+  }
+
+  @Test
+  @DisplayName("Splits the tokens into messages of at most 500 tokens")
+  public void splitsTokensIntoChunks() throws Exception {
+    var success = createResponse(null);
+    when(firebaseMessaging.sendEachForMulticast(any(MulticastMessage.class)))
+        .thenAnswer(invocation -> {
+          var size = sentChunks.get(sentChunks.size() - 1).size();
+          return createBatchResponse(Collections.nCopies(size, success));
+        });
+    var tokens = IntStream.range(0, 1200).mapToObj(i -> "token" + i).toList();
+
+    var job = dispatcher.dispatch(tokens::stream, this::createMessage, (token, e) -> {});
+
+    assertEquals(NotificationJob.Status.RUNNING, job.getStatus());
+    var key = "notifications:jobs:" + job.getId();
+    verify(hashOps, timeout(5000))
+        .putAll(eq(key), argThat(fields -> "COMPLETED".equals(fields.get("status"))));
+    assertEquals(3, sentChunks.size());
+    assertTrue(sentChunks.stream().allMatch(chunk -> chunk.size() <= 500));
+    verify(hashOps, times(2)).increment(key, "tokens", 500L);
+    verify(hashOps).increment(key, "tokens", 200L);
+  }
+
+  @Test
+  @DisplayName("Retries only the tokens that failed with a transient error")
+  public void retriesTransientFailures() throws Exception {
+    var unavailable = createException(ErrorCode.UNAVAILABLE, MessagingErrorCode.UNAVAILABLE);
+    var unregistered = createException(ErrorCode.NOT_FOUND, MessagingErrorCode.UNREGISTERED);
+    var firstResponse = createBatchResponse(List.of(
+        createResponse(null), createResponse(unavailable), createResponse(unregistered)));
+    var retryResponse = createBatchResponse(List.of(createResponse(null)));
+    when(firebaseMessaging.sendEachForMulticast(any(MulticastMessage.class)))
+        .thenReturn(firstResponse)
+        .thenReturn(retryResponse);
+    var failedTokens = Collections.synchronizedList(new ArrayList<String>());
+    BiConsumer<String, FirebaseMessagingException> onTokenFailed =
+        (token, e) -> failedTokens.add(token);
+
+    var job = dispatcher.dispatch(
+        () -> List.of("a", "b", "c").stream(), this::createMessage, onTokenFailed);
+
+    var key = "notifications:jobs:" + job.getId();
+    verify(hashOps, timeout(5000))
+        .putAll(eq(key), argThat(fields -> "COMPLETED".equals(fields.get("status"))));
+    assertEquals(List.of(List.of("a", "b", "c"), List.of("b")), sentChunks);
+    assertEquals(List.of("c"), failedTokens);
+    verify(hashOps, times(2)).increment(key, "sent", 1L);
+    verify(hashOps).increment(key, "failed", 1L);
+    verify(hashOps).increment(key, "retried", 1L);
+  }
+
+  @Test
+  @DisplayName("Gives up on a transient failure after the maximum attempts")
+  public void givesUpAfterMaxAttempts() throws Exception {
+    var unavailable = createException(ErrorCode.UNAVAILABLE, null);
+    when(firebaseMessaging.sendEachForMulticast(any(MulticastMessage.class)))
+        .thenThrow(unavailable);
+
+    var job =
+        dispatcher.dispatch(() -> List.of("a", "b").stream(), this::createMessage, (t, e) -> {});
+
+    var key = "notifications:jobs:" + job.getId();
+    verify(hashOps, timeout(5000))
+        .putAll(eq(key), argThat(fields -> "COMPLETED".equals(fields.get("status"))));
+    assertEquals(3, sentChunks.size());
+    verify(hashOps).increment(key, "failed", 2L);
+  }
+
+  @Test
+  @DisplayName("A chunk backing off doesn't hold its permit")
+  public void releasesPermitWhileBackingOff() throws Exception {
+    var properties = new NotificationProperties();
+    properties.setMaxConcurrency(1);
+    properties.setInitialBackoff(Duration.ofSeconds(30));
+    ReflectionTestUtils.setField(dispatcher, "properties", properties);
+    dispatcher.createPermits();
+    var retried = MulticastMessage.builder().addToken("a").build();
+    var other = MulticastMessage.builder().addToken("b").build();
+    var unavailable = createException(ErrorCode.UNAVAILABLE, MessagingErrorCode.UNAVAILABLE);
+    var failure = createBatchResponse(List.of(createResponse(unavailable)));
+    var success = createBatchResponse(List.of(createResponse(null)));
+    when(firebaseMessaging.sendEachForMulticast(retried)).thenReturn(failure);
+    when(firebaseMessaging.sendEachForMulticast(other)).thenReturn(success);
+
+    var backingOff = dispatcher.dispatch(() -> Stream.of("a"), tokens -> retried, (t, e) -> {});
+    verify(hashOps, timeout(5000))
+        .increment("notifications:jobs:" + backingOff.getId(), "retried", 1L);
+    var job = dispatcher.dispatch(() -> Stream.of("b"), tokens -> other, (t, e) -> {});
+
+    // The only permit is free while the first job waits 30 seconds for its retry
+    var key = "notifications:jobs:" + job.getId();
+    verify(hashOps, timeout(5000))
+        .putAll(eq(key), argThat(fields -> "COMPLETED".equals(fields.get("status"))));
+    verify(hashOps).increment(key, "sent", 1L);
+  }
+
+  @Test
+  @DisplayName("The backoff doubles on every attempt up to the maximum")
+  public void backoffDoublesUpToMaximum() {
+    ReflectionTestUtils.setField(dispatcher, "properties", new NotificationProperties());
+
+    assertEquals(Duration.ofSeconds(1), dispatcher.backoff(1));
+    assertEquals(Duration.ofSeconds(8), dispatcher.backoff(4));
+    assertEquals(Duration.ofMinutes(1), dispatcher.backoff(100));
+  }
+
+  @Test
+  @DisplayName("Reads the progress of a job from Redis")
+  public void getsJob() {
+    when(hashOps.entries("notifications:jobs:1"))
+        .thenReturn(Map.of(
+            "status", "RUNNING", "createdAt", "2024-07-01T10:00:00Z", "tokens", "1000",
+            "sent", "498"));
+
+    var job = dispatcher.getJob("1");
+
+    assertEquals(NotificationJob.Status.RUNNING, job.getStatus());
+    assertEquals(1000, job.getTokens());
+    assertEquals(498, job.getSent());
+    assertEquals(0, job.getFailed());
+    assertNull(job.getCompletedAt());
+  }
+}
@@ -0,0 +1,71 @@
+package com.halildurmus.hotdeals.security;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseToken;
+import com.halildurmus.hotdeals.security.models.SecurityProperties;
+import java.time.Instant;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class FirebaseFilterTest {
+
+  private FirebaseAuth firebaseAuth;
+
+  private FirebaseFilter firebaseFilter;
+
+  @BeforeEach
+  void setUp() {
+    firebaseAuth = mock(FirebaseAuth.class);
+    firebaseFilter = new FirebaseFilter();
+    ReflectionTestUtils.setField(firebaseFilter, "securityProperties", new SecurityProperties());
+    ReflectionTestUtils.invokeMethod(firebaseFilter, "createTokenCache");
+  }
+
+  private static FirebaseToken createToken(Instant expiry) {
+    var token = mock(FirebaseToken.class);
+    when(token.getClaims()).thenReturn(Map.of("exp", expiry.getEpochSecond()));
+    return token;
+  }
+
+  @Test
+  @DisplayName("Verifies a token only once until it expires")
+  public void cachesVerifiedTokens() throws Exception {
+    var decodedToken = createToken(Instant.now().plusSeconds(3600));
+    when(firebaseAuth.verifyIdToken("token")).thenReturn(decodedToken);
+
+    try (var firebaseAuthStatic = mockStatic(FirebaseAuth.class)) {
+      firebaseAuthStatic.when(FirebaseAuth::getInstance).thenReturn(firebaseAuth);
+
+      assertSame(decodedToken, firebaseFilter.decodeToken("token"));
+      assertSame(decodedToken, firebaseFilter.decodeToken("token"));
+    }
+
+    verify(firebaseAuth, times(1)).verifyIdToken("token");
+  }
+
+  @Test
+  @DisplayName("Doesn't cache the tokens past their expiry")
+  public void doesNotCacheExpiredTokens() throws Exception {
+    var decodedToken = createToken(Instant.now().minusSeconds(1));
+    when(firebaseAuth.verifyIdToken("token")).thenReturn(decodedToken);
+
+    try (var firebaseAuthStatic = mockStatic(FirebaseAuth.class)) {
+      firebaseAuthStatic.when(FirebaseAuth::getInstance).thenReturn(firebaseAuth);
+
+      firebaseFilter.decodeToken("token");
+      firebaseFilter.decodeToken("token");
+    }
+
+    verify(firebaseAuth, times(2)).verifyIdToken("token");
+  }
+}
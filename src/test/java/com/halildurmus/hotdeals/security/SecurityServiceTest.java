@@ -0,0 +1,53 @@
+package com.halildurmus.hotdeals.security;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.halildurmus.hotdeals.security.models.FirebaseAuthenticationToken;
+import java.util.Arrays;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+class SecurityServiceTest {
+
+  private final SecurityService securityService = new SecurityService();
+
+  @AfterEach
+  void tearDown() {
+    SecurityContextHolder.clearContext();
+  }
+
+  private static void authenticate(String... authorities) {
+    var grantedAuthorities = Arrays.stream(authorities).map(SimpleGrantedAuthority::new).toList();
+    SecurityContextHolder.getContext()
+        .setAuthentication(new FirebaseAuthenticationToken(null, null, grantedAuthorities));
+  }
+
+  @Test
+  @DisplayName("Derives the roles from the authorities of the token")
+  public void derivesRolesFromAuthorities() {
+    authenticate("iss", "ROLE_MODERATOR");
+
+    assertTrue(securityService.isAdminOrMod());
+    assertFalse(securityService.isSuper());
+  }
+
+  @Test
+  @DisplayName("A super admin is an admin as well")
+  public void superIsAdmin() {
+    authenticate("ROLE_SUPER");
+
+    assertTrue(securityService.isAdminOrMod());
+    assertTrue(securityService.isSuper());
+  }
+
+  @Test
+  @DisplayName("Has no role without an authentication")
+  public void hasNoRoleWithoutAuthentication() {
+    assertFalse(securityService.isAdminOrMod());
+    assertFalse(securityService.isSuper());
+  }
+}
@@ -0,0 +1,96 @@
+package com.halildurmus.hotdeals.security.role;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.firebase.auth.ExportedUserRecord;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.ListUsersPage;
+import com.mongodb.client.result.DeleteResult;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class RoleIndexTest {
+
+  private MongoTemplate mongoTemplate;
+
+  private FirebaseAuth firebaseAuth;
+
+  private RoleIndex roleIndex;
+
+  @BeforeEach
+  void setUp() {
+    mongoTemplate = mock(MongoTemplate.class);
+    firebaseAuth = mock(FirebaseAuth.class);
+    roleIndex = new RoleIndex();
+    ReflectionTestUtils.setField(roleIndex, "mongoTemplate", mongoTemplate);
+    ReflectionTestUtils.setField(roleIndex, "firebaseAuth", firebaseAuth);
+  }
+
+  private static ExportedUserRecord createUser(String uid, Map<String, Object> claims) {
+    var user = mock(ExportedUserRecord.class);
+    when(user.getUid()).thenReturn(uid);
+    when(user.getCustomClaims()).thenReturn(claims);
+    return user;
+  }
+
+  @Test
+  @DisplayName("Parses only the role claims that are true")
+  public void parsesRoles() {
+    var claims = Map.<String, Object>of(
+        "ROLE_ADMIN", true, "ROLE_MODERATOR", false, "premium", true, "ROLE_SUPER", "true");
+
+    assertEquals(Set.of(Role.ROLE_ADMIN), RoleIndex.parseRoles(claims));
+  }
+
+  @Test
+  @DisplayName("A user without roles keeps a tombstone instead of being removed")
+  public void putsTombstone() {
+    var user = createUser("former-admin", Map.of());
+
+    roleIndex.put(user, Set.of());
+
+    verify(mongoTemplate)
+        .save(argThat((UserRoles entry) ->
+            entry.getUid().equals("former-admin") && entry.getRoles().isEmpty()
+                && entry.getUpdatedAt() != null));
+    verify(mongoTemplate, never()).remove(any(Query.class), eq(UserRoles.class));
+  }
+
+  @Test
+  @DisplayName("Reconciles the users with a role and removes the stale entries")
+  public void reconcilesUsersWithRoles() throws Exception {
+    var users = List.of(
+        createUser("admin", Map.of("ROLE_ADMIN", true)), createUser("user", Map.of()));
+    var page = mock(ListUsersPage.class);
+    when(page.iterateAll()).thenReturn(users);
+    when(firebaseAuth.listUsers(null)).thenReturn(page);
+    var bulkOps = mock(BulkOperations.class);
+    when(mongoTemplate.bulkOps(BulkMode.UNORDERED, UserRoles.class)).thenReturn(bulkOps);
+    when(mongoTemplate.remove(any(Query.class), eq(UserRoles.class)))
+        .thenReturn(DeleteResult.acknowledged(1));
+
+    roleIndex.reconcile();
+
+    verify(bulkOps, times(1)).upsert(any(Query.class), any(Update.class));
+    verify(bulkOps).execute();
+    verify(mongoTemplate).remove(any(Query.class), eq(UserRoles.class));
+  }
+}
@@ -20,6 +20,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.fge.jsonpatch.JsonPatch;
 import com.halildurmus.hotdeals.BaseControllerUnitTest;
 import com.halildurmus.hotdeals.comment.CommentService;
+import com.halildurmus.hotdeals.deal.DealService;
+import com.halildurmus.hotdeals.deal.DealVoteType;
 import com.halildurmus.hotdeals.deal.dummy.DummyDeals;
 import com.halildurmus.hotdeals.exception.UserNotFoundException;
 import com.halildurmus.hotdeals.mapstruct.MapStructMapperImpl;
@@ -31,6 +33,7 @@ import com.halildurmus.hotdeals.user.dto.UserPostDTO;
 import com.halildurmus.hotdeals.user.dummy.DummyUsers;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import jakarta.validation.ConstraintViolationException;
@@ -55,6 +58,8 @@ public class UserControllerTest extends BaseControllerUnitTest {
 
   @MockBean private CommentService commentService;
 
+  @MockBean private DealService dealService;
+
   @Autowired private JacksonTester<UserPostDTO> json;
 
   @Autowired private MapStructMapperImpl mapStructMapper;
@@ -436,8 +441,8 @@ public class UserControllerTest extends BaseControllerUnitTest {
         .andExpect(jsonPath("$[0].photos", hasSize(deal.getPhotos().size())))
         .andExpect(jsonPath("$[0].dealUrl").value(deal.getDealUrl()))
         .andExpect(jsonPath("$[0].dealScore").value(deal.getDealScore()))
-        .andExpect(jsonPath("$[0].upvoters", hasSize(deal.getUpvoters().size())))
-        .andExpect(jsonPath("$[0].downvoters", hasSize(deal.getDownvoters().size())))
+        .andExpect(jsonPath("$[0].upvotes").value(deal.getUpvotes()))
+        .andExpect(jsonPath("$[0].downvotes").value(deal.getDownvotes()))
         .andExpect(jsonPath("$[0].views").value(deal.getViews()))
         .andExpect(jsonPath("$[0].status").value(deal.getStatus().toString()))
         .andExpect(jsonPath("$[0].createdAt").value(deal.getCreatedAt().toString()));
@@ -479,8 +484,8 @@ public class UserControllerTest extends BaseControllerUnitTest {
         .andExpect(jsonPath("$[0].photos", hasSize(deal.getPhotos().size())))
         .andExpect(jsonPath("$[0].dealUrl").value(deal.getDealUrl()))
         .andExpect(jsonPath("$[0].dealScore").value(deal.getDealScore()))
-        .andExpect(jsonPath("$[0].upvoters", hasSize(deal.getUpvoters().size())))
-        .andExpect(jsonPath("$[0].downvoters", hasSize(deal.getDownvoters().size())))
+        .andExpect(jsonPath("$[0].upvotes").value(deal.getUpvotes()))
+        .andExpect(jsonPath("$[0].downvotes").value(deal.getDownvotes()))
         .andExpect(jsonPath("$[0].views").value(deal.getViews()))
         .andExpect(jsonPath("$[0].status").value(deal.getStatus().toString()))
         .andExpect(jsonPath("$[0].createdAt").value(deal.getCreatedAt().toString()));
@@ -536,6 +541,20 @@ public class UserControllerTest extends BaseControllerUnitTest {
         });
   }
 
+  @Test
+  @DisplayName("GET /users/me/deal-votes?dealIds={ids}")
+  public void getDealVotesReturnsVotes() throws Exception {
+    var id = DummyDeals.deal1.getId();
+    when(dealService.getVotes(List.of(id))).thenReturn(Map.of(id, DealVoteType.UP));
+    var request = get("/users/me/deal-votes").param("dealIds", id);
+
+    mvc.perform(request)
+        .andExpect(status().isOk())
+        .andExpect(content().contentType("application/json"))
+        .andExpect(jsonPath("$.*", hasSize(1)))
+        .andExpect(jsonPath("$." + id).value(DealVoteType.UP.toString()));
+  }
+
   @Test
   @DisplayName("PUT /users/me/fcm-tokens")
   public void savesFCMToken() throws Exception {